@@ -0,0 +1,185 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+//Cópia em memória da cadeia de blocos de um arquivo (a mesma sequência que a FAT guarda como lista ligada).
+//Com ela "qual bloco tem o byte N" e "qual é o último bloco" são consultas sem andar na FAT
+//
+//Arquivo esparso: cada bloco da cadeia fica junto com a posição dele no arquivo (em blocos), e as posições que
+//faltam são buracos sem bloco nenhum no disco (FormatoFat guarda quantas são em cada ligação). Enquanto o arquivo
+//não tem esse tipo de buraco a posição é o próprio índice do array e a consulta é direta; senão é uma busca binária.
+//Um bloco de buraco é um bloco da cadeia que nunca foi escrito (um bloco de ligação, ou um buraco de um disco antigo):
+//o conteúdo dele no disco é lixo e a leitura devolve zeros sem ler nada.
+//Os bytes do arquivo depois do último bloco da cadeia (até o tamanho dele) também são buraco, e do último bloco
+//só valem os primeiros escritosNoUltimo bytes (o resto é lido como zeros)
+public class CadeiaBlocos {
+
+    private final FormatoFat formato;
+    private int[] blocos; //blocos do arquivo no disco, na ordem da cadeia
+    private int[] indices; //posição no arquivo (em blocos) de cada bloco da cadeia, em ordem crescente
+    private int quantidade; //quantos blocos a cadeia tem
+    private final BitSet buracos; //blocos da cadeia (pela ordem nela) que são blocos de buraco
+    private int escritosNoUltimo; //quantos bytes do começo do último bloco valem (o bloco inteiro, a não ser depois de um setLength)
+
+    //Monta a cadeia seguindo a FAT a partir do bloco inicial do arquivo
+    public CadeiaBlocos(FormatoFat formato, int[] fat, int starterBlock) {
+        this.formato = formato;
+        this.blocos = new int[8];
+        this.indices = new int[8];
+        this.buracos = new BitSet();
+
+        int indice = formato.pulados(starterBlock);
+        int bloco = formato.proximo(starterBlock);
+        while (bloco > 0) {
+            int valor = fat[bloco];
+            colocar(quantidade, indice, bloco, formato.isBuraco(valor));
+            indice += 1 + formato.pulados(valor);
+            bloco = formato.proximo(valor);
+            escritosNoUltimo = formato.escritos(valor);
+        }
+    }
+
+    //Tamanho da cadeia em blocos do arquivo: a posição do último bloco + 1 (0 se o arquivo não tem blocos)
+    public int getQuantidade() {
+        return quantidade == 0 ? 0 : indices[quantidade - 1] + 1;
+    }
+
+    //Bloco na posição indice do arquivo (0 = bloco inicial): 0 se a posição é um buraco sem bloco,
+    //-1 se o arquivo não tem tantos blocos
+    public int get(int indice) {
+        if (indice >= getQuantidade()) {
+            return -1;
+        }
+        int ordem = buscar(indice);
+        return ordem >= 0 ? blocos[ordem] : 0;
+    }
+
+    public int getUltimo() {
+        return quantidade == 0 ? -1 : blocos[quantidade - 1];
+    }
+
+    //Se a posição indice é buraco: sem bloco no disco, depois do último bloco ou um bloco de buraco
+    public boolean isBuraco(int indice) {
+        int ordem = indice < getQuantidade() ? buscar(indice) : -1;
+        return ordem < 0 || buracos.get(ordem);
+    }
+
+    //O bloco da posição indice foi escrito inteiro e deixou de ser buraco
+    public void marcarEscrito(int indice) {
+        int ordem = buscar(indice);
+        if (ordem >= 0 && buracos.get(ordem)) {
+            buracos.clear(ordem);
+            if (ordem == quantidade - 1) {
+                escritosNoUltimo = formato.getTamBloco();
+            }
+        }
+    }
+
+    //Quantos bytes do começo do último bloco valem: 0 se ele é um bloco de buraco, o bloco inteiro se a cadeia está vazia
+    public int getEscritosNoUltimo() {
+        if (quantidade == 0) return formato.getTamBloco();
+        return buracos.get(quantidade - 1) ? 0 : escritosNoUltimo;
+    }
+
+    public void setEscritosNoUltimo(int escritos) {
+        this.escritosNoUltimo = escritos;
+    }
+
+    //Acrescenta blocos no fim da cadeia, nas posições seguintes à do último (usado pelo append depois de ligar os blocos novos na FAT)
+    public void adicionar(int[] novos) {
+        for (int bloco : novos) {
+            colocar(quantidade, getQuantidade(), bloco, false);
+        }
+    }
+
+    //Põe um bloco na posição indice do arquivo, que ainda não tem bloco: depois do fim da cadeia ou num buraco sem bloco
+    public void adicionar(int indice, int bloco, boolean buraco) {
+        colocar(-buscar(indice) - 1, indice, bloco, buraco);
+    }
+
+    //Descarta os blocos das posições quantidade em diante (o arquivo diminuiu) e os blocos de buraco que ficariam no fim:
+    //um bloco de ligação no fim da cadeia não liga mais nada. Retorna o primeiro bloco descartado (dele em diante a FAT
+    //tem o resto da cadeia), ou 0 se nenhum bloco saiu
+    public int cortar(int quantidade) {
+        int ordem = ordemAntes(quantidade) + 1;
+        while (ordem > 0 && buracos.get(ordem - 1)) {
+            ordem--;
+        }
+        if (ordem == this.quantidade) {
+            return 0;
+        }
+        int primeiroDescartado = blocos[ordem];
+        buracos.clear(ordem, this.quantidade);
+        this.quantidade = ordem;
+        escritosNoUltimo = formato.getTamBloco(); //o novo último estava no meio da cadeia, onde o bloco vale inteiro
+        return primeiroDescartado;
+    }
+
+    //Valor da FAT do bloco inicial da entrada do arquivo: o primeiro bloco e quantas posições de buraco vêm antes dele
+    public int valorInicio() {
+        return quantidade == 0 ? 0 : formato.inicio(blocos[0], indices[0]);
+    }
+
+    //Quantos blocos a cadeia tem no disco (as posições de buraco sem bloco não contam)
+    public int getTotalBlocos() {
+        return quantidade;
+    }
+
+    //Bloco e posição no arquivo do bloco na ordem da cadeia (0 = primeiro bloco no disco)
+    public int getBlocoNaOrdem(int ordem) {
+        return blocos[ordem];
+    }
+
+    public int getIndiceNaOrdem(int ordem) {
+        return indices[ordem];
+    }
+
+    //Valor da FAT do bloco na ordem da cadeia: o próximo bloco, as posições de buraco sem bloco até ele e a marca de buraco.
+    //O último bloco guarda quantos bytes dele valem
+    public int valorFat(int ordem) {
+        if (ordem + 1 == quantidade) {
+            return buracos.get(ordem) ? FormatoFat.FIM_BURACO : formato.fim(escritosNoUltimo);
+        }
+        return formato.ligar(blocos[ordem + 1], indices[ordem + 1] - indices[ordem] - 1, buracos.get(ordem));
+    }
+
+    //Ordem do último bloco da cadeia numa posição antes de indice, ou -1 se não tem nenhum
+    public int ordemAntes(int indice) {
+        int ordem = buscar(indice);
+        return (ordem >= 0 ? ordem : -ordem - 1) - 1;
+    }
+
+    //Ordem do bloco da posição indice na cadeia, ou (-(onde ele entraria) - 1) se a posição não tem bloco
+    private int buscar(int indice) {
+        //Sem buraco sem bloco, a posição de cada bloco é a ordem dele na cadeia
+        if (quantidade == 0 || indices[quantidade - 1] == quantidade - 1) {
+            return indice < quantidade ? indice : -quantidade - 1;
+        }
+        return Arrays.binarySearch(indices, 0, quantidade, indice);
+    }
+
+    private void colocar(int ordem, int indice, int bloco, boolean buraco) {
+        //Dobra os arrays quando eles enchem, como um ArrayList de int
+        if (quantidade == blocos.length) {
+            blocos = Arrays.copyOf(blocos, blocos.length * 2);
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        //No meio da cadeia (escrita num buraco sem bloco) os blocos seguintes andam uma casa
+        if (ordem < quantidade) {
+            System.arraycopy(blocos, ordem, blocos, ordem + 1, quantidade - ordem);
+            System.arraycopy(indices, ordem, indices, ordem + 1, quantidade - ordem);
+            for (int i = quantidade; i > ordem; i--) {
+                buracos.set(i, buracos.get(i - 1));
+            }
+        }
+        blocos[ordem] = bloco;
+        indices[ordem] = indice;
+        buracos.set(ordem, buraco);
+        quantidade++;
+        //Um bloco novo no fim da cadeia foi gravado inteiro (ou é de buraco)
+        if (ordem == quantidade - 1) {
+            escritosNoUltimo = formato.getTamBloco();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Caminho de um arquivo ou diretório ("/Clientes/Dados 2024/relatório.pdf"), já separado nas partes e com cada parte validada.
+//As barras do começo, do fim e repetidas são ignoradas: "a.txt", "/a.txt" e "//a.txt" são o mesmo arquivo na raiz.
+//O caminho sem nenhuma parte é a própria raiz
+public final class Caminho {
+
+    private final NomeArquivo[] partes;
+
+    private Caminho(NomeArquivo[] partes) {
+        this.partes = partes;
+    }
+
+    //Objetivo da função: separar o caminho pelas barras e validar cada parte uma única vez
+    public static Caminho de(String caminho) throws IOException {
+        List<NomeArquivo> partes = new ArrayList<>();
+        int inicio = 0;
+        while (inicio <= caminho.length()) {
+            int barra = caminho.indexOf('/', inicio);
+            int fim = barra < 0 ? caminho.length() : barra;
+            if (!caminho.substring(inicio, fim).isBlank()) {
+                partes.add(NomeArquivo.de(caminho.substring(inicio, fim)));
+            }
+            inicio = fim + 1;
+        }
+        return new Caminho(partes.toArray(new NomeArquivo[0]));
+
+        //1. Percorre o caminho de barra em barra
+        //2. Cada trecho não vazio vira um NomeArquivo (nome longo em UTF-8, ou 8.3 se ele já estiver nesse formato)
+    }
+
+    public boolean isRaiz() {
+        return partes.length == 0;
+    }
+
+    //Quantas partes o caminho tem (profundidade). O arquivo "/A/B/C.TXT" tem 3
+    public int getQuantidade() {
+        return partes.length;
+    }
+
+    public NomeArquivo getParte(int indice) {
+        return partes[indice];
+    }
+
+    //Nome do arquivo ou diretório no fim do caminho
+    public NomeArquivo getNome() {
+        return partes[partes.length - 1];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Caminho)) return false;
+        return Arrays.equals(partes, ((Caminho) o).partes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(partes);
+    }
+
+    @Override
+    public String toString() {
+        if (partes.length == 0) {
+            return "/";
+        }
+        StringBuilder texto = new StringBuilder();
+        for (NomeArquivo parte : partes) {
+            texto.append('/').append(parte);
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+//Canal com posição para um arquivo do FAT32: leitura e escrita em qualquer posição, por partes.
+//Escrever antes do fim sobrescreve os bytes no lugar; escrever no fim faz append.
+//Escrever depois do fim deixa um buraco entre o fim e a posição, que é lido como zeros, nunca é gravado e não ocupa blocos.
+//As escritas não esperam o journal; o close() espera todas ficarem duráveis.
+//Como os streams, um canal deve ser usado por uma thread de cada vez
+public class CanalArquivo implements SeekableByteChannel {
+
+    private final Fat32 fat32;
+    private final EntradaDiretorio entrada;
+    private long posicao;
+    private long geracao; //maior geração do group commit entre as escritas feitas
+    private boolean aberto = true;
+
+    public CanalArquivo(Fat32 fat32, EntradaDiretorio entrada) {
+        this.fat32 = fat32;
+        this.entrada = entrada;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        verificarAberto();
+        if (!dst.hasRemaining()) return 0;
+
+        //Buffer com array: lê direto para dentro dele. Buffer direto: passa por um bloco emprestado do pool do Fat32
+        int lidos;
+        if (dst.hasArray()) {
+            lidos = fat32.lerArquivo(entrada, posicao, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (lidos > 0) {
+                dst.position(dst.position() + lidos);
+            }
+        } else {
+            ByteBuffer temporario = fat32.emprestarBuffer();
+            try {
+                lidos = fat32.lerArquivo(entrada, posicao, temporario.array(), 0, Math.min(dst.remaining(), temporario.capacity()));
+                if (lidos > 0) {
+                    dst.put(temporario.array(), 0, lidos);
+                }
+            } finally {
+                fat32.devolverBuffer(temporario);
+            }
+        }
+
+        if (lidos > 0) {
+            posicao += lidos;
+        }
+        return lidos;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        verificarAberto();
+        int total = src.remaining();
+
+        //Mesmo esquema da leitura: o array do buffer, ou um bloco por vez de um buffer direto copiado para um bloco do pool
+        ByteBuffer temporario = src.hasArray() ? null : fat32.emprestarBuffer();
+        try {
+            while (src.hasRemaining()) {
+                byte[] data;
+                int off;
+                int bytes;
+                if (temporario == null) {
+                    data = src.array();
+                    off = src.arrayOffset() + src.position();
+                    bytes = src.remaining();
+                } else {
+                    data = temporario.array();
+                    off = 0;
+                    bytes = Math.min(src.remaining(), temporario.capacity());
+                    src.get(src.position(), data, 0, bytes);
+                }
+
+                //O Fat32 compara com o tamanho e grava com o arquivo travado: antes do fim sobrescreve, no fim é append,
+                //depois do fim o espaço entre o fim e a posição vira buraco
+                geracao = Math.max(geracao, fat32.escreverArquivo(entrada, posicao, data, off, bytes));
+
+                src.position(src.position() + bytes);
+                posicao += bytes;
+            }
+        } finally {
+            if (temporario != null) {
+                fat32.devolverBuffer(temporario);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long position() throws IOException {
+        verificarAberto();
+        return posicao;
+    }
+
+    @Override
+    public SeekableByteChannel position(long novaPosicao) throws IOException {
+        verificarAberto();
+        if (novaPosicao < 0) {
+            throw new IllegalArgumentException("Posição inválida: " + novaPosicao);
+        }
+        posicao = novaPosicao;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        verificarAberto();
+        return fat32.tamanhoArquivo(entrada);
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long tamanho) throws IOException {
+        verificarAberto();
+        if (tamanho < 0) {
+            throw new IllegalArgumentException("Tamanho inválido: " + tamanho);
+        }
+        //Como no FileChannel, um tamanho maior que o atual não muda o arquivo (para aumentar: FileSystem.setLength)
+        geracao = Math.max(geracao, fat32.truncarArquivo(entrada, tamanho));
+        if (posicao > tamanho) {
+            posicao = tamanho;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return aberto;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!aberto) return;
+        aberto = false;
+
+        //Ponto de durabilidade do canal: appends e sobrescritas feitos por ele estão no disco
+        if (geracao > 0) {
+            fat32.aguardarConfirmacao(geracao);
+        }
+    }
+
+    private void verificarAberto() throws IOException {
+        if (!aberto) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Um diretório na memória: a entrada de cada slot e um índice por nome (hash) só deste diretório.
+//Buscar um arquivo custa uma consulta de hash por parte do caminho, não importa quantos arquivos o disco inteiro tem
+//nem o tamanho dos nomes (o hash de um nome longo vem gravado na entrada dele).
+//
+//A raiz fica na região fixa do diretório. Um subdiretório é guardado como um arquivo encadeado na FAT:
+//os blocos dele são preenchidos com entradas de 19 bytes, iguais às da raiz, e ele ganha mais um bloco quando enche.
+//Uma entrada com nome longo ocupa vários slots seguidos, sempre dentro de um bloco só.
+//Só é alterado com o lockMetadados de escrita do Fat32
+public class Diretorio {
+
+    private final EntradaDiretorio entrada; //entrada deste diretório no diretório pai (null = raiz)
+    private EntradaDiretorio[] entradas; //entrada que ocupa cada slot (null = slot livre). Todos os slots de um nome longo apontam para ela
+    private final BitSet ocupados; //slots em uso, para achar um livre sem percorrer as entradas
+    private final Map<NomeArquivo, EntradaDiretorio> indice; //nome (sem diferenciar maiúsculas) -> entrada
+    private final BitSet slotsSujos; //slots alterados na memória e ainda não confirmados no journal
+    private boolean removido; //diretório removido: os slots dele não vão mais para o disco
+    private volatile List<String> publicada; //fotografia dos nomes, lida sem lock (null = mudou desde a última, monta na próxima listagem)
+
+    public Diretorio(EntradaDiretorio entrada, int capacidade) {
+        this.entrada = entrada;
+        this.entradas = new EntradaDiretorio[capacidade];
+        this.ocupados = new BitSet(capacidade);
+        this.indice = new HashMap<>();
+        this.slotsSujos = new BitSet();
+        this.publicada = Collections.emptyList();
+    }
+
+    public EntradaDiretorio getEntrada() {
+        return entrada;
+    }
+
+    public boolean isRaiz() {
+        return entrada == null;
+    }
+
+    //Quantos slots o diretório tem (ocupados ou não)
+    public int getCapacidade() {
+        return entradas.length;
+    }
+
+    //Quantos arquivos e subdiretórios estão no diretório
+    public int getQuantidade() {
+        return indice.size();
+    }
+
+    //Quantos slots estão em uso (cada nome longo conta todos os slots dele)
+    public int getSlotsOcupados() {
+        return ocupados.cardinality();
+    }
+
+    //Entrada que começa no slot, ou null se ele está livre ou é a continuação do nome longo de outra entrada
+    public EntradaDiretorio get(int slot) {
+        EntradaDiretorio entrada = entradas[slot];
+        return entrada != null && entrada.getSlot() == slot ? entrada : null;
+    }
+
+    //Entrada que ocupa o slot, começando nele ou num slot anterior (null = slot livre)
+    public EntradaDiretorio getOcupante(int slot) {
+        return entradas[slot];
+    }
+
+    public EntradaDiretorio buscar(NomeArquivo nome) {
+        return indice.get(nome);
+    }
+
+    //Primeiro slot de uma sequência de quantidade slots livres dentro de um mesmo bloco, ou -1 se não existe nenhuma
+    public int slotsLivres(int quantidade, int slotsPorBloco) {
+        int slot = ocupados.nextClearBit(0);
+        while (slot + quantidade <= entradas.length) {
+            //A sequência não pode passar para o bloco seguinte: recomeça no começo dele
+            int fimDoBloco = (slot / slotsPorBloco + 1) * slotsPorBloco;
+            if (slot + quantidade > fimDoBloco) {
+                slot = ocupados.nextClearBit(fimDoBloco);
+                continue;
+            }
+            int ocupado = ocupados.nextSetBit(slot);
+            if (ocupado < 0 || ocupado >= slot + quantidade) {
+                return slot;
+            }
+            slot = ocupados.nextClearBit(ocupado);
+        }
+        return -1;
+    }
+
+    //Coloca a entrada nos slots dela e no índice
+    public void colocar(EntradaDiretorio entrada) {
+        int fim = entrada.getSlot() + entrada.getQuantidadeSlots();
+        Arrays.fill(entradas, entrada.getSlot(), fim, entrada);
+        ocupados.set(entrada.getSlot(), fim);
+        indice.put(entrada.getNome(), entrada);
+        entrada.setDiretorio(this);
+    }
+
+    //Libera os slots da entrada
+    public void retirar(EntradaDiretorio entrada) {
+        int fim = entrada.getSlot() + entrada.getQuantidadeSlots();
+        Arrays.fill(entradas, entrada.getSlot(), fim, null);
+        ocupados.clear(entrada.getSlot(), fim);
+        indice.remove(entrada.getNome());
+    }
+
+    //Mais slots no fim, depois que um bloco novo foi ligado ao diretório
+    public void aumentar(int capacidade) {
+        entradas = Arrays.copyOf(entradas, capacidade);
+    }
+
+    public BitSet getSlotsSujos() {
+        return slotsSujos;
+    }
+
+    public boolean isRemovido() {
+        return removido;
+    }
+
+    public void setRemovido(boolean removido) {
+        this.removido = removido;
+    }
+
+    //Até limite entradas a partir do slot cursor, na ordem dos slots. Retorna o cursor da próxima página (PaginaDiretorio.FIM = acabou).
+    //Chamado com o lockMetadados de leitura: só percorre os slots da página, não o diretório inteiro.
+    //O bloco inicial listado é o primeiro bloco no disco (o formato tira dele as posições de buraco sem bloco)
+    public int listar(int cursor, int limite, FormatoFat formato, List<InfoArquivo> destino) {
+        int adicionadas = 0;
+        for (int slot = ocupados.nextSetBit(cursor); slot >= 0; slot = ocupados.nextSetBit(slot + 1)) {
+            EntradaDiretorio entrada = entradas[slot];
+            if (entrada.getSlot() != slot) continue; //continuação de um nome longo
+            if (adicionadas == limite) {
+                return slot;
+            }
+            destino.add(new InfoArquivo(entrada.getFileName(), entrada.getFileSize(), formato.proximo(entrada.getStarterBlock()),
+                    entrada.isDiretorio()));
+            adicionadas++;
+        }
+        return PaginaDiretorio.FIM;
+    }
+
+    //O diretório mudou: a fotografia antiga é descartada, e só é montada de novo quando alguém listar.
+    //Criar muitos arquivos seguidos num diretório grande não monta a lista inteira a cada arquivo
+    public void descartarPublicada() {
+        publicada = null;
+    }
+
+    //Monta a lista de nomes, na ordem dos slots. Subdiretórios aparecem com "/" no fim. Chamado com o lockMetadados de leitura
+    public List<String> publicar() {
+        List<String> nomes = new ArrayList<>(indice.size());
+        for (int slot = ocupados.nextSetBit(0); slot >= 0; slot = ocupados.nextSetBit(slot + 1)) {
+            EntradaDiretorio entrada = entradas[slot];
+            if (entrada.getSlot() != slot) continue; //continuação de um nome longo
+            nomes.add(entrada.isDiretorio() ? entrada.getFileName() + "/" : entrada.getFileName());
+        }
+        List<String> lista = Collections.unmodifiableList(nomes);
+        publicada = lista;
+        return lista;
+    }
+
+    //Fotografia da última listagem, ou null se o diretório mudou depois dela
+    public List<String> getPublicada() {
+        return publicada;
+    }
+}
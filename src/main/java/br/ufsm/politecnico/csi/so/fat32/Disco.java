@@ -3,72 +3,122 @@ package br.ufsm.politecnico.csi.so.fat32;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class Disco {
 
+    //Geometria padrão de um disco novo (64 MB). É também a geometria dos discos antigos, formatados sem superbloco
     public static final int TAM_BLOCO = 64 * 1024; //cada bloco tem 64 KB
     public static final int NUM_BLOCO = 1024; //1024 blocos disponiveis
+    public static final String NOME_ARQUIVO = "virtual_disk.fs"; //arquivo do disco virtual no sistema hospedeiro
     private RandomAccessFile raf; //classe que permite ler e escrever arquivos de forma nao sequancial
+    private FileChannel canal; //canal do raf. Leituras e escritas posicionais (sem seek), que podem rodar em várias threads ao mesmo tempo
 
-    public Disco() {}
+    private final int tamBlocoNovo; //geometria usada se o arquivo do disco ainda não existe (ou nunca foi formatado)
+    private final int numBlocosNovo;
+    private int tamBloco; //geometria do disco aberto, definida no init()
+    private int numBlocos;
+
+    public Disco() {
+        this(TAM_BLOCO, NUM_BLOCO);
+    }
+
+    //tamBloco e numBlocos só valem para um disco novo: um disco que já existe é aberto com a geometria do superbloco dele
+    public Disco(int tamBloco, int numBlocos) {
+        Superbloco.validarGeometria(tamBloco, numBlocos);
+        this.tamBlocoNovo = tamBloco;
+        this.numBlocosNovo = numBlocos;
+    }
 
 
 //Objetivo da função: criar um arquivo tipo File
-//se nao existe cria um arquivo File com o tamanho NUM_BLOCO * TAM_BLOCO
-//raf = new RandomAccessFile(f, "rws"); isso da acesso de escrita, leitura e atualizar
+//se nao existe cria um arquivo File com o tamanho numBlocos * tamBloco
+//raf = new RandomAccessFile(f, "rw"); isso da acesso de escrita e leitura, sem sincronizar cada escrita
 
     public boolean init() throws IOException {
-        File f = new File("virtual_disk.fs");  // Arquivo específico para o sistema FAT32
+        File f = new File(NOME_ARQUIVO);  // Arquivo específico para o sistema FAT32
         boolean exists = f.exists();
-        raf = new RandomAccessFile(f, "rws");
+        //"rw": as escritas não são síncronas. A durabilidade vem do force() em sincronizar(), chamado pelo journal
+        raf = new RandomAccessFile(f, "rw");
+        canal = raf.getChannel();
 
+        //Disco novo: o arquivo é criado com o tamanho da geometria escolhida, todo zerado (diretório e FAT vazios)
+        abrirGeometria(raf);
         if(!exists) {
-            //inicializa um disco vazio
-            raf.setLength(NUM_BLOCO * TAM_BLOCO);
-            //cria um vetor de bytes com o tamanho do bloco
-            byte[] emptyBlock = new byte[TAM_BLOCO];
-
-            //grava o bloco 0 como Diretório
-            raf.write(emptyBlock);
-            //grava o bloco 1 como a FAT
-            raf.write(emptyBlock);
+            canal.force(true);
         }
         return exists;
     }
 
+    public int getTamBloco() {
+        return tamBloco;
+    }
+
+    public int getNumBlocos() {
+        return numBlocos;
+    }
+
+    //Tamanho do disco em bytes. Em long: discos grandes passam de 2 GB
+    public long getTamanho() {
+        return (long) tamBloco * numBlocos;
+    }
+
     // Objetivo da função: leitura
     public byte[] read(int numBloco) throws IOException {
-        if (numBloco < 0 || numBloco >= NUM_BLOCO) {
+        if (numBloco < 0 || numBloco >= numBlocos) {
             throw new IllegalArgumentException("Número de bloco inválido");
         }
 
-        //Aponta para posição inicial de um arquivo X, para ser percorrido depois
-        raf.seek(numBloco * TAM_BLOCO);
-
         //vai criar um array de bytes para salvar os blocos do arquivo a ser percorrido
         //armazenar o conteudo a ser lido num array do tipo byte
-        byte[] read = new byte[TAM_BLOCO];
+        byte[] read = new byte[tamBloco];
 
-        //O método raf.read(byte[], offset, length) tenta ler até length bytes, mas não é garantido que ele consiga tudo em uma única chamada.
-        //talvez precise de vários buffers para ler o arquivo
+        //Leitura posicional: não usa raf.seek + raf.read, que compartilham a posição do arquivo e se atrapalham entre threads
+        read(numBloco, 0, read, 0, tamBloco);
+        return read;
+    }
 
-        int totalLido = 0; //quantos bytes foram lidos
-        while (totalLido < TAM_BLOCO) { //le todos os bytes do bloco
-            int bytesLidos = raf.read(read, totalLido, TAM_BLOCO - totalLido);
-            if (bytesLidos == -1) break; // fim de arquivo
-            totalLido += bytesLidos;
+    //Objetivo da função: ler de uma vez um trecho que pode atravessar vários blocos consecutivos
+    //Começa no byte deslocamento do primeiroBloco e lê tamanho bytes direto para destino[off...]
+    public void read(int primeiroBloco, int deslocamento, byte[] destino, int off, int tamanho) throws IOException {
+        long posicao = (long) primeiroBloco * tamBloco + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+        if (destino == null || off < 0 || off + tamanho > destino.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
         }
 
-        return read;
+        //Uma leitura posicional no canal do arquivo para o trecho inteiro, sem seek e sem array intermediário
+        read(primeiroBloco, deslocamento, ByteBuffer.wrap(destino, off, tamanho));
+    }
+
+    //Objetivo da função: ler para dentro de um buffer que já existe (com array ou direto), sem criar array novo
+    //Lê destino.remaining() bytes a partir do byte deslocamento do primeiroBloco. A posição do destino avança
+    public void read(int primeiroBloco, int deslocamento, ByteBuffer destino) throws IOException {
+        long posicao = (long) primeiroBloco * tamBloco + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + destino.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //Com buffer direto o canal lê sem passar por um buffer temporário do próprio Java
+        while (destino.hasRemaining()) {
+            int bytesLidos = canal.read(destino, posicao);
+            if (bytesLidos == -1) break; // fim de arquivo
+            posicao += bytesLidos;
+        }
     }
 
     //Objetivo da função: escrita em um arquivo especifico
     // Faz verificação se o tamanho do numBloco é valido
     public void write(int numBloco, byte[] data) throws IOException {
-        if(numBloco >= 0 && numBloco < NUM_BLOCO){ //Verifica se numBloco está dentro do intervalo válido. Vejo se tem pelo menos um bloco
-            if (data != null && data.length <= TAM_BLOCO) { //Verifica se o array data não é null e se o tamanho está dentro do limite (<= TAM_BLOCO
-                this.raf.seek((long) numBloco * TAM_BLOCO); //Usa seek para posicionar no início do bloco correto. Converte para long para evitar estouro de int
-                this.raf.write(data); //Usa write(data) para escrever os dados.
+        if(numBloco >= 0 && numBloco < numBlocos){ //Verifica se numBloco está dentro do intervalo válido. Vejo se tem pelo menos um bloco
+            if (data != null && data.length <= tamBloco) { //Verifica se o array data não é null e se o tamanho está dentro do limite (<= tamBloco)
+                //Escrita posicional no início do bloco correto. Converte para long para evitar estouro de int
+                escrever((long) numBloco * tamBloco, data, 0, data.length);
             } else {
                 throw new IllegalArgumentException("Dados inválidos.");
             }
@@ -77,4 +127,123 @@ public class Disco {
         }
     }
 
+    //Objetivo da função: escrever só um trecho de um bloco, sem regravar o bloco inteiro
+    //deslocamento é a posição dentro do bloco; off e tamanho indicam o trecho de data a ser gravado
+    public void write(int numBloco, int deslocamento, byte[] data, int off, int tamanho) throws IOException {
+        if (numBloco < 0 || numBloco >= numBlocos) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+        //O trecho tem que caber no bloco e existir dentro do array data
+        if (data == null || deslocamento < 0 || tamanho < 0 || deslocamento + tamanho > tamBloco
+                || off < 0 || off + tamanho > data.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        escrever((long) numBloco * tamBloco + deslocamento, data, off, tamanho);
+    }
+
+    //Objetivo da função: escrever o conteúdo de um buffer (origem.remaining() bytes) a partir do byte deslocamento do primeiroBloco
+    //Diferente do write com array, o trecho pode atravessar vários blocos consecutivos. A posição da origem avança
+    public void write(int primeiroBloco, int deslocamento, ByteBuffer origem) throws IOException {
+        long posicao = (long) primeiroBloco * tamBloco + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + origem.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+
+        escrever(posicao, origem);
+    }
+
+    private void escrever(long posicao, byte[] data, int off, int tamanho) throws IOException {
+        escrever(posicao, ByteBuffer.wrap(data, off, tamanho));
+    }
+
+    //Escreve o buffer inteiro na posição dada do arquivo. O canal pode gravar menos bytes por chamada, então repete até terminar
+    private void escrever(long posicao, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            posicao += canal.write(buffer, posicao);
+        }
+    }
+
+    //Objetivo da função: copiar um trecho do disco (que pode atravessar vários blocos consecutivos) direto para outro canal,
+    //ex: um arquivo do sistema hospedeiro. Com transferTo a cópia é feita pelo kernel, sem passar por arrays da JVM
+    //Retorna quantos bytes foram copiados
+    public long transferirPara(int primeiroBloco, int deslocamento, long tamanho, WritableByteChannel destino) throws IOException {
+        long posicao = (long) primeiroBloco * tamBloco + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //transferTo pode copiar menos que o pedido: repete até terminar
+        long transferidos = 0;
+        while (transferidos < tamanho) {
+            long bytes = canal.transferTo(posicao + transferidos, tamanho - transferidos, destino);
+            if (bytes <= 0) break;
+            transferidos += bytes;
+        }
+        return transferidos;
+    }
+
+    //Objetivo da função: o contrário do transferirPara. Copia tamanho bytes do canal de origem (a partir da posição atual dele)
+    //para o disco, começando no byte deslocamento do primeiroBloco. Retorna quantos bytes foram copiados (menos se a origem acabar)
+    public long transferirDe(ReadableByteChannel origem, int primeiroBloco, int deslocamento, long tamanho) throws IOException {
+        long posicao = (long) primeiroBloco * tamBloco + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        long transferidos = 0;
+        while (transferidos < tamanho) {
+            long bytes = canal.transferFrom(origem, posicao + transferidos, tamanho - transferidos);
+            if (bytes <= 0) break; //a origem acabou
+            transferidos += bytes;
+        }
+        return transferidos;
+    }
+
+    //Objetivo da função: descobrir a geometria do arquivo do disco que acabou de ser aberto (usado no init() das subclasses também)
+    //Com superbloco, usa a geometria gravada nele; sem superbloco mas já formatado, é um disco antigo (geometria antiga);
+    //senão o disco é novo e fica com a geometria do construtor, ajustando o tamanho do arquivo
+    protected void abrirGeometria(RandomAccessFile arquivo) throws IOException {
+        FileChannel canalArquivo = arquivo.getChannel();
+        ByteBuffer cabecalho = ByteBuffer.allocate(Superbloco.TAMANHO);
+        ByteBuffer primeiraEntradaFat = ByteBuffer.allocate(4);
+        canalArquivo.read(cabecalho, 0);
+        canalArquivo.read(primeiraEntradaFat, TAM_BLOCO);
+
+        Superbloco superbloco = Superbloco.ler(cabecalho.flip());
+        if (superbloco == null && Superbloco.isLegado(arquivo.length(), primeiraEntradaFat.getInt(0))) {
+            superbloco = Superbloco.legado();
+        }
+
+        if (superbloco != null) {
+            definirGeometria(superbloco.getTamBloco(), superbloco.getNumBlocos());
+            if (arquivo.length() < getTamanho()) {
+                throw new IOException("Arquivo do disco menor que a geometria do superbloco");
+            }
+        } else {
+            definirGeometria(tamBlocoNovo, numBlocosNovo);
+            if (arquivo.length() != getTamanho()) {
+                arquivo.setLength(0);
+                arquivo.setLength(getTamanho());
+            }
+        }
+
+        //1. Lê o começo do bloco 0 (superbloco) e a primeira entrada da FAT do layout antigo
+        //2. Superbloco válido: a geometria vem dele
+        //3. Layout antigo já formatado: geometria antiga
+        //4. Disco novo (ou criado mas nunca formatado): geometria do construtor, com o arquivo do tamanho certo e zerado
+    }
+
+    protected void definirGeometria(int tamBloco, int numBlocos) {
+        this.tamBloco = tamBloco;
+        this.numBlocos = numBlocos;
+    }
+
+    //Objetivo da função: tornar duráveis as escritas feitas até aqui
+    //Força as escritas pendentes do canal para o disco físico. O tamanho do arquivo não muda depois do init,
+    //então basta forçar o conteúdo (force(false)), sem os metadados do arquivo
+    public void sincronizar() throws IOException {
+        canal.force(false);
+    }
+
 }
@@ -0,0 +1,288 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Cache de blocos na frente de outro Disco (RandomAccessFile ou mapeado).
+//Guarda até "capacidade" blocos na memória, escolhe quem sai pelo algoritmo do relógio (CLOCK)
+//e só grava no disco de baixo os blocos alterados (sujos) quando eles saem do cache ou em sincronizar().
+//Os métodos são synchronized: o cache pode ser usado por várias threads ao mesmo tempo
+public class DiscoCache extends Disco {
+
+    private final Disco disco; //disco de verdade, abaixo do cache
+    private final int capacidade; //quantos blocos cabem no cache
+
+    private final byte[][] quadros; //conteúdo de cada bloco em cache
+    private final int[] blocoDoQuadro; //qual bloco está em cada quadro (-1 = quadro vazio)
+    private final boolean[] sujo; //quadro alterado e ainda não gravado no disco
+    private final boolean[] referenciado; //bit de uso do relógio: o bloco foi acessado desde a última passada do ponteiro
+    private final Map<Integer, Integer> quadroDoBloco; //bloco -> quadro
+    private int ponteiro; //ponteiro do relógio
+
+    //Métricas
+    private long acertos;
+    private long faltas;
+    private long diretas; //escritas parciais de blocos fora do cache, que vão direto para o disco de baixo (não passam pelo cache)
+    private long despejos;
+
+    public DiscoCache(Disco disco, int capacidade) {
+        if (capacidade <= 0) {
+            throw new IllegalArgumentException("Capacidade do cache inválida");
+        }
+        this.disco = disco;
+        this.capacidade = capacidade;
+        this.quadros = new byte[capacidade][];
+        this.blocoDoQuadro = new int[capacidade];
+        this.sujo = new boolean[capacidade];
+        this.referenciado = new boolean[capacidade];
+        this.quadroDoBloco = new HashMap<>();
+        Arrays.fill(blocoDoQuadro, -1);
+    }
+
+    @Override
+    public boolean init() throws IOException {
+        //A geometria é a do disco de baixo; os quadros são criados (do tamanho do bloco) conforme vão sendo usados
+        boolean existia = disco.init();
+        definirGeometria(disco.getTamBloco(), disco.getNumBlocos());
+        return existia;
+    }
+
+    @Override
+    public synchronized byte[] read(int numBloco) throws IOException {
+        validarBloco(numBloco);
+
+        //Devolve uma cópia: quem chama pode alterar o array (ex: append) sem mexer no cache
+        int quadro = obterQuadro(numBloco, true);
+        return Arrays.copyOf(quadros[quadro], getTamBloco());
+    }
+
+    @Override
+    public synchronized void read(int primeiroBloco, int deslocamento, byte[] destino, int off, int tamanho) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+        if (destino == null || off < 0 || off + tamanho > destino.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        read(primeiroBloco, deslocamento, ByteBuffer.wrap(destino, off, tamanho));
+    }
+
+    @Override
+    public synchronized void read(int primeiroBloco, int deslocamento, ByteBuffer destino) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + destino.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //Copia o trecho bloco a bloco, passando cada um pelo cache, direto do quadro para o buffer de quem chamou
+        while (destino.hasRemaining()) {
+            int bloco = (int) (posicao / getTamBloco());
+            int noBloco = (int) (posicao % getTamBloco());
+            int bytesDesteBloco = Math.min(getTamBloco() - noBloco, destino.remaining());
+
+            int quadro = obterQuadro(bloco, true);
+            destino.put(quadros[quadro], noBloco, bytesDesteBloco);
+            posicao += bytesDesteBloco;
+        }
+    }
+
+    @Override
+    public void write(int numBloco, byte[] data) throws IOException {
+        //Igual ao Disco: grava data no começo do bloco, mantendo o resto do bloco como está
+        if (data == null) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+        write(numBloco, 0, data, 0, data.length);
+    }
+
+    @Override
+    public synchronized void write(int numBloco, int deslocamento, byte[] data, int off, int tamanho) throws IOException {
+        validarBloco(numBloco);
+        if (data == null || deslocamento < 0 || tamanho < 0 || deslocamento + tamanho > getTamBloco()
+                || off < 0 || off + tamanho > data.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        //Escrita parcial de um bloco fora do cache: vai direto para o disco de baixo,
+        //em vez de ler o bloco inteiro só para alterar alguns bytes dele
+        if (tamanho < getTamBloco() && !quadroDoBloco.containsKey(numBloco)) {
+            diretas++;
+            disco.write(numBloco, deslocamento, data, off, tamanho);
+            return;
+        }
+
+        //Aqui o bloco já está no cache ou vai ser sobrescrito inteiro: não precisa ler o conteúdo antigo do disco
+        int quadro = obterQuadro(numBloco, false);
+
+        //Write-back: só altera o quadro e marca como sujo. O disco de baixo recebe o bloco depois
+        System.arraycopy(data, off, quadros[quadro], deslocamento, tamanho);
+        sujo[quadro] = true;
+    }
+
+    @Override
+    public synchronized void write(int primeiroBloco, int deslocamento, ByteBuffer origem) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + origem.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+
+        //Mesmo esquema do write com array, um bloco por vez: bloco sobrescrito inteiro não é lido do disco antes,
+        //e pedaço de bloco fora do cache vai direto para o disco de baixo
+        while (origem.hasRemaining()) {
+            int bloco = (int) (posicao / getTamBloco());
+            int noBloco = (int) (posicao % getTamBloco());
+            int bytesDesteBloco = Math.min(getTamBloco() - noBloco, origem.remaining());
+
+            if (bytesDesteBloco < getTamBloco() && !quadroDoBloco.containsKey(bloco)) {
+                diretas++;
+                disco.write(bloco, noBloco, origem.slice(origem.position(), bytesDesteBloco));
+                origem.position(origem.position() + bytesDesteBloco);
+            } else {
+                int quadro = obterQuadro(bloco, false);
+                origem.get(quadros[quadro], noBloco, bytesDesteBloco);
+                sujo[quadro] = true;
+            }
+            posicao += bytesDesteBloco;
+        }
+    }
+
+    @Override
+    public synchronized long transferirPara(int primeiroBloco, int deslocamento, long tamanho, WritableByteChannel destino) throws IOException {
+        //A transferência lê o disco de baixo: antes, os blocos do trecho alterados no cache precisam chegar nele
+        prepararTrecho(primeiroBloco, deslocamento, tamanho, false);
+        return disco.transferirPara(primeiroBloco, deslocamento, tamanho, destino);
+    }
+
+    @Override
+    public synchronized long transferirDe(ReadableByteChannel origem, int primeiroBloco, int deslocamento, long tamanho) throws IOException {
+        //A transferência escreve no disco de baixo: as cópias do trecho no cache ficariam velhas, então saem do cache
+        //(as sujas são gravadas antes, porque a transferência pode cobrir só parte do bloco)
+        prepararTrecho(primeiroBloco, deslocamento, tamanho, true);
+        return disco.transferirDe(origem, primeiroBloco, deslocamento, tamanho);
+    }
+
+    @Override
+    public synchronized void sincronizar() throws IOException {
+        //Grava todos os blocos sujos e depois pede ao disco de baixo para tornar tudo durável
+        for (int quadro = 0; quadro < capacidade; quadro++) {
+            if (sujo[quadro]) {
+                gravarQuadro(quadro);
+            }
+        }
+        disco.sincronizar();
+    }
+
+    public synchronized long getAcertos() {
+        return acertos;
+    }
+
+    public synchronized long getFaltas() {
+        return faltas;
+    }
+
+    public synchronized long getEscritasDiretas() {
+        return diretas;
+    }
+
+    public synchronized long getDespejos() {
+        return despejos;
+    }
+
+    // ========== MÉTODOS AUXILIARES ========== //
+
+    private int obterQuadro(int numBloco, boolean carregar) throws IOException {
+
+        //Acerto: o bloco já está em cache. Liga o bit de uso para o relógio não tirar ele na próxima passada
+        Integer quadro = quadroDoBloco.get(numBloco);
+        if (quadro != null) {
+            acertos++;
+            referenciado[quadro] = true;
+            return quadro;
+        }
+
+        //Falta: escolhe um quadro (liberando um bloco se preciso) e traz o bloco do disco
+        faltas++;
+        int livre = escolherQuadro();
+        if (quadros[livre] == null) {
+            quadros[livre] = new byte[getTamBloco()];
+        }
+        if (carregar) {
+            disco.read(numBloco, 0, quadros[livre], 0, getTamBloco());
+        }
+
+        blocoDoQuadro[livre] = numBloco;
+        referenciado[livre] = true;
+        quadroDoBloco.put(numBloco, livre);
+        return livre;
+
+        //1. Procura o bloco no cache. Se achar conta um acerto e marca como referenciado
+        //2. Se não achar conta uma falta e escolhe um quadro com o relógio
+        //3. Lê o bloco do disco para o quadro (a não ser que ele vá ser sobrescrito inteiro)
+        //4. Registra o bloco no quadro
+    }
+
+    private int escolherQuadro() throws IOException {
+
+        //Algoritmo do relógio: o ponteiro gira pelos quadros. Quadro vazio é usado direto;
+        //quadro referenciado ganha uma segunda chance (o bit é desligado); o primeiro sem referência sai
+        while (true) {
+            int quadro = ponteiro;
+            ponteiro = (ponteiro + 1) % capacidade;
+
+            if (blocoDoQuadro[quadro] == -1) {
+                return quadro;
+            }
+            if (referenciado[quadro]) {
+                referenciado[quadro] = false;
+                continue;
+            }
+
+            //Despejo: se o bloco foi alterado, grava no disco antes de reaproveitar o quadro
+            if (sujo[quadro]) {
+                gravarQuadro(quadro);
+            }
+            quadroDoBloco.remove(blocoDoQuadro[quadro]);
+            blocoDoQuadro[quadro] = -1;
+            despejos++;
+            return quadro;
+        }
+    }
+
+    //Grava os quadros sujos dos blocos do trecho e, se descartar, tira esses blocos do cache
+    private void prepararTrecho(int primeiroBloco, int deslocamento, long tamanho, boolean descartar) throws IOException {
+        if (tamanho <= 0) return;
+
+        long inicio = (long) primeiroBloco * getTamBloco() + deslocamento;
+        int ultimoBloco = (int) ((inicio + tamanho - 1) / getTamBloco());
+        for (int bloco = (int) (inicio / getTamBloco()); bloco <= ultimoBloco; bloco++) {
+            Integer quadro = quadroDoBloco.get(bloco);
+            if (quadro == null) continue;
+
+            if (sujo[quadro]) {
+                gravarQuadro(quadro);
+            }
+            if (descartar) {
+                quadroDoBloco.remove(bloco);
+                blocoDoQuadro[quadro] = -1;
+            }
+        }
+    }
+
+    private void gravarQuadro(int quadro) throws IOException {
+        disco.write(blocoDoQuadro[quadro], quadros[quadro]);
+        sujo[quadro] = false;
+    }
+
+    private void validarBloco(int numBloco) {
+        if (numBloco < 0 || numBloco >= getNumBlocos()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+//Disco que mapeia o arquivo virtual_disk.fs na memória (MappedByteBuffer).
+//Leituras e escritas de blocos viram cópias de memória sobre o mapeamento, e a durabilidade
+//fica por conta de chamadas explícitas a sincronizar() (force() do mapeamento), como no Disco.
+//Um MappedByteBuffer só endereça até 2 GB, então discos maiores são mapeados em vários segmentos de 1 GB
+public class DiscoMapeado extends Disco {
+
+    private static final int TAM_SEGMENTO = 1 << 30; //1 GB. Múltiplo de qualquer tamanho de bloco (potência de 2 até 1 MB)
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer[] segmentos; //o disco inteiro mapeado na memória, TAM_SEGMENTO bytes por segmento (o último pode ser menor)
+
+    public DiscoMapeado() {}
+
+    public DiscoMapeado(int tamBloco, int numBlocos) {
+        super(tamBloco, numBlocos);
+    }
+
+    @Override
+    public boolean init() throws IOException {
+        File f = new File(NOME_ARQUIVO);
+        boolean exists = f.exists();
+
+        //"rw": sem sincronização a cada escrita. Quem garante a durabilidade é o force() em sincronizar()
+        raf = new RandomAccessFile(f, "rw");
+
+        //Descobre a geometria (superbloco, layout antigo ou disco novo). O arquivo novo já vem preenchido com zeros
+        abrirGeometria(raf);
+
+        long tamanho = getTamanho();
+        segmentos = new MappedByteBuffer[(int) ((tamanho + TAM_SEGMENTO - 1) / TAM_SEGMENTO)];
+        for (int i = 0; i < segmentos.length; i++) {
+            long inicio = (long) i * TAM_SEGMENTO;
+            segmentos[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, inicio, Math.min(TAM_SEGMENTO, tamanho - inicio));
+        }
+        return exists;
+
+        //1. Abre (ou cria) o arquivo do disco sem o modo síncrono
+        //2. Descobre a geometria; se o disco é novo, ajusta o tamanho para numBlocos * tamBloco
+        //3. Mapeia o arquivo inteiro na memória para leitura e escrita, um segmento de até 1 GB por vez
+    }
+
+    @Override
+    public byte[] read(int numBloco) throws IOException {
+        if (numBloco < 0 || numBloco >= getNumBlocos()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //Copia o bloco direto do mapeamento. Não existe seek nem leitura parcial como no RandomAccessFile
+        byte[] read = new byte[getTamBloco()];
+        copiar((long) numBloco * getTamBloco(), ByteBuffer.wrap(read), true);
+        return read;
+    }
+
+    @Override
+    public void read(int primeiroBloco, int deslocamento, byte[] destino, int off, int tamanho) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+        if (destino == null || off < 0 || off + tamanho > destino.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        //Os blocos consecutivos também são consecutivos no mapeamento: uma cópia só (uma por segmento)
+        copiar(posicao, ByteBuffer.wrap(destino, off, tamanho), true);
+    }
+
+    @Override
+    public void read(int primeiroBloco, int deslocamento, ByteBuffer destino) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + destino.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //Cópia de memória do mapeamento para o buffer, sem array no meio
+        copiar(posicao, destino, true);
+    }
+
+    @Override
+    public void write(int numBloco, byte[] data) throws IOException {
+        if (numBloco < 0 || numBloco >= getNumBlocos()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+        if (data == null || data.length > getTamBloco()) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        //Escreve na página mapeada. O sistema operacional grava no arquivo depois, ou no próximo force()
+        copiar((long) numBloco * getTamBloco(), ByteBuffer.wrap(data), false);
+    }
+
+    @Override
+    public void write(int numBloco, int deslocamento, byte[] data, int off, int tamanho) throws IOException {
+        if (numBloco < 0 || numBloco >= getNumBlocos()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+        if (data == null || deslocamento < 0 || tamanho < 0 || deslocamento + tamanho > getTamBloco()
+                || off < 0 || off + tamanho > data.length) {
+            throw new IllegalArgumentException("Dados inválidos.");
+        }
+
+        //Copia só o trecho para a posição dentro do bloco
+        copiar((long) numBloco * getTamBloco() + deslocamento, ByteBuffer.wrap(data, off, tamanho), false);
+    }
+
+    @Override
+    public void write(int primeiroBloco, int deslocamento, ByteBuffer origem) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || posicao + origem.remaining() > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido.");
+        }
+
+        copiar(posicao, origem, false);
+    }
+
+    @Override
+    public long transferirPara(int primeiroBloco, int deslocamento, long tamanho, WritableByteChannel destino) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //O canal de destino escreve direto da memória mapeada: uma fatia do mapeamento por segmento, sem cópia para um array
+        long transferidos = 0;
+        while (transferidos < tamanho) {
+            long atual = posicao + transferidos;
+            MappedByteBuffer segmento = segmentos[(int) (atual / TAM_SEGMENTO)];
+            int noSegmento = (int) (atual % TAM_SEGMENTO);
+            int bytes = (int) Math.min(segmento.capacity() - noSegmento, tamanho - transferidos);
+
+            ByteBuffer trecho = segmento.slice(noSegmento, bytes);
+            while (trecho.hasRemaining()) {
+                destino.write(trecho);
+            }
+            transferidos += bytes;
+        }
+        return transferidos;
+    }
+
+    @Override
+    public long transferirDe(ReadableByteChannel origem, int primeiroBloco, int deslocamento, long tamanho) throws IOException {
+        long posicao = (long) primeiroBloco * getTamBloco() + deslocamento;
+        if (primeiroBloco < 0 || deslocamento < 0 || tamanho < 0 || posicao + tamanho > getTamanho()) {
+            throw new IllegalArgumentException("Número de bloco inválido");
+        }
+
+        //A origem lê direto para dentro da fatia do mapeamento
+        long transferidos = 0;
+        while (transferidos < tamanho) {
+            long atual = posicao + transferidos;
+            MappedByteBuffer segmento = segmentos[(int) (atual / TAM_SEGMENTO)];
+            int noSegmento = (int) (atual % TAM_SEGMENTO);
+            int bytes = (int) Math.min(segmento.capacity() - noSegmento, tamanho - transferidos);
+
+            ByteBuffer trecho = segmento.slice(noSegmento, bytes);
+            while (trecho.hasRemaining()) {
+                if (origem.read(trecho) < 0) {
+                    return transferidos + trecho.position(); //a origem acabou
+                }
+            }
+            transferidos += bytes;
+        }
+        return transferidos;
+    }
+
+    @Override
+    public void sincronizar() throws IOException {
+        //Força a gravação no arquivo de todas as páginas do mapeamento que foram alteradas
+        for (MappedByteBuffer segmento : segmentos) {
+            segmento.force();
+        }
+    }
+
+    //Copia entre o mapeamento (a partir da posição dada do disco) e o buffer, dividindo a cópia nos segmentos que ela atravessa.
+    //ler = true copia do disco para o buffer; false copia do buffer para o disco. A posição do buffer avança
+    private void copiar(long posicao, ByteBuffer buffer, boolean ler) {
+        while (buffer.hasRemaining()) {
+            MappedByteBuffer segmento = segmentos[(int) (posicao / TAM_SEGMENTO)];
+            int noSegmento = (int) (posicao % TAM_SEGMENTO);
+            int bytes = Math.min(segmento.capacity() - noSegmento, buffer.remaining());
+
+            //Operações absolutas: não mexem na posição do mapeamento, então várias threads podem copiar ao mesmo tempo
+            if (ler) {
+                buffer.put(buffer.position(), segmento, noSegmento, bytes);
+            } else {
+                segmento.put(noSegmento, buffer, buffer.position(), bytes);
+            }
+            buffer.position(buffer.position() + bytes);
+            posicao += bytes;
+        }
+    }
+}
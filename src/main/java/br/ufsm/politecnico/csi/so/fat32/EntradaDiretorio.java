@@ -1,9 +1,19 @@
 package br.ufsm.politecnico.csi.so.fat32;
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 public class EntradaDiretorio {
     private String fileName;
+    private NomeArquivo nome; //nome como foi criado (curto ou longo). É a chave do índice do diretório
     private int fileSize;
     private int starterBlock;
+    private int slot; //posição da entrada no diretório (o bloco do diretório e a posição nele saem do slot)
+    private int quantidadeSlots = 1; //slots seguidos que a entrada ocupa: 1, ou mais para os bytes de um nome longo
+    private Diretorio diretorio; //diretório onde a entrada está
+    private Diretorio subdiretorio; //conteúdo da entrada, se ela for um subdiretório (null = arquivo)
+    //Leituras e appends do arquivo travam só este lock: arquivos diferentes, em qualquer diretório, nunca disputam
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile CadeiaBlocos cadeia; //cadeia de blocos do arquivo em memória. Montada sob demanda (null = ainda não montada)
 
     //cada arquivo tem um nome, tamanho e bloco inicial
     public EntradaDiretorio(String fileName, int fileSize, int starterBlock) {
@@ -12,6 +22,17 @@ public class EntradaDiretorio {
         this.starterBlock = starterBlock;
     }
 
+    public EntradaDiretorio(String fileName, int fileSize, int starterBlock, int slot) {
+        this(fileName, fileSize, starterBlock);
+        this.slot = slot;
+    }
+
+    public EntradaDiretorio(NomeArquivo nome, int quantidadeSlots, int fileSize, int starterBlock, int slot) {
+        this(nome.toString(), fileSize, starterBlock, slot);
+        this.nome = nome;
+        this.quantidadeSlots = quantidadeSlots;
+    }
+
     public EntradaDiretorio() {
 
     }
@@ -25,6 +46,10 @@ public class EntradaDiretorio {
         this.fileName = fileName;
     }
 
+    public NomeArquivo getNome() {
+        return nome;
+    }
+
     public int getFileSize() {
         return fileSize;
     }
@@ -37,4 +62,49 @@ public class EntradaDiretorio {
         return starterBlock;
     }
 
+    //Arquivo vazio não tem bloco inicial (0). Ele ganha um no primeiro append
+    public void setStarterBlock(int starterBlock) {
+        this.starterBlock = starterBlock;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getQuantidadeSlots() {
+        return quantidadeSlots;
+    }
+
+    public Diretorio getDiretorio() {
+        return diretorio;
+    }
+
+    public void setDiretorio(Diretorio diretorio) {
+        this.diretorio = diretorio;
+    }
+
+    public Diretorio getSubdiretorio() {
+        return subdiretorio;
+    }
+
+    public void setSubdiretorio(Diretorio subdiretorio) {
+        this.subdiretorio = subdiretorio;
+    }
+
+    public boolean isDiretorio() {
+        return subdiretorio != null;
+    }
+
+    public ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    public CadeiaBlocos getCadeia() {
+        return cadeia;
+    }
+
+    public void setCadeia(CadeiaBlocos cadeia) {
+        this.cadeia = cadeia;
+    }
+
 }
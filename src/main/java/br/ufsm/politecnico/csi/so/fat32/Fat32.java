@@ -1,118 +1,377 @@
 package br.ufsm.politecnico.csi.so.fat32;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Fat32 implements FileSystem {
 
-    private static final int TAM_BLOCO = 64 * 1024;  // 64KB por bloco
-    private static final int NUM_BLOCO = 1024;       // Número total de blocos
-    private static final int DIRETORIO_BLOCO = 0;    // Bloco reservado para diretório. O bloco de índice 0 é o diretório
     private static final int TAM_ENTRADA_DIRETORIO = 19; // 11 (nome) + 4 (tamanho do arquivo)/32bits + 4 (bloco inicial)/32bits
 
-    //Capacidade máxima de arquivos no diretório. Pega o tamanho do bloco e divide pelo n de entradas disponiveis
-    //Serve para ver se ainda tem memoria para alocar o arquivo x
-    private static final int NUMERO_MAXIMO_ENTRADAS = TAM_BLOCO / TAM_ENTRADA_DIRETORIO;
+    //Bit mais alto do campo tamanho: a entrada é um subdiretório. Um arquivo nunca chega a 2 GB, então esse bit é sempre 0 nele
+    private static final int MARCA_DIRETORIO = 0x80000000;
+
+    //Primeiro byte de uma entrada com nome longo. Um nome curto começa com A-Z ou 0-9, e 0 é slot livre.
+    //Entrada de nome longo: [0x01] [slots de continuação] [tamanho do nome, 2 bytes] [hash do nome, 4 bytes] [0, 3 bytes]
+    //[tamanho 4 bytes] [bloco inicial 4 bytes], seguida dos slots de continuação com os bytes UTF-8 do nome (19 por slot)
+    private static final byte MARCA_NOME_LONGO = 0x01;
+
+    //Quantas entradas o iterador da listagem busca de cada vez (uma seção crítica de leitura por página)
+    private static final int TAM_PAGINA_LISTAGEM = 256;
+
+    //Quantos buffers de bloco livres o pool guarda para as próximas operações (um bloco cada). Só ficam guardados
+    //os que chegaram a ser criados: quantas operações emprestaram um buffer ao mesmo tempo
+    private static final int BUFFERS_NO_POOL = 8;
+
+    //Quanto do limite de uma transação fica para as entradas de diretório de uma operação (nome longo, subdiretório que cresce)
+    private static final int RESERVA_DIRETORIO_JOURNAL = 4 * 1024;
 
 
     private final Disco disco;
+
+    //Geometria e regiões do disco, lidas do superbloco na montagem (ou escolhidas na formatação)
+    private final Superbloco superbloco;
+    private final int tamBloco;
+    private final int numBlocos;
+    private final int entradasPorBlocoDiretorio; //as entradas do diretório não atravessam blocos
+
+    //Capacidade máxima de arquivos no diretório raiz: quantas entradas cabem nos blocos da região do diretório
+    //Serve para ver se ainda tem memoria para alocar o arquivo x. Os subdiretórios crescem um bloco por vez, sem limite fixo
+    private final int numeroMaximoEntradas;
+
+    //Quanto do journal um lote do createAll/appendAll usa por transação. A outra metade fica para as operações de outras
+    //threads que entram no mesmo group commit
+    private final int limiteLoteJournal;
+
+    //Quantos blocos uma operação aloca ou libera numa transação: um create, append, setLength ou remove maior do que isso
+    //é feito em partes, cada uma confirmada antes da seguinte (ver reservarEmPartes e liberarEmPartes)
+    private final int blocosPorTransacao;
     private final int[] fat;
+    private final FormatoFat formato; //como cada entrada da FAT liga um bloco ao próximo (e pula as posições de buraco sem bloco)
+    private final BitSet fatSuja; //entradas da FAT alteradas na memória e ainda não confirmadas no journal
+
+    //Índice dos diretórios na memória, montado na inicialização e mantido em create/append/remove.
+    //Cada diretório tem o seu índice por nome: achar "/A/B/C.TXT" são três consultas de hash, qualquer que seja o total de arquivos
+    private final Diretorio raiz; //diretório raiz, na região fixa do diretório. Os subdiretórios ficam nas entradas dele (e dos filhos)
+    private final Set<Diretorio> diretoriosSujos; //diretórios com slots alterados na memória e ainda não confirmados no journal
+    private Map<Diretorio, BitSet> slotsNoGrupo; //slots coletados pelo grupo sendo confirmado (voltam a ser sujos se ele falhar)
+    private final byte[] bufferEntrada; //buffer reutilizado para codificar uma entrada antes de gravar
+    private final ByteBuffer visaoEntrada; //bufferEntrada visto como ByteBuffer, para gravar o nome e os inteiros sem criar arrays
+    private final PoolBuffers buffers; //buffers de um bloco emprestados pela montagem, pelas escritas em buracos e pelos canais com buffer direto
+    private final byte[] zeros; //um bloco de zeros, só lido: fonte das escritas que zeram um bloco ou o resto dele
+    private final Journal journal; //FAT e diretório só mudam no disco através de transações do journal
+    private final GrupoCommit grupoCommit; //junta as transações de operações concorrentes numa confirmação só
+    private final BitSet blocosALiberar; //blocos de arquivos removidos que só voltam ao mapa de livres depois da remoção confirmada
+    private BitSet liberandoNoGrupo; //blocos a liberar que foram coletados pelo grupo sendo confirmado
+    private final BitSet blocosARevogar; //blocos que tinham entradas de diretório e foram liberados: vão revogados no próximo registro do journal
+    private final Deque<Integer> blocosDiretorioZerados; //blocos reservados e já zerados fora do lock, esperando um subdiretório cheio
+
+    private final MapaBlocosLivres blocosLivres; //mapa de bits dos blocos livres, reconstruído a partir da FAT na montagem
     private boolean inicializado;
 
+    //Concorrência: cada arquivo tem o seu lock (na EntradaDiretorio), então leituras e appends de arquivos diferentes nunca disputam lock.
+    //As escritas só entram no lockMetadados (FAT, alocador e diretórios) em seções críticas curtas, sem I/O de dados dentro.
+    //Ordem para travar: sempre o lock do arquivo antes do lockMetadados
+    private final ReentrantReadWriteLock lockMetadados;
+
+    //Fotografias publicadas ao fim de cada seção crítica. listarArquivos() e freeSpace() leem só elas, sem lock
+    private volatile int livresPublicados;
+    private final Set<Diretorio> diretoriosAlterados; //diretórios cuja lista de arquivos precisa ser publicada de novo
+    private int leiturasMontagem; //métrica: leituras de bloco feitas na montagem
+
     public Fat32(Disco disco) throws IOException {
+        this(disco, 0, 1);
+    }
+
+    //janelaGrupoMicros: quanto a primeira operação de um grupo espera outras chegarem antes de confirmar (0 = não espera)
+    //limiteGrupo: com tantas operações esperando, o grupo é confirmado sem esperar o resto da janela
+    public Fat32(Disco disco, long janelaGrupoMicros, int limiteGrupo) throws IOException {
         this.disco = disco;
-        this.fat = new int[NUM_BLOCO];
-        inicializarSistema();
+
+        //Disco sem superbloco nem layout antigo: ainda não foi formatado. A formatação usa a geometria que o Disco abriu
+        Superbloco lido = lerSuperbloco(disco);
+        boolean formatar = lido == null;
+        this.superbloco = formatar ? Superbloco.calcular(disco.getTamBloco(), disco.getNumBlocos()) : lido;
+        if (superbloco.getTamBloco() != disco.getTamBloco() || superbloco.getNumBlocos() != disco.getNumBlocos()) {
+            throw new IOException("Geometria do disco diferente da gravada no superbloco");
+        }
+        this.tamBloco = superbloco.getTamBloco();
+        this.numBlocos = superbloco.getNumBlocos();
+        this.entradasPorBlocoDiretorio = tamBloco / TAM_ENTRADA_DIRETORIO;
+        this.numeroMaximoEntradas = superbloco.getBlocosDiretorio() * entradasPorBlocoDiretorio;
+        this.limiteLoteJournal = superbloco.getCapacidadeJournal() / 2;
+        //Pior caso de custoNoJournal: cada entrada da FAT num trecho separado, 12 bytes no registro
+        this.blocosPorTransacao = Math.max(1, (limiteLoteJournal - RESERVA_DIRETORIO_JOURNAL) / 12);
+
+        this.fat = new int[numBlocos];
+        this.formato = new FormatoFat(tamBloco, numBlocos);
+        this.fatSuja = new BitSet(numBlocos);
+        this.raiz = new Diretorio(null, numeroMaximoEntradas);
+        this.diretoriosSujos = new HashSet<>();
+        this.diretoriosAlterados = new HashSet<>();
+        this.bufferEntrada = new byte[TAM_ENTRADA_DIRETORIO];
+        this.visaoEntrada = ByteBuffer.wrap(bufferEntrada);
+        //Buffers com array: quem usa o buffer emprestado também trabalha com byte[] (leitura e escrita de arquivos)
+        this.buffers = new PoolBuffers(tamBloco, BUFFERS_NO_POOL, false);
+        this.zeros = new byte[tamBloco];
+        this.journal = new Journal(disco, superbloco.getBlocoJournal(), superbloco.getDeslocamentoJournal(), superbloco.getCapacidadeJournal(),
+                superbloco.getBlocoFat(), TAM_ENTRADA_DIRETORIO);
+        this.blocosALiberar = new BitSet(numBlocos);
+        this.blocosARevogar = new BitSet();
+        this.blocosDiretorioZerados = new ArrayDeque<>();
+        this.grupoCommit = new GrupoCommit(journal, new GrupoCommit.Coletor() {
+            @Override
+            public TransacaoJournal coletar() {
+                return coletarTransacao();
+            }
+
+            @Override
+            public void confirmada(TransacaoJournal transacao) {
+                transacaoConfirmada();
+            }
+
+            @Override
+            public void devolver(TransacaoJournal transacao) {
+                devolverTransacao(transacao);
+            }
+        }, janelaGrupoMicros, limiteGrupo);
+        this.blocosLivres = new MapaBlocosLivres(numBlocos);
+        this.lockMetadados = new ReentrantReadWriteLock();
+        inicializarSistema(formatar);
     }
 
-    private void inicializarSistema() throws IOException {
+    //Lê o superbloco do começo do bloco 0. Sem superbloco, reconhece um disco do layout antigo já formatado
+    //(a entrada 0 da FAT, no começo do bloco 1, marca o diretório como ocupado). Retorna null se o disco nunca foi formatado
+    private static Superbloco lerSuperbloco(Disco disco) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(Superbloco.TAMANHO);
+        disco.read(0, 0, cabecalho);
+        Superbloco superbloco = Superbloco.ler(cabecalho.flip());
+        if (superbloco != null) {
+            return superbloco;
+        }
+
+        if (Superbloco.isGeometriaLegada(disco.getTamBloco(), disco.getNumBlocos())) {
+            ByteBuffer primeiraEntradaFat = ByteBuffer.allocate(4);
+            disco.read(1, 0, primeiraEntradaFat);
+            if (Superbloco.isLegado(disco.getTamanho(), primeiraEntradaFat.getInt(0))) {
+                return Superbloco.legado();
+            }
+        }
+        return null;
+    }
 
-        //Le os dados de um bloco especifico: o diretório
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
-        if (blocoDir[0] == 0) {
+    private void inicializarSistema(boolean formatar) throws IOException {
+        if (formatar) {
             formatarDisco();
         } else {
-            carregarFat();
+            //Antes de ler diretório e FAT, reaplica as transações confirmadas que podem não ter chegado ao lugar delas
+            journal.recuperar();
+            leiturasMontagem++;
+
+            //Um buffer emprestado recebe um bloco por vez: primeiro os da FAT, depois os dos diretórios
+            ByteBuffer bloco = buffers.emprestar();
+            try {
+                carregarFat(bloco);
+
+                //A raiz e depois cada subdiretório encontrado (os blocos deles vêm da FAT), até não sobrar nenhum
+                Deque<Diretorio> pendentes = new ArrayDeque<>();
+                pendentes.add(raiz);
+                while (!pendentes.isEmpty()) {
+                    carregarDiretorio(pendentes.poll(), bloco, pendentes);
+                }
+            } finally {
+                buffers.devolver(bloco);
+            }
+            recolherBlocosOrfaos();
         }
+        blocosLivres.reconstruir(fat);
+        diretoriosAlterados.add(raiz);
+        publicarMetadados();
         this.inicializado = true;
 
-        //1. Vai fazer uma verificação se o disco já foi inicializado
-        //2. Vai ler o primeiro bloco, se for 0, significa que o disco não foi inicializado
-        //3. Se não for 0, chama a função para carregar a FAT
-        //4. Iniciliaza o disco
+        //1. Disco nunca formatado (sem superbloco): formata com a geometria do Disco
+        //2. Senão reaplica o journal: depois disso diretório e FAT no disco refletem todas as operações confirmadas
+        //3. Carrega a FAT e monta o índice da raiz e de cada subdiretório, lendo um bloco por vez para o mesmo buffer
+        //4. Devolve blocos que ficaram marcados na FAT sem pertencer a nenhum arquivo (queda no meio de um create)
+        //5. Monta o mapa de blocos livres a partir da FAT e publica a lista de arquivos e o espaço livre
+        //6. Iniciliaza o disco
     }
 
     private void formatarDisco() throws IOException {
 
-        //Se o diretorio for vazio, cria um novo diretorio com o tamanho do bloco 64KB
-        byte[] dirVazio = new byte[TAM_BLOCO];
-
-        disco.write(DIRETORIO_BLOCO, dirVazio);
-
+        //Cria um diretório vazio (todas as entradas zeradas) do tamanho da região do diretório
+        //O diretório raiz na memória já nasce vazio
+        disco.write(superbloco.getBlocoDiretorio(), 0, ByteBuffer.allocate(superbloco.getBlocosDiretorio() * tamBloco));
 
         //Preenche todas as posições com 0 - FAT livre.
-        //Preencher os blocos da FAT como vazios
         Arrays.fill(fat, 0);
 
-        //Dizer que o bloco que armazena a FAT é ocupado (-1)
-        fat[DIRETORIO_BLOCO] = -1;
-
-
-        //Calculo quantos blocos vão ser necessários para armazenar a FAT. Coloco como -1 os blocos ocupados pela FAT
-        int blocosFAT = (NUM_BLOCO * 4 + TAM_BLOCO - 1) / TAM_BLOCO;
-
-        for (int i = 1; i <= blocosFAT; i++) {
+        //Os blocos do superbloco, do journal, do diretório e da FAT são ocupados (-1), para não serem sobreescritos por arquivos
+        for (int i = 0; i < superbloco.getPrimeiroBlocoDados(); i++) {
             fat[i] = -1;
         }
 
+        //A FAT inteira vai direto para o disco (não cabe no journal num disco grande). Enquanto o superbloco não
+        //for gravado o disco continua "não formatado", então uma queda aqui só faz a formatação recomeçar
+        ByteBuffer fatNoDisco = ByteBuffer.allocate(superbloco.getBlocosFat() * tamBloco);
+        fatNoDisco.asIntBuffer().put(fat);
+        disco.write(superbloco.getBlocoFat(), 0, fatNoDisco);
+        fatSuja.clear();
+
+        //Journal vazio, começando a sequência do zero. iniciar() força o disco: diretório e FAT já estão duráveis
+        journal.iniciar();
 
-        gravarFat();
+        //Por último o superbloco: a partir deste force o disco está formatado
+        disco.write(0, 0, superbloco.codificar());
+        disco.sincronizar();
 
         //1. Preciso dessa função quando for inicializar o Disco;
-        //2. Crio um array (com todas as posições em 0). Esse bloco vai ser o diretorio, onde os arquivos vão estar;
+        //2. Zero a região do diretorio, onde os arquivos vão estar;
         //3. Inicializo a FAT com todas as posições em 0 (blocos livres);
-        //4. Marco o primeiro bloco da FAT como ocupado, porque é o diretório
-        //5. Calculo quantos blocos a FAT vai ocupar com essa formula: NUM_BLOCO * 4 + TAM_BLOCO - 1) / TAM_BLOCO
-        //6. Reservo todos os blocos da FAT como ocupados, para não serem sobreescritos por arquivos
+        //4. Marco como ocupados os blocos antes do primeiro bloco de dados (superbloco, journal, diretório e FAT)
+        //5. Gravo a FAT inteira e inicio o journal vazio
+        //6. Gravo o superbloco por último: um disco sem superbloco é formatado de novo na próxima montagem
     }
 
-    private void carregarFat() throws IOException {
+    //Lê as entradas de um diretório (a raiz ou um subdiretório) para o índice dele. Os subdiretórios encontrados vão para pendentes
+    //blocoDir: buffer de um bloco emprestado do pool, reaproveitado para todos os blocos dos diretórios
+    private void carregarDiretorio(Diretorio diretorio, ByteBuffer blocoDir, Deque<Diretorio> pendentes) throws IOException {
 
-        int blocoFat = 1;
+        //Percorre todas as entradas do diretório uma única vez, na montagem, lendo um bloco do diretório por vez
+        for (int i = 0; i < diretorio.getCapacidade(); i++) {
+            if (i % entradasPorBlocoDiretorio == 0) {
+                blocoDir.clear();
+                disco.read(blocoDaEntrada(diretorio, i), 0, blocoDir);
+                leiturasMontagem++;
+            }
+            int offset = (i % entradasPorBlocoDiretorio) * TAM_ENTRADA_DIRETORIO;
+
+            //Se for !=0 significa que a entrada está ocupada. Slot livre não cria nenhum objeto
+            byte primeiro = blocoDir.get(offset);
+            if (primeiro != 0) {
+                NomeArquivo nome;
+                int continuacoes = 0;
+                if (primeiro == MARCA_NOME_LONGO) {
+                    //Nome longo: os bytes dele estão nos slots seguintes, no mesmo bloco. O hash já vem pronto na entrada
+                    continuacoes = blocoDir.get(offset + 1) & 0xFF;
+                    int tamanhoNome = blocoDir.getShort(offset + 2) & 0xFFFF;
+                    if (continuacoes == 0 || i % entradasPorBlocoDiretorio + continuacoes >= entradasPorBlocoDiretorio
+                            || tamanhoNome > continuacoes * TAM_ENTRADA_DIRETORIO) {
+                        throw new IOException("Diretório corrompido: nome longo inválido no slot " + i);
+                    }
+                    byte[] utf8 = new byte[tamanhoNome];
+                    blocoDir.get(offset + TAM_ENTRADA_DIRETORIO, utf8);
+                    nome = NomeArquivo.longo(utf8, blocoDir.getInt(offset + 4));
+                } else {
+                    //Nome curto: duas palavras lidas direto do bloco
+                    nome = NomeArquivo.curto(NomeCurto.ler(blocoDir, offset));
+                }
+                int tamanho = blocoDir.getInt(offset + NomeCurto.TAMANHO);
+                int blocoInicial = blocoDir.getInt(offset + NomeCurto.TAMANHO + 4);
+
+                EntradaDiretorio entrada = new EntradaDiretorio(nome, 1 + continuacoes, tamanho & ~MARCA_DIRETORIO, blocoInicial, i);
+                if ((tamanho & MARCA_DIRETORIO) != 0) {
+                    //Subdiretório: as entradas dele estão nos blocos da cadeia, um bloco cheio de slots por bloco
+                    int capacidade = obterCadeia(entrada).getQuantidade() * entradasPorBlocoDiretorio;
+                    entrada.setSubdiretorio(new Diretorio(entrada, capacidade));
+                    pendentes.add(entrada.getSubdiretorio());
+                }
+                diretorio.colocar(entrada);
+                i += continuacoes;
+            }
+        }
+        diretoriosAlterados.add(diretorio);
 
-        int offset = 0;
+        //1. Lê cada bloco do diretório para o buffer recebido (as entradas de um bloco não continuam no próximo)
+        //2. Para cada entrada ocupada lê o nome (curto na própria entrada, ou longo nos slots seguintes), o tamanho e o bloco inicial
+        //3. Guarda a entrada no slot dela e no índice do diretório. Depois disso nenhuma busca por nome precisa ler o disco
+        //4. Entrada marcada como subdiretório ganha um Diretorio do tamanho da cadeia dela, que é lido depois
+    }
 
-        // Percorre todas as entradas da FAT, distribuídas pelos blocos. Le a FAT
-        for (int i = 0; i < NUM_BLOCO; i++) {
+    //Bloco do disco onde fica um slot do diretório: a raiz está na região fixa; um subdiretório, nos blocos da cadeia dele
+    private int blocoDaEntrada(Diretorio diretorio, int slot) {
+        int indice = slot / entradasPorBlocoDiretorio;
+        return diretorio.isRaiz() ? superbloco.getBlocoDiretorio() + indice : obterCadeia(diretorio.getEntrada()).get(indice);
+    }
 
-            // Verifica se o offset atingiu o tamanho do bloco
-            if (offset >= TAM_BLOCO) {
-                // Se o bloco foi completamente lido, passa para o próximo bloco
-                blocoFat++;
-                // Reseta o offset para o próximo bloco
-                offset = 0;
-            }
+    //buffer: buffer de um bloco emprestado do pool, reaproveitado para todos os blocos da FAT
+    private void carregarFat(ByteBuffer buffer) throws IOException {
 
-            //Le o bloco da FAt e retorna um array com essas informações
-            byte[] bloco = disco.read(blocoFat);
+        // Quantas entradas inteiras (4 bytes cada) cabem em um bloco
+        int entradasPorBloco = tamBloco / 4;
+
+        // Quantos blocos a FAT ocupa no disco (gravado no superbloco)
+        int blocosFAT = superbloco.getBlocosFat();
 
-            //Esta linha pega os dados do bloco lido e os converte em um valor inteiro (4 bytes). A FAT armazena 4bytes/32bits
-            fat[i] = ByteBuffer.wrap(bloco, offset, 4).getInt();
-            offset += 4;
+        for (int i = 0; i < blocosFAT; i++) {
+            //Le cada bloco da FAT uma única vez, a partir do primeiro bloco da FAT
+            buffer.clear();
+            disco.read(superbloco.getBlocoFat() + i, 0, buffer);
+            buffer.flip();
+            leiturasMontagem++;
+
+            //Quantas entradas da FAT estão neste bloco (o último bloco pode estar incompleto)
+            int inicio = i * entradasPorBloco;
+            int quantidade = Math.min(entradasPorBloco, numBlocos - inicio);
+
+            //Decodifica todas as entradas do bloco de uma vez: a visão IntBuffer lê os inteiros de 4 bytes (big-endian, como no journal)
+            buffer.asIntBuffer().get(fat, inicio, quantidade);
         }
 
-        //1.leio os blocos da FAT, começando em 1 pq o bloco 0 é o diretorio
-        //2. Auxiliar offset para percorrer os demais blocos
-        //3. Vai ler todo o array do bloco x, termina esse array e passa pro proximo
-        //4. Vai ler aquele bloco como um todo e Usa ByteBuffer.wrap(...).getInt() para extrair 4 bytes como um inteiro
+        //1.leio os blocos da FAT, começando no bloco que o superbloco indica
+        //2. Cada bloco é lido do disco uma única vez
+        //3. Calcula quantas entradas da FAT estão guardadas naquele bloco
+        //4. Converte o bloco inteiro em inteiros com ByteBuffer.asIntBuffer() e copia direto para o fat[]
         //A conversão de 4 bytes para um inteiro de 32 bits é essencial porque a FAT precisa armazenar informações complexas sobre blocos de dados.
         // Usar 1 byte por entrada não seria suficiente, já que ele só poderia representar um número de 0 a 255, enquanto 4 bytes permitem um número
         // muito maior de possibilidades.
-        //5. Passa pros proximos 4 bytes
+    }
+
+    //Quantos blocos foram lidos do disco para montar o sistema (diretório + FAT)
+    public int getLeiturasMontagem() {
+        return leiturasMontagem;
+    }
+
+    //Operações que esperaram confirmação e quantas confirmações (pares de force) foram feitas para elas
+    public long getOperacoesConfirmadas() {
+        return grupoCommit.getOperacoes();
+    }
+
+    public long getConfirmacoesJournal() {
+        return grupoCommit.getConfirmacoes();
+    }
+
+    //Objetivo da função: checkpoint do journal, para a desmontagem ou um momento sem operações.
+    //Confirma o que está pendente, força o disco e recomeça o journal vazio: a próxima montagem não tem nada para reaplicar
+    public void checkpoint() throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+        confirmarAlteracoes();
+        journal.checkpoint();
+    }
+
+    //Quem grava os dados de um arquivo novo nos blocos reservados para ele (array em memória, canal do sistema hospedeiro...)
+    private interface GravadorDados {
+        void gravar(int[] blocos) throws IOException;
     }
 
     @Override
@@ -120,42 +379,239 @@ public class Fat32 implements FileSystem {
         if (!inicializado) throw new IOException("Sistema não inicializado");
         if (data == null) throw new IllegalArgumentException("Dados não podem ser nulos");
 
-        //Chama a função de formatar nome
-        String nomeFormatado = formatarNomeArquivo(fileName);
-        if (buscarEntradaDiretorio(nomeFormatado) != null) {
-            throw new IOException("Arquivo já existe: " + nomeFormatado);
+        //GravarDados(): escreve os dados do array nos blocos alocados
+        criarArquivo(fileName, data.length, blocos -> gravarDados(data, 0, data.length, blocos));
+    }
+
+    //Objetivo da função: importar um arquivo do sistema hospedeiro direto para os blocos do disco virtual.
+    //Os dados vão do arquivo de origem para o disco com transferFrom (cópia feita pelo kernel), sem passar por byte[]
+    public void importarArquivo(Path origem, String fileName) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        try (FileChannel canalOrigem = FileChannel.open(origem, StandardOpenOption.READ)) {
+            long tamanho = canalOrigem.size();
+            if (tamanho > Integer.MAX_VALUE) {
+                throw new IOException("Arquivo grande demais: " + origem);
+            }
+            criarArquivo(fileName, (int) tamanho, blocos -> transferirParaBlocos(canalOrigem, (int) tamanho, blocos));
+        }
+
+        //1. Abre o arquivo de origem e pega o tamanho dele
+        //2. Cria o arquivo como no create, mas os dados de cada trecho contínuo de blocos são transferidos direto do canal de origem
+    }
+
+    //Objetivo da função: exportar um arquivo do disco virtual para o sistema hospedeiro, trecho contínuo por trecho contínuo,
+    //com transferTo (cópia feita pelo kernel), sem passar por byte[]
+    public void exportarArquivo(String fileName, Path destino) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        EntradaDiretorio entrada = travarArquivo(Caminho.de(fileName), false);
+        if (entrada == null) {
+            throw new IOException("Arquivo não encontrado: " + fileName);
+        }
+        try (FileChannel canalDestino = FileChannel.open(destino, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int tamanhoArquivo;
+            CadeiaBlocos cadeia;
+            lockMetadados.readLock().lock();
+            try {
+                tamanhoArquivo = entrada.getFileSize();
+                cadeia = obterCadeia(entrada);
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+
+            int copiados = 0;
+            int indice = 0;
+            int ultimoIndice = cadeia.getQuantidade() - 1;
+            int escritosNoUltimo = cadeia.getEscritosNoUltimo();
+            while (copiados < tamanhoArquivo) {
+                //Buraco: no destino só avança a posição, e o arquivo exportado também fica esparso (se o sistema hospedeiro permite)
+                if (indice >= cadeia.getQuantidade() || cadeia.isBuraco(indice)) {
+                    int bytesDoBuraco = indice >= cadeia.getQuantidade() ? tamanhoArquivo - copiados
+                            : Math.min(tamBloco, tamanhoArquivo - copiados);
+                    canalDestino.position(canalDestino.position() + bytesDoBuraco);
+                    copiados += bytesDoBuraco;
+                    indice++;
+                    continue;
+                }
+
+                //Do último bloco só vale o começo: o resto também é buraco no destino
+                if (indice == ultimoIndice && escritosNoUltimo < tamBloco) {
+                    int bytesDoBloco = Math.min(tamBloco, tamanhoArquivo - copiados);
+                    int bytesDoDisco = Math.min(escritosNoUltimo, bytesDoBloco);
+                    if (disco.transferirPara(cadeia.get(indice), 0, bytesDoDisco, canalDestino) < bytesDoDisco) {
+                        throw new IOException("Falha ao exportar " + fileName);
+                    }
+                    canalDestino.position(canalDestino.position() + bytesDoBloco - bytesDoDisco);
+                    copiados += bytesDoBloco;
+                    indice++;
+                    continue;
+                }
+
+                //Junta os blocos vizinhos da cadeia num trecho só, como no read
+                int inicioTrecho = cadeia.get(indice);
+                int blocosNoTrecho = 1;
+                while ((long) blocosNoTrecho * tamBloco < tamanhoArquivo - copiados
+                        && cadeia.get(indice + blocosNoTrecho) == inicioTrecho + blocosNoTrecho
+                        && !cadeia.isBuraco(indice + blocosNoTrecho)
+                        && (indice + blocosNoTrecho != ultimoIndice || escritosNoUltimo == tamBloco)) {
+                    blocosNoTrecho++;
+                }
+
+                int bytesDesteTrecho = (int) Math.min((long) blocosNoTrecho * tamBloco, tamanhoArquivo - copiados);
+                if (disco.transferirPara(inicioTrecho, 0, bytesDesteTrecho, canalDestino) < bytesDesteTrecho) {
+                    throw new IOException("Falha ao exportar " + fileName);
+                }
+                copiados += bytesDesteTrecho;
+                indice += blocosNoTrecho;
+            }
+
+            //Avançar a posição não muda o tamanho: um arquivo que termina num buraco ganha o último byte (zero) escrito
+            if (canalDestino.size() < tamanhoArquivo) {
+                canalDestino.write(ByteBuffer.allocate(1), tamanhoArquivo - 1);
+            }
+        } finally {
+            destravarArquivo(entrada, false);
+        }
+
+        //1. Busca o arquivo e trava ele para leitura
+        //2. Abre (ou cria, ou zera) o arquivo de destino no sistema hospedeiro
+        //3. Percorre a cadeia do arquivo juntando blocos vizinhos em trechos
+        //4. Transfere cada trecho do disco para o destino com uma chamada só, até copiar o tamanho do arquivo
+    }
+
+    private void criarArquivo(String fileName, int tamanho, GravadorDados gravador) throws IOException {
+
+        //Separa o caminho e formata o nome de cada parte
+        Caminho caminho = Caminho.de(fileName);
+        if (caminho.isRaiz()) {
+            throw new IOException("Nome de arquivo inválido: " + fileName);
         }
 
         //Cria um inteiro com a quantidade de blocos que preciso
-        //data.length da o tamanho do arquivo que veio pelo byte [] data por parâmetro no método
-        int blocosNecessarios = (data.length + TAM_BLOCO - 1) / TAM_BLOCO;
+        //tamanho é o tamanho do arquivo que vai ser gravado
+        int blocosNecessarios = (tamanho + tamBloco - 1) / tamBloco;
+
+        //Arquivo com mais blocos do que cabem numa transação: a maior parte deles é reservada antes, em partes confirmadas.
+        //O diretório e o nome são conferidos antes disso, para não reservar (e confirmar) nada à toa
+        if (blocosNecessarios > blocosPorTransacao) {
+            lockMetadados.readLock().lock();
+            try {
+                diretorioParaCriar(caminho);
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+        }
+        int[] parte = reservarEmPartes(blocosNecessarios, -1);
 
+        int[] blocos;
 
-        if (blocosNecessarios > freeSpace()) {
-            throw new IOException("Espaço insuficiente no disco");
+        //Seção crítica curta na FAT/alocador: confere o diretório, o nome, o espaço e reserva os blocos (os que faltam depois da parte)
+        lockMetadados.writeLock().lock();
+        try {
+            diretorioParaCriar(caminho);
+            if (blocosNecessarios - parte.length > blocosLivres.getLivres()) {
+                throw new IOException("Espaço insuficiente no disco");
+            }
+
+            //Cria um array com a quantidade de blocos necessarios
+            blocos = completarBlocos(parte, blocosNecessarios - parte.length, -1);
+            publicarMetadados();
+        } catch (IOException | RuntimeException e) {
+            liberarCadeia(primeiroBloco(parte), false);
+            publicarMetadados();
+            throw e;
+        } finally {
+            lockMetadados.writeLock().unlock();
         }
 
+        //O gravador escreve os dados nos blocos alocados, sem lock nenhum: o arquivo ainda não está no diretório
+        //e os blocos reservados são só deste create
+        try {
+            gravador.gravar(blocos);
+        } catch (IOException | RuntimeException e) {
+            liberarBlocosReservados(primeiroBloco(blocos));
+            throw e;
+        }
 
-        //Cria um array com a quantidade de blocos necessarios
-        int[] blocos = alocarBlocos(blocosNecessarios);
+        long geracao;
+        EntradaDiretorio criada;
+        while (true) {
+            Diretorio cheio;
+            lockMetadados.writeLock().lock();
+            try {
+                //Outro create com o mesmo nome pode ter terminado (ou o diretório ter sido removido) enquanto os dados eram gravados.
+                //Os blocos reservados nunca pertenceram a um arquivo confirmado, então voltam a ser livres na hora
+                try {
+                    //AdicionarEntradaDiretorio(): adiciona o arquivo ao diretório
+                    cheio = diretorioParaCriar(caminho);
+                    criada = adicionarEntradaDiretorio(cheio, caminho.getNome(), tamanho, primeiroBloco(blocos));
+                    if (criada != null) {
+                        publicarMetadados();
+                        geracao = grupoCommit.getGeracaoAberta();
+                        break;
+                    }
+                } catch (IOException e) {
+                    //Nome já existe, diretório sumiu ou está cheio: devolve os blocos reservados
+                    liberarCadeia(primeiroBloco(blocos), false);
+                    publicarMetadados();
+                    throw e;
+                }
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
 
-        //GravarDados(): escreve os dados nos blocos alocados
-        gravarDados(data, blocos);
+            //O subdiretório está cheio e não tem bloco zerado esperando: zera um fora do lock e tenta de novo
+            try {
+                prepararBlocoDiretorio(cheio);
+            } catch (IOException | RuntimeException e) {
+                liberarBlocosReservados(primeiroBloco(blocos));
+                throw e;
+            }
+        }
 
-        //AdicionarEntradaDiretorio(): adiciona o arquivo ao diretório
-        adicionarEntradaDiretorio(nomeFormatado, data.length, blocos[0]);
+        //Ponto de durabilidade: espera o grupo com a FAT e a entrada nova ser confirmado no journal.
+        //Se a confirmação falhar, o create falhou: o arquivo não pode continuar aparecendo no diretório
+        try {
+            grupoCommit.aguardar(geracao);
+        } catch (IOException e) {
+            desfazerCriacao(criada);
+            throw e;
+        }
 
-        //GravarFat(): salva a FAT atualizada no disco
-        gravarFat();
+        //1. Vai criar um arquivo com o nome validado, no diretório do caminho
+        //2. Vai calcular quantos blocos serão necessarios e arrendor para mais, caso preciso.
+        // Os que não cabem numa transação do journal são reservados antes, em partes
+        //3. Numa seção crítica curta, verifica se o nome existe, o espaço disponivel e aloca os blocos
+        //4. Fora da seção crítica, o gravador escreve os dados nos blocos alocados do disco
+        //5. Em outra seção crítica curta confere o diretório e o nome de novo e adiciona o arquivo no diretorio
+        // (se o subdiretório precisa de mais um bloco, ele é zerado fora da seção crítica e a seção recomeça)
+        //6. Publica a nova lista de arquivos e o espaço livre e, fora da seção crítica, espera a FAT e o diretório
+        // serem confirmados no journal (junto com as operações de outras threads, no mesmo grupo). Se falhar, tira o arquivo do diretório
+    }
 
-        //1. Vai fazer uma verificação se o disco foi inicializado e se os dados não sao null;
-        //2. Vai criar um arquivo com o nome formatado
-        //3. Vai calcular quantos blocos serão necessarios e arrendor para mais, caso preciso.
-        // data.length vai dizer o tamanho do dado + o tamanho do bloco
-        //4. Verificação de espaço disponivel
-        //5. Aloca blocos livres e retorna um array com eles, para que a função gravarDados() escreva esses dados no bloco bloco alocado do disco
-        // 6. Adiciona o arquivo no diretorio
-        //7. Atualiza a FAT
+    //A confirmação do create falhou: tira o arquivo do diretório e libera os blocos dele, como um remove que não espera o journal
+    //(ele acabou de falhar). As alterações continuam pendentes e o próximo grupo leva a entrada zerada junto com a criação
+    private void desfazerCriacao(EntradaDiretorio entrada) {
+        //Sem travarEntrada: se o arquivo já foi removido não tem nada a desfazer (e o erro do create é o que importa)
+        entrada.getLock().writeLock().lock();
+        try {
+            lockMetadados.writeLock().lock();
+            try {
+                //Outra thread pode ter removido o arquivo enquanto a confirmação falhava
+                if (isNoDiretorio(entrada)) {
+                    liberarCadeia(formato.proximo(entrada.getStarterBlock()), true);
+                    removerEntradaDiretorio(entrada);
+                    entrada.setCadeia(null);
+                    publicarMetadados();
+                }
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
+        } finally {
+            destravarArquivo(entrada, true);
+        }
     }
 
 
@@ -165,73 +621,227 @@ public class Fat32 implements FileSystem {
         //Verifica se os dados que vieram por parametro não são null
         if (data == null || data.length == 0) return;
 
-        //Busca o arquivo no diretorio pelo nome. Passa para o metodo buscarEntradaDiretorio
-        EntradaDiretorio entrada = buscarEntradaDiretorio(fileName);
+        //Espera a confirmação sem segurar o lock do arquivo: outras operações neste arquivo já podem continuar
+        grupoCommit.aguardar(anexar(fileName, data));
+    }
+
+    //Faz o append na memória e no disco e retorna a geração do group commit que vai confirmar as alterações
+    private long anexar(String fileName, byte[] data) throws IOException {
+
+        //Busca o arquivo no diretorio e trava ele para escrita: appends em outros arquivos continuam
+        EntradaDiretorio entrada = travarArquivo(Caminho.de(fileName), true);
         if (entrada == null) {
             throw new IOException("Arquivo não encontrado: " + fileName);
         }
+        try {
+            return anexarTravado(entrada, data, 0, data.length);
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+    }
 
-        //Calcula o espaço necessário para os dados adicionados
-        int blocosNecessarios = (data.length + TAM_BLOCO - 1) / TAM_BLOCO;
-
-        //Verifica se tem espaço no disco
-        if (blocosNecessarios > freeSpace()) {
-            throw new IOException("Espaço insuficiente para adicionar dados");
+    //Append do trecho data[off, off + tamanho) num arquivo já travado para escrita
+    private long anexarTravado(EntradaDiretorio entrada, byte[] data, int off, int tamanho) throws IOException {
+        CadeiaBlocos cadeia;
+        int tamanhoAtual;
+
+        lockMetadados.readLock().lock();
+        try {
+            //O último bloco vem da cadeia em memória do arquivo, sem percorrer a FAT desde o getStarterBlock
+            cadeia = obterCadeia(entrada);
+            tamanhoAtual = entrada.getFileSize();
+        } finally {
+            lockMetadados.readLock().unlock();
         }
 
-        //Percorre do primeiro (getStarterBlock) até o último bloco.
-        //Ocupados são 1 e livre 0
-        int ultimoBloco = entrada.getStarterBlock();
-        while (fat[ultimoBloco] > 0) {
-            ultimoBloco = fat[ultimoBloco];
+        //Arquivo esparso que termina num buraco (a cadeia não chega até o fim dele, ou do último bloco só vale o começo
+        //depois de um setLength): o append é uma escrita no fim que cai no buraco
+        //Só até o fim do bloco onde o arquivo termina: dali em diante a cadeia chega ao fim do arquivo e o resto é um append normal
+        int blocosNoTamanho = (tamanhoAtual + tamBloco - 1) / tamBloco;
+        if (cadeia.getQuantidade() < blocosNoTamanho || cadeia.getEscritosNoUltimo() < tamBloco) {
+            int noBuraco = Math.min(tamanho, tamBloco - tamanhoAtual % tamBloco);
+            long geracao = escreverNosBuracos(entrada, tamanhoAtual, data, off, noBuraco);
+            if (noBuraco == tamanho) {
+                return geracao;
+            }
+            return Math.max(geracao, anexarTravado(entrada, data, off + noBuraco, tamanho - noBuraco));
         }
+        int ultimoBloco = cadeia.getUltimo(); //-1 se o arquivo está vazio
 
-        // Preenche o espaço restante no último bloco
         //Usa o espaço livre no último bloco para não desperdiçar memória
-        int espacoLivre = TAM_BLOCO - (entrada.getFileSize() % TAM_BLOCO);
-        int offset = 0;
+        int espacoLivre = tamBloco - (tamanhoAtual % tamBloco);
+        int bytesNoUltimo = (espacoLivre > 0 && espacoLivre < tamBloco) ? Math.min(espacoLivre, tamanho) : 0;
+
+        //Caso não caibam no último bloco e precise de mais blocos, reserva eles numa seção crítica curta
+        int[] novosBlocos = null;
+        if (bytesNoUltimo < tamanho) {
+            //Calcula o espaço necessário para os dados adicionados
+            int blocosNecessarios = (tamanho - bytesNoUltimo + tamBloco - 1) / tamBloco;
+
+            //Prefere o bloco logo depois do último, para o arquivo continuar contínuo no disco.
+            //Os blocos que não cabem numa transação do journal são reservados antes, em partes
+            int preferido = ultimoBloco > 0 ? ultimoBloco + 1 : -1;
+            int[] parte = reservarEmPartes(blocosNecessarios, preferido);
+
+            lockMetadados.writeLock().lock();
+            try {
+                //Verifica se tem espaço no disco
+                if (blocosNecessarios - parte.length > blocosLivres.getLivres()) {
+                    throw new IOException("Espaço insuficiente para adicionar dados");
+                }
+                novosBlocos = completarBlocos(parte, blocosNecessarios - parte.length, preferido);
+                publicarMetadados();
+            } catch (IOException | RuntimeException e) {
+                liberarCadeia(primeiroBloco(parte), false);
+                publicarMetadados();
+                throw e;
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
+        }
 
-        //Se tiver espaço livre no ultimo bloco, preenche
-        if (espacoLivre > 0 && espacoLivre < TAM_BLOCO) {
+        //Gravação dos dados fora da seção crítica: o último bloco é deste arquivo (travado) e os novos ainda não estão ligados a ninguém
+        try {
+            //Se tiver espaço livre no ultimo bloco, preenche
+            if (bytesNoUltimo > 0) {
 
-            //Le os dados do último bloco do arquivo e coloca num array do tipo byte
-            //Aproveitamento do espaço livre
-            byte[] blocoExistente = disco.read(ultimoBloco);
-            int bytesParaEscrever = Math.min(espacoLivre, data.length);
+                //Aproveitamento do espaço livre: grava só os bytes novos, na posição do fim do arquivo dentro do último bloco.
+                //O que já estava no bloco não muda, então não precisa ser lido nem regravado
+                disco.write(ultimoBloco, tamBloco - espacoLivre, data, off, bytesNoUltimo);
+            }
 
-            //Copia parte dos dados para o espaço livre no último bloco
-            System.arraycopy(data, 0, blocoExistente, TAM_BLOCO - espacoLivre, bytesParaEscrever);
+            // Grava os dados restantes nos blocos novos
+            if (novosBlocos != null) {
+                gravarDados(data, off + bytesNoUltimo, tamanho - bytesNoUltimo, novosBlocos);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (novosBlocos != null) {
+                liberarBlocosReservados(novosBlocos[0]);
+            }
+            throw e;
+        }
 
-            //Salva o pultimo bloco no disco
-            disco.write(ultimoBloco, blocoExistente);
+        // Atualiza o diretório e a FAT
+        lockMetadados.writeLock().lock();
+        try {
+            if (novosBlocos != null) {
+                int primeiroNovo = cadeia.getQuantidade();
+                cadeia.adicionar(novosBlocos); // Mantém a cadeia em memória igual à FAT
+                // Liga o último bloco ao novo (se ele é um bloco de buraco, continua sendo).
+                // Arquivo vazio: o primeiro bloco novo vira o bloco inicial
+                religar(entrada, cadeia, primeiroNovo, cadeia.getQuantidade() - 1);
+            }
 
-            //Salva o restante do conteúdo para ser salvo nos próximos blocos
-            offset += bytesParaEscrever;
+            //Atualiza o tamanho do arquivo. A ligação na FAT e o tamanho novo vão juntos para o journal
+            entrada.setFileSize(tamanhoAtual + tamanho);
+            atualizarEntradaDiretorio(entrada);
+            return grupoCommit.getGeracaoAberta();
+        } finally {
+            lockMetadados.writeLock().unlock();
         }
 
-        //Caso não caibam no último bloco e precise de mais blocos
-        // Aloca novos blocos se necessário e grava os dados restantes
-        //Se houver dados adicionais para gravar, aloca mais blocos e liga-os ao último bloco
-        if (offset < data.length) {
-            int[] novosBlocos = alocarBlocos((data.length - offset + TAM_BLOCO - 1) / TAM_BLOCO);
-            gravarDados(Arrays.copyOfRange(data, offset, data.length), novosBlocos);
-            fat[ultimoBloco] = novosBlocos[0]; // Liga o último bloco ao novo
+        //1. Pega o último bloco de dados na cadeia em memória do arquivo (montada uma vez, depois só estendida).
+        // Se o arquivo termina num buraco, o pedaço até o fim do bloco dele é feito pelo escreverNosBuracos
+        //2. Calcula quanto cabe no último bloco e, se faltar, reserva blocos novos (verificando se existe espaço no disco).
+        // Os que não cabem numa transação do journal são reservados e confirmados antes, em partes
+        //3. Fora da seção crítica, coloca mais dados no último bloco e grava o restante nos blocos novos.
+        //4. Os blocos alocados não precisam estar em sequência, mas são escolhidos entre os blocos livres disponíveis
+        //5. Atualiza a ligação entre os blocos antigos e novos na FAT, conectando o último bloco ocupado ao novo bloco alocado
+        // (se o arquivo estava vazio, o primeiro bloco novo vira o bloco inicial da entrada)
+        //6. Atualiza o diretorio e a FAT e retorna a geração do grupo que vai levar essas alterações para o journal
+    }
+
+    @Override
+    public void createAll(Map<String, byte[]> arquivos) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+        if (arquivos == null) throw new IllegalArgumentException("Arquivos não podem ser nulos");
+
+        //Formata todos os nomes antes de mexer no disco e recusa nomes que ficam iguais dentro do próprio lote
+        List<Caminho> nomes = new ArrayList<>(arquivos.size());
+        List<byte[]> conteudos = new ArrayList<>(arquivos.size());
+        Set<Caminho> nomesDoLote = new HashSet<>();
+        for (Map.Entry<String, byte[]> arquivo : arquivos.entrySet()) {
+            if (arquivo.getValue() == null) throw new IllegalArgumentException("Dados não podem ser nulos");
+
+            Caminho nomeFormatado = Caminho.de(arquivo.getKey());
+            if (nomeFormatado.isRaiz()) {
+                throw new IOException("Nome de arquivo inválido: " + arquivo.getKey());
+            }
+            if (!nomesDoLote.add(nomeFormatado)) {
+                throw new IOException("Nome repetido no lote: " + nomeFormatado);
+            }
+            nomes.add(nomeFormatado);
+            conteudos.add(arquivo.getValue());
         }
 
-        // Atualiza o diretório e a FAT
-        //Atualiza o tamanho do arquivo e escreve a FAT no disco
-        entrada.setFileSize(entrada.getFileSize() + data.length);
-        atualizarEntradaDiretorio(entrada);
-        gravarFat();
+        //Divide o lote em partes cujas alterações de metadados cabem com folga num registro do journal
+        int inicio = 0;
+        while (inicio < nomes.size()) {
+            int fim = inicio;
+            int custo = 0;
+            while (fim < nomes.size()) {
+                int custoArquivo = custoNoJournal(nomes.get(fim), (conteudos.get(fim).length + tamBloco - 1) / tamBloco);
+                if (fim > inicio && custo + custoArquivo > limiteLoteJournal) break;
+                custo += custoArquivo;
+                fim++;
+            }
+            criarLote(nomes.subList(inicio, fim), conteudos.subList(inicio, fim));
+            inicio = fim;
+        }
 
-        //1. Verifica se o disco foi inicializado e se os dados não são null
-        //2. Busca a entrada do arquivo no diretório para verificar se o arquivo já existe.
-        //3. Vai fazer uma verificação para ver se existe espaço necessario no disco.
-        //4. Percorre a FAT a partir do bloco inicial do arquivo até o último bloco ocupado, identificando o último bloco de dados
-        //5. Quando chegar no último bloco ocupado, vai colocar mais dados nele, e caso necessário alocar mais blocos.
-        //6. Os blocos alocados não precisam estar em sequência, mas são escolhidos entre os blocos livres disponíveis
-        //7. Atualiza a ligação entre os blocos antigos e novos na FAT, conectando o último bloco ocupado ao novo bloco alocado
-        //8. Atualiza o diretorio e a FAT
+        //1. Verifica se o disco foi inicializado e se o mapa não é null
+        //2. Valida os caminhos e confere se dois arquivos do lote não são o mesmo caminho (maiúsculas e minúsculas não contam)
+        //3. Separa o lote em partes que cabem numa transação do journal
+        //4. Cada parte é criada por inteiro ou não é criada: se uma parte falhar, as anteriores continuam criadas
+    }
+
+    @Override
+    public void appendAll(Map<String, byte[]> arquivos) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+        if (arquivos == null) throw new IllegalArgumentException("Arquivos não podem ser nulos");
+
+        //Cada append é feito sem esperar o journal. Só espera quando as alterações acumuladas enchem uma transação e no fim
+        long geracao = 0;
+        int custo = 0;
+        for (Map.Entry<String, byte[]> arquivo : arquivos.entrySet()) {
+            byte[] data = arquivo.getValue();
+            if (data == null || data.length == 0) continue;
+
+            //Pior caso: os bytes caem em blocos novos, mais a ligação no último bloco atual
+            int custoArquivo = custoNoJournal((data.length + tamBloco - 1) / tamBloco + 1);
+            if (custo > 0 && custo + custoArquivo > limiteLoteJournal) {
+                grupoCommit.aguardar(geracao);
+                custo = 0;
+            }
+            geracao = Math.max(geracao, anexar(arquivo.getKey(), data));
+            custo += custoArquivo;
+        }
+        grupoCommit.aguardar(geracao);
+
+        //1. Verifica se o disco foi inicializado e se o mapa não é null
+        //2. Faz o append de cada arquivo (cada um trava só o próprio arquivo) guardando a maior geração do group commit
+        //3. Espera uma confirmação só para vários appends, em vez de uma por arquivo
+    }
+
+    //Aumentar o tamanho não grava nem aloca nada: o espaço novo é um buraco, lido como zeros até ser escrito.
+    //Uma escrita no buraco ocupa só os blocos escritos (ver FormatoFat). Diminuir libera os blocos que ficaram depois do novo fim
+    @Override
+    public void setLength(String fileName, long length) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        EntradaDiretorio entrada = travarArquivo(Caminho.de(fileName), true);
+        if (entrada == null) {
+            throw new IOException("Arquivo não encontrado: " + fileName);
+        }
+        long geracao;
+        try {
+            geracao = definirTamanhoTravado(entrada, length);
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+        if (geracao > 0) {
+            grupoCommit.aguardar(geracao);
+        }
     }
 
     @Override
@@ -239,141 +849,477 @@ public class Fat32 implements FileSystem {
         //Recebe por parametro o nome, posição inicial do bloco, e a quantidade de bytes a ler
         if (!inicializado) throw new IOException("Sistema não inicializado");
 
-        //Buscar o arquivo no diretório
-        EntradaDiretorio entrada = buscarEntradaDiretorio(fileName);
+        //Buscar o arquivo no diretório e travar ele só para leitura: várias leituras rodam ao mesmo tempo
+        EntradaDiretorio entrada = travarArquivo(Caminho.de(fileName), false);
         if (entrada == null) {
             throw new IOException("Arquivo não encontrado: " + fileName);
         }
+        try {
+            int tamanhoArquivo;
+            CadeiaBlocos cadeia;
+
+            lockMetadados.readLock().lock();
+            try {
+                tamanhoArquivo = entrada.getFileSize();
+                cadeia = obterCadeia(entrada);
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
 
-        //offset < 0: Isso verifica se o offset (posição inicial de leitura) é negativo.
-        //Como um offset negativo não faria sentido em termos de posições dentro de um arquivo, esse caso é invalidado.
-        //offset >= entrada.getFileSize(): Aqui, o código verifica se o offset é maior ou igual ao tamanho do arquivo.
-        //Ou seja, não pode começar a leitura a partir de uma posição que ultrapassa o final do arquivo.
-        if (offset < 0 || offset >= entrada.getFileSize()) {
-            throw new IOException("Offset inválido: " + offset);
+            //offset < 0: Isso verifica se o offset (posição inicial de leitura) é negativo.
+            //Como um offset negativo não faria sentido em termos de posições dentro de um arquivo, esse caso é invalidado.
+            //offset >= tamanhoArquivo: Aqui, o código verifica se o offset é maior ou igual ao tamanho do arquivo.
+            //Ou seja, não pode começar a leitura a partir de uma posição que ultrapassa o final do arquivo.
+            //A exceção é o arquivo vazio, que pode ser lido a partir do 0 (e devolve zero bytes)
+            if (offset == 0 && tamanhoArquivo == 0) {
+                return new byte[0];
+            }
+            if (offset < 0 || offset >= tamanhoArquivo) {
+                throw new IOException("Offset inválido: " + offset);
+            }
+
+            //Aqui, o cálculo dos bytes a serem lidos é feito para garantir que a quantidade de dados lidos não ultrapasse o limite solicitado, nem ultrapasse o tamanho do arquivo.
+            //limit == -1: Se o valor do limit for -1, isso significa que vai ler até o final do arquivo a partir do offset fornecido. Portanto, a quantidade de bytes a serem lidos será o tamanho do arquivo menos o offset
+            //Math.min(limit, tamanhoArquivo - offset): Caso contrário, se o limit for um valor válido (não -1), o código vai calcular a quantidade de dados a serem lidos considerando o limit dado e o espaço restante do arquivo.
+            //tamanhoArquivo - offset calcula o número de bytes restantes a partir do offset até o final do arquivo.
+            //Math.min(limit, tamanhoArquivo - offset) garante que o número de bytes lidos não será maior do que o número de bytes restantes no arquivo nem maior do que o limit especificado. Evita que o código tente ler além do arquivo ou ultrapasse o limite imposto.
+            int bytesParaLer = (limit == -1) ? tamanhoArquivo - offset : Math.min(limit, tamanhoArquivo - offset);
+
+            //O resultado já nasce com o tamanho certo e os blocos são lidos direto para dentro dele
+            byte[] resultado = new byte[bytesParaLer];
+            lerTrecho(cadeia, offset, resultado, 0, bytesParaLer);
+            return resultado;
+        } finally {
+            destravarArquivo(entrada, false);
         }
 
-        //Aqui, o cálculo dos bytes a serem lidos é feito para garantir que a quantidade de dados lidos não ultrapasse o limite solicitado, nem ultrapasse o tamanho do arquivo.
-        //limit == -1: Se o valor do limit for -1, isso significa que vai ler até o final do arquivo a partir do offset fornecido. Portanto, a quantidade de bytes a serem lidos será o tamanho do arquivo (entrada.getFileSize()) menos o offset
-        //Math.min(limit, entrada.getFileSize() - offset): Caso contrário, se o limit for um valor válido (não -1), o código vai calcular a quantidade de dados a serem lidos considerando o limit dado e o espaço restante do arquivo.
-        //entrada.getFileSize() - offset calcula o número de bytes restantes a partir do offset até o final do arquivo.
-        //Math.min(limit, entrada.getFileSize() - offset) garante que o número de bytes lidos não será maior do que o número de bytes restantes no arquivo nem maior do que o limit especificado. Evita que o código tente ler além do arquivo ou ultrapasse o limite imposto.
-        int bytesParaLer = (limit == -1) ? entrada.getFileSize() - offset : Math.min(limit, entrada.getFileSize() - offset);
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        //1. Verifica se o sistema de arquivos foi inicializado.
+        //2. Busca a entrada do arquivo no diretório para garantir que o arquivo existe e trava ele para leitura.
+        //3. Verifica se o offset (posição de leitura) é válido — ou seja, não pode ser negativo nem maior ou igual ao tamanho do arquivo.
+        //4. Calcula quantos bytes devem ser lidos, respeitando o limite pedido e o tamanho restante do arquivo.
+        //5. Pega na cadeia em memória do arquivo o bloco que contém o offset (sem ler o disco) e começa a leitura por ele.
+        //6. Junta os blocos vizinhos da cadeia em trechos e lê cada trecho com uma única leitura, começando do offset correto no primeiro bloco,
+        // até completar os bytes necessários. Os buracos do arquivo viram zeros sem ler o disco. A leitura do disco acontece sem segurar o lock dos metadados.
+    }
 
+    //Lê bytesParaLer bytes do arquivo, a partir do offset, para destino[off...]. Retorna quantos bytes foram lidos
+    //Quem chama já travou o arquivo e conferiu o offset e o tamanho
+    private int lerTrecho(CadeiaBlocos cadeia, int offset, byte[] destino, int off, int bytesParaLer) throws IOException {
 
-        //Lê os blocos do arquivo a partir do starter block. Em cada bloco, lê a quantidade necessária de dados, respeitando o offset
-        //dentro do bloco e o limite de bytes a serem lidos.
-        int blocoAtual = entrada.getStarterBlock();
+        //Lê os blocos do arquivo a partir do bloco que contém o offset. Blocos vizinhos na cadeia (bloco seguinte == bloco + 1)
+        //são juntados em um único trecho e lidos do disco com uma chamada só
+        int indice = offset / tamBloco;
         int bytesLidos = 0;
-        int offsetNoBloco = offset % TAM_BLOCO;
+        int offsetNoBloco = offset % tamBloco;
+        int ultimoIndice = cadeia.getQuantidade() - 1;
+        int escritosNoUltimo = cadeia.getEscritosNoUltimo();
+
+        while (bytesLidos < bytesParaLer) {
+            //Depois do último bloco da cadeia o resto do arquivo é buraco: zeros até o fim do pedido
+            if (indice >= cadeia.getQuantidade()) {
+                Arrays.fill(destino, off + bytesLidos, off + bytesParaLer, (byte) 0);
+                return bytesParaLer;
+            }
+
+            //Bloco de buraco: o que está no disco é lixo, a leitura devolve zeros sem ler nada
+            if (cadeia.isBuraco(indice)) {
+                int bytesDoBuraco = Math.min(tamBloco - offsetNoBloco, bytesParaLer - bytesLidos);
+                Arrays.fill(destino, off + bytesLidos, off + bytesLidos + bytesDoBuraco, (byte) 0);
+                bytesLidos += bytesDoBuraco;
+                indice++;
+                offsetNoBloco = 0;
+                continue;
+            }
+
+            //Do último bloco só vale o começo (o arquivo cresceu depois dele): o resto vira zeros sem ler nada
+            if (indice == ultimoIndice && escritosNoUltimo < tamBloco) {
+                int bytesDoBloco = Math.min(tamBloco - offsetNoBloco, bytesParaLer - bytesLidos);
+                int bytesDoDisco = Math.max(0, Math.min(escritosNoUltimo - offsetNoBloco, bytesDoBloco));
+                if (bytesDoDisco > 0) {
+                    disco.read(cadeia.get(indice), offsetNoBloco, destino, off + bytesLidos, bytesDoDisco);
+                }
+                Arrays.fill(destino, off + bytesLidos + bytesDoDisco, off + bytesLidos + bytesDoBloco, (byte) 0);
+                bytesLidos += bytesDoBloco;
+                indice++;
+                offsetNoBloco = 0;
+                continue;
+            }
+
+            int blocoAtual = cadeia.get(indice);
+            int inicioTrecho = blocoAtual;
+            long bytesNoTrecho = tamBloco - offsetNoBloco; //long: um trecho longo de um arquivo grande passa do int
 
-        while (blocoAtual > 0 && bytesLidos < bytesParaLer) {
-            byte[] bloco = disco.read(blocoAtual);
-            int bytesDesteBloco = Math.min(TAM_BLOCO - offsetNoBloco, bytesParaLer - bytesLidos);
+            //Estende o trecho enquanto ainda faltam bytes e o próximo bloco da cadeia é o vizinho no disco (e foi escrito inteiro)
+            while (bytesNoTrecho < bytesParaLer - bytesLidos && cadeia.get(indice + 1) == blocoAtual + 1
+                    && !cadeia.isBuraco(indice + 1) && (indice + 1 != ultimoIndice || escritosNoUltimo == tamBloco)) {
+                indice++;
+                blocoAtual++;
+                bytesNoTrecho += tamBloco;
+            }
 
-            output.write(bloco, offsetNoBloco, bytesDesteBloco);
+            int bytesDesteTrecho = (int) Math.min(bytesNoTrecho, bytesParaLer - bytesLidos);
+            disco.read(inicioTrecho, offsetNoBloco, destino, off + bytesLidos, bytesDesteTrecho);
 
-            bytesLidos += bytesDesteBloco;
-            blocoAtual = fat[blocoAtual];
+            bytesLidos += bytesDesteTrecho;
+            indice++;
             offsetNoBloco = 0;
         }
+        return bytesLidos;
+    }
 
-        return output.toByteArray();
+    @Override
+    public void remove(String fileName) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
 
-        //1. Verifica se o sistema de arquivos foi inicializado.
-        //2. Busca a entrada do arquivo no diretório para garantir que o arquivo existe.
-        //3. Verifica se o offset (posição de leitura) é válido — ou seja, não pode ser negativo nem maior ou igual ao tamanho do arquivo.
-        //4. Calcula quantos bytes devem ser lidos, respeitando o limite pedido e o tamanho restante do arquivo.
-        //5. Começa a leitura a partir do bloco inicial do arquivo, seguindo os blocos indicados pela FAT.
-        //6. Lê cada bloco necessário, começando do offset correto no primeiro bloco, e vai até completar os bytes necessários ou chegar ao fim do arquivo.
+        //Um diretório (vazio) é removido sem travar arquivo nenhum
+        Caminho caminho = Caminho.de(fileName);
+        if (removerDiretorio(caminho)) {
+            return;
+        }
+
+        //Buscar o arquivo no diretorio. Travar o arquivo para escrita espera as leituras e appends em andamento nele
+        EntradaDiretorio entrada = travarArquivo(caminho, true);
+        if (entrada == null) {
+            throw new IOException("Arquivo não encontrado: " + fileName);
+        }
+        long geracao;
+        int resto;
+        try {
+            lockMetadados.writeLock().lock();
+            try {
+                //Marca os blocos do arquivo com 0 (livre) na FAT. No mapa de bits eles só ficam livres depois da remoção
+                //confirmada: antes disso uma queda traria o arquivo de volta, e os blocos não podem ter sido reaproveitados.
+                //Nesta transação vão no máximo blocosPorTransacao deles: o resto da cadeia fica solto e é liberado depois
+                resto = liberarCadeia(formato.proximo(entrada.getStarterBlock()), blocosPorTransacao, true);
+
+                removerEntradaDiretorio(entrada);
+                entrada.setCadeia(null);
+                publicarMetadados();
+                geracao = grupoCommit.getGeracaoAberta();
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+        grupoCommit.aguardar(geracao);
+        liberarEmPartes(resto);
+
+        //1. Verificação de inicialização do disco. Se o caminho é um diretório vazio, remove ele e termina
+        //2. Busca pelo arquivo no diretorio e trava o arquivo. EntradaDiretorio, seria o arquivo
+        //3. Vai percorrer um laço no primeiro bloco do arquivo e marcar eles como 0 na FAT (e livres no mapa de bits)
+        //4. Remove o arquivo do diretorio e publica a nova lista de arquivos
+        //5. Espera a FAT e o diretório serem confirmados no journal; só então os blocos voltam ao mapa de livres.
+        // Os blocos que não couberam na transação são liberados depois, em partes
     }
 
     @Override
-    public void remove(String fileName) throws IOException {
+    public InputStream openInputStream(String fileName) throws IOException {
+        return new FluxoEntradaArquivo(this, abrirEntrada(fileName));
+    }
+
+    @Override
+    public OutputStream openOutputStream(String fileName) throws IOException {
+        //Cria o arquivo vazio e devolve um stream que vai acrescentando os dados no fim dele, um bloco por vez
+        create(fileName, new byte[0]);
+        return new FluxoSaidaArquivo(this, abrirEntrada(fileName));
+    }
+
+    @Override
+    public SeekableByteChannel openChannel(String fileName) throws IOException {
+        return new CanalArquivo(this, abrirEntrada(fileName));
+    }
+
+    // ========== ACESSO POR STREAM E CANAL ========== //
+    //Streams e canais guardam a entrada do arquivo. Cada leitura ou escrita trava o arquivo de novo e confere se ele ainda existe
+
+    EntradaDiretorio abrirEntrada(String fileName) throws IOException {
         if (!inicializado) throw new IOException("Sistema não inicializado");
 
-        //Buscar o arquivo no diretorio
-        EntradaDiretorio entrada = buscarEntradaDiretorio(fileName);
+        EntradaDiretorio entrada;
+        lockMetadados.readLock().lock();
+        try {
+            entrada = buscarEntradaDiretorio(Caminho.de(fileName));
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
         if (entrada == null) {
             throw new IOException("Arquivo não encontrado: " + fileName);
         }
+        if (entrada.isDiretorio()) {
+            throw new IOException("É um diretório: " + fileName);
+        }
+        return entrada;
+    }
 
-        //Pega o primeiro bloco do arquivo e percorre até o bloco não que não for 0. Estão ocupados (1).
-        //Vai marcando os blocos com 0 (livre)
-        int blocoAtual = entrada.getStarterBlock();
-        while (blocoAtual > 0) {
-            int proximoBloco = fat[blocoAtual];
-            fat[blocoAtual] = 0;
-            blocoAtual = proximoBloco;
+    //Uma página da listagem, para o IteradorDiretorio. Retorna o cursor da próxima página
+    int lerPagina(Diretorio diretorio, int cursor, int limite, List<InfoArquivo> destino) {
+        lockMetadados.readLock().lock();
+        try {
+            return diretorio.listar(cursor, limite, formato, destino);
+        } finally {
+            lockMetadados.readLock().unlock();
         }
+    }
 
-        removerEntradaDiretorio(entrada);
-        gravarFat();
+    int tamanhoArquivo(EntradaDiretorio entrada) {
+        lockMetadados.readLock().lock();
+        try {
+            return entrada.getFileSize();
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+    }
 
-        //1. Verificação de inicialização do disco
-        //2. Busca pelo arquivo no diretorio. EntradaDiretorio, seria o arquivo
-        //3. Vai percorrer um laço no primeiro bloco do arquivo e marcar eles como 0 na FAT
-        //4. Remove o arquivo do diretorio e atualiza a FAT
+    //Lê até tamanho bytes a partir de posicao para destino[off...]. Retorna quantos bytes leu, ou -1 no fim do arquivo
+    int lerArquivo(EntradaDiretorio entrada, long posicao, byte[] destino, int off, int tamanho) throws IOException {
+        travarEntrada(entrada, false);
+        try {
+            int tamanhoArquivo;
+            CadeiaBlocos cadeia;
+            lockMetadados.readLock().lock();
+            try {
+                tamanhoArquivo = entrada.getFileSize();
+                cadeia = obterCadeia(entrada);
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+
+            if (posicao >= tamanhoArquivo) {
+                return -1;
+            }
+            return lerTrecho(cadeia, (int) posicao, destino, off, (int) Math.min(tamanho, tamanhoArquivo - posicao));
+        } finally {
+            destravarArquivo(entrada, false);
+        }
+    }
+
+    //Acrescenta data[off, off + tamanho) no fim do arquivo sem esperar o journal. Retorna a geração a esperar com aguardarConfirmacao
+    long anexarArquivo(EntradaDiretorio entrada, byte[] data, int off, int tamanho) throws IOException {
+        travarEntrada(entrada, true);
+        try {
+            return anexarTravado(entrada, data, off, tamanho);
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+    }
+
+    //Escrita do canal em qualquer posição, sem esperar o journal. O arquivo fica travado do começo ao fim: o tamanho
+    //lido aqui é o mesmo que a sobrescrita e o append enxergam, então dois canais no mesmo arquivo não gravam um
+    //append em cima do outro. Retorna a geração a esperar para os dados estarem duráveis
+    long escreverArquivo(EntradaDiretorio entrada, long posicao, byte[] data, int off, int tamanho) throws IOException {
+        if (posicao < 0) {
+            throw new IOException("Escrita fora do arquivo: " + posicao);
+        }
+        travarEntrada(entrada, true);
+        try {
+            int tamanhoAtual;
+            lockMetadados.readLock().lock();
+            try {
+                tamanhoAtual = entrada.getFileSize();
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+
+            //A parte que cai antes do fim sobrescreve no lugar
+            long geracao = 0;
+            int antesDoFim = (int) Math.max(0, Math.min(tamanho, tamanhoAtual - posicao));
+            if (antesDoFim > 0) {
+                geracao = sobrescreverTravado(entrada, posicao, data, off, antesDoFim);
+            }
+
+            //O resto é append se começa no fim; depois do fim, o espaço entre o fim e a posição vira buraco
+            int resto = tamanho - antesDoFim;
+            if (resto > 0) {
+                long inicio = posicao + antesDoFim;
+                long geracaoResto = inicio == tamanhoAtual
+                        ? anexarTravado(entrada, data, off + antesDoFim, resto)
+                        : escreverNosBuracos(entrada, inicio, data, off + antesDoFim, resto);
+                geracao = Math.max(geracao, geracaoResto);
+            }
+            return geracao;
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+    }
+
+    //Sobrescreve bytes que o arquivo já tem, com ele travado para escrita. Tamanho e blocos não mudam, então só os dados
+    //são gravados (nada vai para o journal). Se o trecho cai num buraco, os blocos dele passam a ser escritos (escreverNosBuracos)
+    private long sobrescreverTravado(EntradaDiretorio entrada, long posicao, byte[] data, int off, int tamanho) throws IOException {
+        CadeiaBlocos cadeia;
+        lockMetadados.readLock().lock();
+        try {
+            cadeia = obterCadeia(entrada);
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+        if (temBuraco(cadeia, posicao, tamanho)) {
+            return escreverNosBuracos(entrada, posicao, data, off, tamanho);
+        }
+
+        //Grava bloco a bloco, cada pedaço na posição dele dentro do bloco da cadeia
+        int escritos = 0;
+        while (escritos < tamanho) {
+            long atual = posicao + escritos;
+            int bloco = cadeia.get((int) (atual / tamBloco));
+            int noBloco = (int) (atual % tamBloco);
+            int bytesDesteBloco = Math.min(tamBloco - noBloco, tamanho - escritos);
+
+            disco.write(bloco, noBloco, data, off + escritos, bytesDesteBloco);
+            escritos += bytesDesteBloco;
+        }
+
+        //O próximo grupo força o disco antes de gravar o registro dele, então leva estes dados junto
+        return grupoCommit.getGeracaoAberta();
+    }
+
+    //Diminui o arquivo para o tamanho, se ele ainda for maior (truncate do CanalArquivo). A comparação é feita com o arquivo
+    //travado, então um truncate nunca aumenta um arquivo que outro canal diminuiu antes. Retorna a geração a esperar, ou 0
+    long truncarArquivo(EntradaDiretorio entrada, long tamanho) throws IOException {
+        travarEntrada(entrada, true);
+        try {
+            if (tamanho >= tamanhoArquivo(entrada)) {
+                return 0;
+            }
+            return definirTamanhoTravado(entrada, tamanho);
+        } finally {
+            destravarArquivo(entrada, true);
+        }
+    }
+
+    //Buffer de um bloco emprestado do pool (com array), para quem lê ou escreve um arquivo a partir de um buffer direto
+    ByteBuffer emprestarBuffer() {
+        return buffers.emprestar();
+    }
+
+    void devolverBuffer(ByteBuffer buffer) {
+        buffers.devolver(buffer);
+    }
+
+    void aguardarConfirmacao(long geracao) throws IOException {
+        grupoCommit.aguardar(geracao);
+    }
+
+    //Trava uma entrada já aberta. Se o arquivo foi removido depois de aberto, solta o lock e avisa
+    private void travarEntrada(EntradaDiretorio entrada, boolean escrita) throws IOException {
+        Lock lock = escrita ? entrada.getLock().writeLock() : entrada.getLock().readLock();
+        lock.lock();
+
+        boolean valida;
+        lockMetadados.readLock().lock();
+        try {
+            valida = isNoDiretorio(entrada);
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+        if (!valida) {
+            lock.unlock();
+            throw new IOException("Arquivo removido: " + entrada.getFileName());
+        }
     }
 
     @Override
-    public int freeSpace() {
+    public long freeSpace() {
         //Calcula a quantidade de blocos livres disponíveis no disco
         if (!inicializado) {
             return 0;
         }
 
-        int blocosLivres = 0;
-
-        for (int i = 1; i < fat.length; i++) {
-            if (fat[i] == 0) blocosLivres++;
-        }
-        return blocosLivres * TAM_BLOCO;
+        //Lê o contador publicado na última alteração, sem lock: nunca espera um escritor
+        return (long) livresPublicados * tamBloco;
 
         //1.Verificação de inicialização de disco
-        //2. Percorre a FAT, na posição 1 porque o zero é o diretório
-        //3. Contabiliza na variável blocosLivres os blocos que estão marcados como 0 - livres
-        //4. Retorna a quantidade de blocos livres * tamanho do bloco
+        //2. Retorna a quantidade de blocos livres * tamanho do bloco
     }
 
     public List<String> listarArquivos() throws IOException {
         if (!inicializado) throw new IOException("Sistema não inicializado");
 
-        //Cria um array com os arquivos do diretório
-        List<String> arquivos = new ArrayList<>();
+        //Retorna a fotografia da raiz (imutável, na ordem dos slots). Enquanto a raiz não muda, nem lock precisa
+        return fotografia(raiz);
 
+        //1. Verificação de inicialização do disco
+        //2. Retorna a fotografia da lista de arquivos, montada na primeira listagem depois da última mudança no diretório
+    }
 
+    //Arquivos e subdiretórios (terminados em "/") de um diretório, ex: listarArquivos("/CLIENTE1")
+    public List<String> listarArquivos(String caminho) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
 
-        //Le o diretorio. Posição 0
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
+        return fotografia(abrirDiretorio(caminho));
 
+        //1. Segue o caminho até o diretório, uma consulta de hash por parte
+        //2. Retorna a fotografia da lista dele, como a da raiz
+    }
 
-        //Percorre todas as entradas do diretorio
-        for (int i = 0; i < NUMERO_MAXIMO_ENTRADAS; i++) {
+    //Objetivo da função: listar um diretório grande aos poucos, sem montar a lista inteira.
+    //cursor 0 começa do início; as próximas páginas usam o getProximoCursor() da página anterior
+    public PaginaDiretorio listarPagina(String caminho, int cursor, int limite) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+        if (cursor < 0 || limite <= 0) throw new IllegalArgumentException("Cursor ou limite inválido");
 
-            //Desloca para a entrada de cada arquivo no diretório. Primeiro bloco de cada arquivo
-            int offset = i * TAM_ENTRADA_DIRETORIO;
+        Diretorio diretorio = abrirDiretorio(caminho);
+        List<InfoArquivo> arquivos = new ArrayList<>(Math.min(limite, TAM_PAGINA_LISTAGEM));
+        int proximo = lerPagina(diretorio, cursor, limite, arquivos);
+        return new PaginaDiretorio(Collections.unmodifiableList(arquivos), proximo);
 
+        //1. Acha o diretório do caminho
+        //2. Copia até limite entradas (nome, tamanho e bloco inicial) a partir do slot do cursor
+        //3. Devolve a página com o cursor da próxima
+    }
 
-            //Se for !=0 significa que a entrada está ocupada
-            if (blocoDir[offset] != 0) {
-                // // Extrai nome e extensão, adiciona na lista
-                String nome = new String(blocoDir, offset, 8).trim();
-                String extensao = new String(blocoDir, offset + 8, 3).trim();
-                arquivos.add(nome + (extensao.isEmpty() ? "" : "." + extensao));
+    //Percorre as entradas de um diretório sob demanda, uma página por vez (nunca o diretório inteiro na memória)
+    public Iterator<InfoArquivo> iterarArquivos(String caminho) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        return new IteradorDiretorio(this, abrirDiretorio(caminho), TAM_PAGINA_LISTAGEM);
+    }
+
+    //Quantos arquivos e subdiretórios o diretório tem, sem listar: é o tamanho do índice dele
+    public int contarArquivos(String caminho) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        Diretorio diretorio = abrirDiretorio(caminho);
+        lockMetadados.readLock().lock();
+        try {
+            return diretorio.getQuantidade();
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void createDirectory(String path) throws IOException {
+        if (!inicializado) throw new IOException("Sistema não inicializado");
+
+        Caminho caminho = Caminho.de(path);
+        if (caminho.isRaiz()) {
+            throw new IOException("Diretório já existe: /");
+        }
+        long geracao;
+        while (true) {
+            Diretorio pai;
+            lockMetadados.writeLock().lock();
+            try {
+                //Diretório novo não tem nenhum bloco (como um arquivo vazio): o primeiro vem junto com a primeira entrada dele
+                pai = diretorioParaCriar(caminho);
+                EntradaDiretorio entrada = adicionarEntradaDiretorio(pai, caminho.getNome(), 0, 0);
+                if (entrada != null) {
+                    entrada.setSubdiretorio(new Diretorio(entrada, 0));
+                    publicarMetadados();
+                    geracao = grupoCommit.getGeracaoAberta();
+                    break;
+                }
+            } finally {
+                lockMetadados.writeLock().unlock();
             }
+            prepararBlocoDiretorio(pai);
         }
-        return arquivos;
+        grupoCommit.aguardar(geracao);
 
-        //1. Verificação de inicialização do disco
-        //2. Vria uma lista para armazenar os nomes dos arquivos encontrados
-        //3. Lê o bloco 0, que é o bloco reservado para o diretório
-        //4. Percorre o bloco do diretório, usando o número máximo de entradas como limite
-        //5. Para cada possível entrada do diretório, verifica se ela está ocupada
-        //6. Extrai o nome (8 bytes) e a extensão (3 bytes) do arquivo, remove espaços em branco
-        //7. Adiciona o nome completo do arquivo na lista (com "." se tiver extensão)
-        //8. Retorna a lista com os nomes dos arquivos encontrados
+        //1. Confere se o diretório pai existe e se o nome está livre nele
+        //2. Adiciona a entrada marcada como subdiretório, sem blocos (se o pai está cheio, zera um bloco para ele fora do lock antes)
+        //3. Espera a entrada nova ser confirmada no journal
     }
 
 
@@ -382,382 +1328,1135 @@ public class Fat32 implements FileSystem {
     // ========== MÉTODOS AUXILIARES ========== //
 
 
-    private String formatarNomeArquivo(String nome) {
-
-        nome = nome.trim().toUpperCase();
+    private void criarLote(List<Caminho> nomes, List<byte[]> conteudos) throws IOException {
+        int[][] blocos = new int[nomes.size()][];
 
-        //Separa o  arquivo em nome e extensão. "\\" pq ponto é caratectere especial. Assim ele sabe que é para separar pelo ponto
-        String[] partes = nome.split("\\.");
+        //Uma seção crítica para o lote inteiro: confere diretórios, nomes, espaço e slots e aloca todos os blocos numa passada
+        lockMetadados.writeLock().lock();
+        try {
+            int blocosNecessarios = 0;
+            int slotsNaRaiz = 0;
+            for (int i = 0; i < nomes.size(); i++) {
+                diretorioParaCriar(nomes.get(i));
+                if (nomes.get(i).getQuantidade() == 1) {
+                    slotsNaRaiz += slotsDoNome(nomes.get(i).getNome());
+                }
+                blocosNecessarios += (conteudos.get(i).length + tamBloco - 1) / tamBloco;
+            }
+            if (blocosNecessarios > blocosLivres.getLivres()) {
+                throw new IOException("Espaço insuficiente no disco");
+            }
+            //Só a raiz tem tamanho fixo; os subdiretórios crescem quando enchem
+            if (slotsNaRaiz > raiz.getCapacidade() - raiz.getSlotsOcupados()) {
+                throw new IOException("Diretório cheio");
+            }
 
+            //Cada arquivo prefere começar logo depois do último bloco do anterior: o lote fica em sequência no disco
+            int preferido = -1;
+            for (int i = 0; i < nomes.size(); i++) {
+                blocos[i] = alocarBlocos((conteudos.get(i).length + tamBloco - 1) / tamBloco, preferido);
+                if (blocos[i].length > 0) {
+                    preferido = blocos[i][blocos[i].length - 1] + 1;
+                }
+            }
+            publicarMetadados();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
 
-        //O nome, posição 0 no array que foi separado. Usa um regex para permitir caracteres de A-Z e de 0 - 9 e substituir tudo que nao for isso por nada. Corta esse caractere
-        String nomeBase = partes[0].replaceAll("[^A-Z0-9]", "");
-        String extensao = partes.length > 1 ? partes[1].replaceAll("[^A-Z0-9]", "") : "";
+        //Grava os dados sem lock, na ordem dos blocos no disco
+        Integer[] ordem = new Integer[nomes.size()];
+        for (int i = 0; i < ordem.length; i++) {
+            ordem[i] = i;
+        }
+        Arrays.sort(ordem, (a, b) -> Integer.compare(primeiroBloco(blocos[a]), primeiroBloco(blocos[b])));
+        try {
+            for (int i : ordem) {
+                gravarDados(conteudos.get(i), 0, conteudos.get(i).length, blocos[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            liberarLote(blocos);
+            throw e;
+        }
 
+        long geracao;
+        while (true) {
+            Diretorio cheio = null;
+            lockMetadados.writeLock().lock();
+            try {
+                //Todas as entradas entram nos diretórios juntas e vão para o journal na mesma transação da FAT.
+                //Outras threads podem ter criado um dos nomes, removido um diretório ou ocupado slots enquanto os dados eram gravados:
+                //se uma entrada não puder entrar, as que já entraram saem e o lote inteiro é desfeito
+                List<EntradaDiretorio> adicionadas = new ArrayList<>(nomes.size());
+                try {
+                    for (int i = 0; i < nomes.size() && cheio == null; i++) {
+                        Caminho caminho = nomes.get(i);
+                        Diretorio diretorio = diretorioParaCriar(caminho);
+                        EntradaDiretorio entrada = adicionarEntradaDiretorio(diretorio, caminho.getNome(),
+                                conteudos.get(i).length, primeiroBloco(blocos[i]));
+                        if (entrada != null) {
+                            adicionadas.add(entrada);
+                        } else {
+                            cheio = diretorio;
+                        }
+                    }
+                } catch (IOException e) {
+                    for (EntradaDiretorio entrada : adicionadas) {
+                        removerEntradaDiretorio(entrada);
+                    }
+                    liberarLote(blocos);
+                    throw e;
+                }
+                if (cheio == null) {
+                    publicarMetadados();
+                    geracao = grupoCommit.getGeracaoAberta();
+                    break;
+                }
+                //Um subdiretório precisa de mais um bloco: as entradas saem e o lote entra de novo depois que o bloco for zerado
+                for (EntradaDiretorio entrada : adicionadas) {
+                    removerEntradaDiretorio(entrada);
+                }
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
+            try {
+                prepararBlocoDiretorio(cheio);
+            } catch (IOException | RuntimeException e) {
+                liberarLote(blocos);
+                throw e;
+            }
+        }
+        grupoCommit.aguardar(geracao);
 
-        //8 caracteres de nome e 3 de extensão
-        nomeBase = nomeBase.length() > 8 ? nomeBase.substring(0, 8) : nomeBase;
-        extensao = extensao.length() > 3 ? extensao.substring(0, 3) : extensao;
+        //1. Numa seção crítica confere se os nomes não existem, se há blocos e slots para todos e aloca os blocos de cada arquivo
+        //2. Fora da seção crítica grava os dados de todos os arquivos, ordenados pelo primeiro bloco
+        //3. Em outra seção crítica adiciona todas as entradas nos diretórios, conferindo de novo; se alguma falhar, desfaz o lote.
+        // Se um subdiretório precisa de mais um bloco, tira as entradas, zera o bloco fora da seção crítica e tenta de novo
+        //4. Espera uma única confirmação do journal para o lote inteiro
+    }
 
-        return nomeBase + (extensao.isEmpty() ? "" : "." + extensao);
+    //Devolve os blocos reservados de um lote que não chegou ao diretório
+    private void liberarLote(int[][] blocos) {
+        lockMetadados.writeLock().lock();
+        try {
+            for (int[] blocosArquivo : blocos) {
+                liberarCadeia(primeiroBloco(blocosArquivo), false);
+            }
+            publicarMetadados();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
+    }
 
-        //1. padronização do nome
-        //2. separa a string em partes usando o "." como referência. Tem um array com duas strings
-        //3. pega a parte da extensão e remove tudo que nao for "[^A-Z0-9]"
-        //4. verifica se a extensão é maior que um caractere: significa que a extensão foi passada
-        //5. nome do arquivo vai ser os primeiros 8 caracteres
-        //6. nome da extensão os primeiros 3 caracteres da extensão
-        //7. retorna o nome + a extensão. Se ela não for vazia coloco "." + extensao
+    //Bloco inicial de um arquivo com estes blocos. Arquivo vazio não tem blocos e fica com o bloco inicial 0
+    private int primeiroBloco(int[] blocos) {
+        return blocos.length > 0 ? blocos[0] : 0;
     }
 
-    private int[] alocarBlocos(int quantidade) throws IOException {
+    //Tamanho que a criação ou o append de um arquivo ocupa num registro do journal, no pior caso:
+    //a entrada do diretório (bloco + posição + 19 bytes) e cada entrada da FAT num trecho separado (início + quantidade + valor)
+    private int custoNoJournal(int blocos) {
+        return 8 + TAM_ENTRADA_DIRETORIO + 12 * blocos;
+    }
 
-        //Recebe por parâmetro a quantidade: os blocos necessarios para gravar um arquivo
+    //Na criação, um nome longo ocupa mais slots do diretório. Criar num subdiretório pode aumentar ele:
+    //a entrada dele no pai e duas entradas da FAT para ligar o bloco novo
+    private int custoNoJournal(Caminho caminho, int blocos) {
+        int custo = custoNoJournal(blocos) + (slotsDoNome(caminho.getNome()) - 1) * (8 + TAM_ENTRADA_DIRETORIO);
+        if (caminho.getQuantidade() == 1) {
+            return custo;
+        }
+        return custo + 12 * 2 + 8 + TAM_ENTRADA_DIRETORIO;
+    }
 
-        //Cria um array com a quantidade de blocos que vai ser preciso ocupar no disco
-        int[] blocos = new int[quantidade];
+    //Slots que a entrada de um nome ocupa no diretório: a entrada e, num nome longo, os slots com os bytes do nome
+    private int slotsDoNome(NomeArquivo nome) {
+        return nome.isCurto() ? 1 : 1 + (nome.getUtf8().length + TAM_ENTRADA_DIRETORIO - 1) / TAM_ENTRADA_DIRETORIO;
+    }
 
-        int encontrados = 0;
+    private int[] alocarBlocos(int quantidade, int preferido) throws IOException {
 
+        //Recebe por parâmetro a quantidade: os blocos necessarios para gravar um arquivo
+        //e o bloco onde seria bom começar (-1 se tanto faz)
 
-        //Percorre a FAT no indice 1 e verifica o bloco está livre (encontrados = 0)
-        for (int i = 1; i < fat.length && encontrados < quantidade; i++) {
-            if (fat[i] == 0) {
-                //armazena no  int[] blocos o numero no bloco livre
-                blocos[encontrados++] = i;
-                fat[i] = -1;
-            }
+        if (quantidade > blocosLivres.getLivres()) {
+            throw new IOException("Espaço insuficiente no disco");
         }
 
-        if (encontrados < quantidade) {
-            throw new IOException("Espaço insuficiente no disco");
+        //Arquivo vazio: nenhum bloco, o bloco inicial dele fica 0
+        if (quantidade == 0) {
+            return new int[0];
         }
 
+        //O mapa de bits escolhe os blocos livres, preferindo a menor faixa contínua onde todos cabem (best-fit)
+        int[] blocos = blocosLivres.alocar(quantidade, preferido);
+
 
         // Percorre o array int[] blocos (blocos livres alocados) e faz com que cada bloco aponte para o próximo na FAT.
         for (int i = 0; i < blocos.length - 1; i++) {
-            fat[blocos[i]] = blocos[i + 1];
+            setFat(blocos[i], blocos[i + 1]);
         }
 
         //Marca o ultimo bloco com -1 (fim da lista FAT)
-        fat[blocos[blocos.length - 1]] = -1;
+        setFat(blocos[blocos.length - 1], -1);
         return blocos;
 
-        //1.cria um array de blocos com a quantidade necessária passada por parametro
-        //2. cria uma variavel para marcar os blocos livres encontrados
-        //3. vai percorrer a FAT (a partir da posição 1) e caso a FAT tenha um bloco livre (valor 0), vai alocar ele (endereço de memoria dele) dele no array criado
-        //4. marca aquele bloco na FAT como ocupado (-1)
-        //5. Laço paraconectar os blocos da FAT com os novos blocos (ponteiro apontando para novos blocos)
-        //6. retorna o array de blocos alocados
+        //1. verifica no contador do mapa de bits se existem blocos livres suficientes
+        //2. pede ao mapa de bits os blocos livres, em faixas contínuas sempre que possível. Eles já ficam marcados como ocupados nele
+        //3. Laço paraconectar os blocos da FAT com os novos blocos (ponteiro apontando para novos blocos)
+        //4. retorna o array de blocos alocados
     }
 
-    private void gravarDados(byte[] data, int[] blocos) throws IOException {
+    //Reserva em partes os blocos que passam do que uma transação do journal leva: cada parte é ligada à anterior e confirmada
+    //antes da seguinte, então nenhum grupo junta todas. A cadeia fica órfã (nenhum arquivo aponta para ela) até quem chamou
+    //ligar ela; se cair antes, a montagem recolhe os blocos. Retorna os blocos reservados, em ordem (vazio se tudo cabe numa
+    //transação). Sobram blocosPorTransacao para quem chamou alocar na seção crítica dele, com completarBlocos
+    private int[] reservarEmPartes(int quantidade, int preferido) throws IOException {
+        if (quantidade <= blocosPorTransacao) {
+            return new int[0];
+        }
+        if (quantidade > blocosLivres.getLivres()) {
+            throw new IOException("Espaço insuficiente no disco");
+        }
+
+        int[] blocos = new int[quantidade - blocosPorTransacao];
+        int reservados = 0;
+        try {
+            while (reservados < blocos.length) {
+                long geracao;
+                lockMetadados.writeLock().lock();
+                try {
+                    int[] parte = alocarBlocos(Math.min(blocosPorTransacao, blocos.length - reservados),
+                            reservados > 0 ? blocos[reservados - 1] + 1 : preferido);
+                    if (reservados > 0) {
+                        setFat(blocos[reservados - 1], parte[0]);
+                    }
+                    System.arraycopy(parte, 0, blocos, reservados, parte.length);
+                    reservados += parte.length;
+                    publicarMetadados();
+                    geracao = grupoCommit.getGeracaoAberta();
+                } finally {
+                    lockMetadados.writeLock().unlock();
+                }
+                grupoCommit.aguardar(geracao);
+            }
+        } catch (IOException | RuntimeException e) {
+            //Nenhum arquivo aponta para a parte já reservada: volta a ser livre na hora
+            if (reservados > 0) {
+                liberarBlocosReservados(blocos[0]);
+            }
+            throw e;
+        }
+        return blocos;
+    }
 
-        //Recebe um byte de dados (o arquivo a ser gravado) e o array de blocos livres que veem da função alocar blocos
+    //Com o lockMetadados de escrita: aloca os blocos que faltam depois da parte reservada por reservarEmPartes
+    //e liga as duas numa cadeia só. Se falhar, quem chamou libera a parte
+    private int[] completarBlocos(int[] parte, int quantidade, int preferido) throws IOException {
+        if (parte.length == 0) {
+            return alocarBlocos(quantidade, preferido);
+        }
+        int[] resto = alocarBlocos(quantidade, parte[parte.length - 1] + 1);
+        setFat(parte[parte.length - 1], resto[0]);
+        int[] blocos = Arrays.copyOf(parte, parte.length + resto.length);
+        System.arraycopy(resto, 0, blocos, parte.length, resto.length);
+        return blocos;
+    }
 
-        //Array int[] blocos na posição 0
-        int offset = 0;
+    private CadeiaBlocos obterCadeia(EntradaDiretorio entrada) {
 
-        for (int bloco : blocos) {
-            // Calcula quantos bytes ainda faltam para escrever, limitando ao tamanho do bloco
-            int bytesParaEscrever = Math.min(TAM_BLOCO, data.length - offset);
+        //Monta a cadeia do arquivo na primeira vez que ela é pedida. Depois ela é reaproveitada até o arquivo ser removido
+        if (entrada.getCadeia() == null) {
+            entrada.setCadeia(new CadeiaBlocos(formato, fat, entrada.getStarterBlock()));
+        }
+        return entrada.getCadeia();
 
-            // Cria um array para armazenar os dados do bloco atual
-            byte[] blocoDados = new byte[TAM_BLOCO];
+        //1. Se a entrada ainda não tem cadeia, segue a FAT uma vez a partir do bloco inicial e guarda os blocos num int[]
+        //2. Retorna a cadeia: bloco do offset N = cadeia.get(N / tamBloco) e último bloco = cadeia.getUltimo()
+    }
 
-            // Copia os bytes do arquivo (data), a partir do offset, para o blocoDados
-            System.arraycopy(data, offset, blocoDados, 0, bytesParaEscrever);
+    private EntradaDiretorio travarArquivo(Caminho caminho, boolean escrita) throws IOException {
+        while (true) {
+            EntradaDiretorio entrada;
+            lockMetadados.readLock().lock();
+            try {
+                entrada = buscarEntradaDiretorio(caminho);
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+            if (entrada == null) {
+                return null;
+            }
+            if (entrada.isDiretorio()) {
+                throw new IOException("É um diretório: " + caminho);
+            }
 
-            // Escreve o blocoDados no disco, no bloco atual
-            disco.write(bloco, blocoDados);
+            Lock lock = escrita ? entrada.getLock().writeLock() : entrada.getLock().readLock();
+            lock.lock();
 
-            // Atualiza o offset para a próxima parte dos dados
-            offset += bytesParaEscrever;
+            //Entre a busca e o lock o arquivo pode ter sido removido (e o slot reaproveitado). Se foi, busca de novo
+            lockMetadados.readLock().lock();
+            try {
+                if (isNoDiretorio(entrada)) {
+                    return entrada;
+                }
+            } finally {
+                lockMetadados.readLock().unlock();
+            }
+            lock.unlock();
         }
 
-        //1. recebe um array com dados e um array com a posição desses blocos na memoria
-        //2. usa uma variável para percorrer os blocos dos dados
-        //3. Percorre o array de blocos para determinar, em cada iteração, quantos bytes ainda faltam gravar e quantos cabem no bloco atual.
-        //4. Calcula a quantidade de dados por bloco. Sempre arredondando para mais
-        //5. cria um novo array com o tamanho do bloco 64 * 1024, declarado no começo
-        //6. usa o arrayCopy para copiar os dados do array passado por parametro pro novo array criado
-        //7. escreve no disco com o índice do bloco e o conteúdo de blocoDados
+        //1. Busca a entrada pelo caminho, no índice de cada diretório
+        //2. Trava o lock do arquivo (leitura ou escrita)
+        //3. Confere se o slot ainda é do mesmo arquivo; se não for, solta o lock e tenta de novo
+        //4. Retorna a entrada com o arquivo travado, ou null se o arquivo não existe
     }
 
-    private void gravarFat() throws IOException {
+    //A entrada ainda está no slot dela (o arquivo não foi removido). Chamado com o lockMetadados
+    private boolean isNoDiretorio(EntradaDiretorio entrada) {
+        return entrada.getDiretorio().get(entrada.getSlot()) == entrada;
+    }
 
-        // Quantas entradas inteiras (4 bytes cada) cabem em um bloco
-        int entradasPorBloco = TAM_BLOCO / 4;
+    private void destravarArquivo(EntradaDiretorio entrada, boolean escrita) {
+        ReentrantReadWriteLock lock = entrada.getLock();
+        if (escrita) {
+            lock.writeLock().unlock();
+        } else {
+            lock.readLock().unlock();
+        }
+    }
 
-        // Calcula quantos blocos serão necessários para armazenar toda a FAT
-        //4 pq está em bits e precisso em bytes
-        int blocosFAT = (NUM_BLOCO * 4 + TAM_BLOCO - 1) / TAM_BLOCO;
+    //Chamado no fim das seções críticas que mudam um diretório ou o espaço livre (com o lockMetadados de escrita)
+    private void publicarMetadados() {
+        livresPublicados = blocosLivres.getLivres();
 
-        // Percorre cada bloco necessário para salvar a FAT no disco
-        for (int i = 0; i < blocosFAT; i++) {
-            // a fat é composta por varios blocos. Calcular quantos blocos a FAT vai ter
-            // Cria um array de bytes para armazenar os dados de um bloco da FAT
-            byte[] blocoFat = new byte[TAM_BLOCO];
-
-            // Percorre as entradas da FAT que cabem nesse bloco. Por exemplo, bloco 1 aponta para o 2
-            for (int j = 0; j < entradasPorBloco; j++) {
-
-                // Calcula o índice da entrada da FAT que corresponde à posição j no bloco i da FAT a ser gravada
-                //J é o indice dentro da FAT. J é a  posição atual, no for - posição que estou na FAT
-                int indiceFat = i * entradasPorBloco + j;
-
-                //indiceFat entrada atual que está sendo copiada para a memoria
-                if (indiceFat < NUM_BLOCO) {
-                    //Preenche a FAT: copia os valores da FAT para o array, 1 inteiro (4 bytes) por vez
-                    //Converter os valores de inteiros em um array de Bytes
-                    System.arraycopy(intToBytes(fat[indiceFat]), 0, blocoFat, j * 4, 4);
-                }
-            }
+        //Só os diretórios em que algum arquivo entrou ou saiu perdem a fotografia. Ela é montada de novo na próxima listagem
+        for (Diretorio diretorio : diretoriosAlterados) {
+            diretorio.descartarPublicada();
+        }
+        diretoriosAlterados.clear();
+    }
 
-            // Grava o bloco da FAT no disco, começando a partir do bloco 1
-            disco.write(1 + i, blocoFat); // Blocos FAT começam no bloco 1
+    //Lista de nomes do diretório: a fotografia publicada, ou uma nova se o diretório mudou desde a última listagem
+    private List<String> fotografia(Diretorio diretorio) {
+        List<String> nomes = diretorio.getPublicada();
+        if (nomes != null) {
+            return nomes;
+        }
+        lockMetadados.readLock().lock();
+        try {
+            return diretorio.publicar();
+        } finally {
+            lockMetadados.readLock().unlock();
         }
+    }
 
-        //1.Grava a tabela FAT no disco
-        //2. A quantidade de entradas que UM UNICO bloco vai poder armazenar: TAM_BLOCO / 4 (4bytes = 32 bits);
-        //3. Calcula a quantidade de blocos necessários para armazenar a FAT
-        //4. Laço que vai criar um array para cada bloco que será armazenado na FAT
-        //5.Preenche a FAT: copia os valores da FAT para o array, 1 inteiro (4 bytes) por vez
-        //6. Converter os valores de inteiros em um array de Bytes
-        //7. Escreve cada bloco no disco: grava cada bloco no disco usando o índice correspondente.
+    //Diretório de um caminho, ou IOException se ele não existe
+    private Diretorio abrirDiretorio(String caminho) throws IOException {
+        Caminho partes = Caminho.de(caminho);
+        Diretorio diretorio;
+        lockMetadados.readLock().lock();
+        try {
+            diretorio = buscarDiretorio(partes, partes.getQuantidade());
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+        if (diretorio == null) {
+            throw new IOException("Diretório não encontrado: " + caminho);
+        }
+        return diretorio;
     }
 
-    private EntradaDiretorio buscarEntradaDiretorio(String fileName) throws IOException {
+    //Tamanho novo de um arquivo já travado para escrita. Retorna a geração do group commit, ou 0 se o tamanho não mudou
+    private long definirTamanhoTravado(EntradaDiretorio entrada, long novoTamanho) throws IOException {
+        //O tamanho fica num int da entrada, com o bit 31 reservado para a marca de diretório
+        if (novoTamanho < 0 || novoTamanho > Integer.MAX_VALUE) {
+            throw new IOException("Tamanho inválido: " + novoTamanho);
+        }
+
+        CadeiaBlocos cadeia;
+        int tamanhoAtual;
+        lockMetadados.readLock().lock();
+        try {
+            cadeia = obterCadeia(entrada);
+            tamanhoAtual = entrada.getFileSize();
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+        if (novoTamanho == tamanhoAtual) {
+            return 0;
+        }
 
-        //Chama a função formatar nome e formata o arquivo que veio por parâmetro
-        String nomeBusca = formatarNomeArquivo(fileName);
+        //Aumentar: o resto do bloco onde o arquivo termina passa a fazer parte dele, mas no disco pode ter lixo (o append grava
+        //só os bytes do arquivo, e um arquivo que diminuiu deixa os bytes antigos). Em vez de zerar o resto no disco,
+        //o fim da cadeia na FAT passa a dizer até onde o último bloco vale. Nenhum bloco é alocado ou gravado
+        int ultimoIndice = cadeia.getQuantidade() - 1;
+        int escritosNoUltimo = -1;
+        if (novoTamanho > tamanhoAtual && ultimoIndice >= 0) {
+            long noUltimo = tamanhoAtual - (long) ultimoIndice * tamBloco;
+            if (noUltimo < cadeia.getEscritosNoUltimo()) {
+                escritosNoUltimo = (int) noUltimo;
+            }
+        }
 
-        //Le o bloco do  diretorio
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
+        long geracao;
+        int resto = 0;
+        lockMetadados.writeLock().lock();
+        try {
+            if (escritosNoUltimo >= 0) {
+                cadeia.setEscritosNoUltimo(escritosNoUltimo);
+                religar(entrada, cadeia, ultimoIndice, ultimoIndice);
+            }
 
-        //Percorre as entradas do diretório
-        for (int i = 0; i < NUMERO_MAXIMO_ENTRADAS; i++) {
-            //Calcula o deslocamento do arquivo dentro do diretório. Em relação a todo o conteudo
-            int offset = i * TAM_ENTRADA_DIRETORIO;
+            //Diminuir: corta a cadeia no bloco do novo fim e libera o resto como no remove (só depois de confirmado).
+            //Nesta transação vão no máximo blocosPorTransacao deles; o resto da cadeia fica solto e é liberado depois
+            int blocosMantidos = (int) ((novoTamanho + tamBloco - 1) / tamBloco);
+            if (blocosMantidos < cadeia.getQuantidade()) {
+                //Blocos de ligação que ficariam no fim da cadeia saem junto
+                resto = liberarCadeia(cadeia.cortar(blocosMantidos), blocosPorTransacao, true);
+                religar(entrada, cadeia, cadeia.getQuantidade(), cadeia.getQuantidade());
+            }
 
-            // Verifica se a entrada está em uso e formata o nome do arquivo: 8 caracteres + 3 de extensão
-            if (blocoDir[offset] != 0) {
-                String nome = new String(blocoDir, offset, 8).trim();
-                String extensao = new String(blocoDir, offset + 8, 3).trim();
-                String nomeCompleto = nome + (extensao.isEmpty() ? "" : "." + extensao);
+            entrada.setFileSize((int) novoTamanho);
+            atualizarEntradaDiretorio(entrada);
+            publicarMetadados();
+            geracao = grupoCommit.getGeracaoAberta();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
 
-                //Verificação se o nome da entrada é igual ao que veio por parâmetro
-                if (nomeCompleto.equals(nomeBusca)) {
+        if (resto > 0) {
+            grupoCommit.aguardar(geracao);
+            liberarEmPartes(resto);
+        }
+        return geracao;
 
-                    // Lê 4 bytes a partir da posição offset (posição no diretório) + 11, que representam o tamanho do arquivo em bytes
-                    int tamanho = ByteBuffer.wrap(blocoDir, offset + 11, 4).getInt();
+        //1. Confere o tamanho e pega a cadeia e o tamanho atual do arquivo
+        //2. Se o arquivo cresce, marca na FAT que do bloco onde ele termina só vale o que vem antes do fim de hoje
+        //3. Se diminui, o último bloco que fica vira o fim da cadeia na FAT e os blocos depois dele são liberados
+        //4. Grava o tamanho novo na entrada; a FAT e a entrada vão juntas para o journal
+        //5. Se sobraram blocos para liberar, espera o corte ser confirmado e libera o resto em partes
+    }
 
-                    // Lê 4 bytes a partir da posição offset + 15, que representam o número do bloco inicial do arquivo
-                    // Le o bloco onde ele começa
-                    int blocoInicial = ByteBuffer.wrap(blocoDir, offset + 15, 4).getInt();
+    //Escreve data[off, off + tamanho) na posição, num arquivo travado para escrita, quando o trecho cai num buraco.
+    //Só as posições do trecho ganham blocos: o buraco antes dele continua sem bloco nenhum, a FAT guarda quantas posições
+    //a ligação pula (FormatoFat). Se o buraco entre o fim da cadeia e o trecho é maior do que uma ligação consegue pular,
+    //entram blocos de ligação, marcados como buraco e nunca gravados.
+    //Um bloco de buraco ou novo é gravado inteiro, com zeros em volta dos dados: o conteúdo antigo dele é lixo
+    private long escreverNosBuracos(EntradaDiretorio entrada, long posicao, byte[] data, int off, int tamanho) throws IOException {
+        CadeiaBlocos cadeia;
+        int tamanhoAtual;
+        lockMetadados.readLock().lock();
+        try {
+            cadeia = obterCadeia(entrada);
+            tamanhoAtual = entrada.getFileSize();
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+        long fim = posicao + tamanho;
+        if (fim > Integer.MAX_VALUE) {
+            throw new IOException("Arquivo grande demais");
+        }
 
-                    //Retorna  o nome, tamanho e bloco inicial do arquivo
-                    return new EntradaDiretorio(nomeCompleto, tamanho, blocoInicial);
+        int primeiroIndice = (int) (posicao / tamBloco);
+        int ultimoIndice = (int) ((fim - 1) / tamBloco);
+        int naCadeia = cadeia.getQuantidade();
+        int maximoPulados = formato.getMaximoPulados();
+
+        //Do último bloco só valem os primeiros escritosNoUltimo bytes (FormatoFat.fim), e nunca os que passam do fim do arquivo
+        //(um arquivo que diminuiu deixa os bytes antigos). O que a escrita pular entre eles e os dados é zerado, e o resto
+        //dele também quando blocos novos entram depois dele (no meio da cadeia o bloco vale inteiro)
+        int escritosNoUltimo = (int) Math.min(cadeia.getEscritosNoUltimo(), tamanhoAtual - (long) (naCadeia - 1) * tamBloco);
+        boolean ultimoParcial = naCadeia > 0 && !cadeia.isBuraco(naCadeia - 1) && escritosNoUltimo < tamBloco;
+
+        //Blocos novos: as posições do trecho que não têm bloco e, se o trecho começa longe do fim da cadeia,
+        //um bloco de ligação a cada maximoPulados + 1 posições do buraco entre eles
+        int semBloco = 0;
+        for (int indice = primeiroIndice; indice <= ultimoIndice; indice++) {
+            if (cadeia.get(indice) <= 0) {
+                semBloco++;
+            }
+        }
+        int ligacoes = primeiroIndice > naCadeia ? (primeiroIndice - naCadeia) / (maximoPulados + 1) : 0;
+
+        int[] novosBlocos = null;
+        if (semBloco + ligacoes > 0) {
+            lockMetadados.writeLock().lock();
+            try {
+                if (semBloco + ligacoes > blocosLivres.getLivres()) {
+                    throw new IOException("Espaço insuficiente para adicionar dados");
                 }
+                //Prefere o bloco logo depois do bloco que fica antes do trecho na cadeia
+                int anterior = cadeia.ordemAntes(primeiroIndice);
+                novosBlocos = alocarBlocos(semBloco + ligacoes, anterior >= 0 ? cadeia.getBlocoNaOrdem(anterior) + 1 : -1);
+                publicarMetadados();
+            } finally {
+                lockMetadados.writeLock().unlock();
             }
         }
-        return null;
 
-        //1. Recebe um arquivo (tipo do arquivo EntradaDiretorio)
-        //2. Formata o nome para busca (ficar igual ao nome do arquivo salvo)
-        //3. Lê o bloco do diretório (blocoDir)
-        //4. Percorre as entradas do diretório: verifica cada entrada até o número máximo permitido
-        //5. Verifica se a entrada tem dados válidos
-        //6. Extrai o nome e a extensão
-        //7. Comparação entre nome extraido e nome fornecido
-        //8. Le os dados com o ByteBuffer
-        //9. Retorna o arquivo tipo do arquivo EntradaDiretorio
-    }
+        //Gravação fora da seção crítica, um bloco por vez. Um bloco de buraco ou novo escrito só em parte é montado
+        //num bloco emprestado do pool (zeros em volta dos dados) e gravado de uma vez.
+        //Os primeiros blocos novos são os de ligação; os outros vão para as posições sem bloco, na ordem
+        ByteBuffer blocoCompleto = null;
+        try {
+            if (ultimoParcial && primeiroIndice >= naCadeia) {
+                disco.write(cadeia.getUltimo(), escritosNoUltimo, zeros, 0, tamBloco - escritosNoUltimo);
+            }
+
+            int proximoNovo = ligacoes;
+            int escritos = 0;
+            for (int indice = primeiroIndice; indice <= ultimoIndice; indice++) {
+                int bloco = cadeia.get(indice);
+                boolean novo = bloco <= 0;
+                if (novo) {
+                    bloco = novosBlocos[proximoNovo++];
+                }
+                int noBloco = (int) ((posicao + escritos) % tamBloco);
+                int bytesDesteBloco = Math.min(tamBloco - noBloco, tamanho - escritos);
+
+                if ((novo || cadeia.isBuraco(indice)) && bytesDesteBloco < tamBloco) {
+                    if (blocoCompleto == null) {
+                        blocoCompleto = buffers.emprestar();
+                    }
+                    byte[] conteudo = blocoCompleto.array();
+                    Arrays.fill(conteudo, 0, noBloco, (byte) 0);
+                    System.arraycopy(data, off + escritos, conteudo, noBloco, bytesDesteBloco);
+                    Arrays.fill(conteudo, noBloco + bytesDesteBloco, tamBloco, (byte) 0);
+                    disco.write(bloco, 0, conteudo, 0, tamBloco);
+                } else {
+                    if (ultimoParcial && indice == naCadeia - 1 && noBloco > escritosNoUltimo) {
+                        disco.write(bloco, escritosNoUltimo, zeros, 0, noBloco - escritosNoUltimo);
+                    }
+                    disco.write(bloco, noBloco, data, off + escritos, bytesDesteBloco);
+                }
+                escritos += bytesDesteBloco;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (novosBlocos != null) {
+                liberarBlocosReservados(novosBlocos[0]);
+            }
+            throw e;
+        } finally {
+            if (blocoCompleto != null) {
+                buffers.devolver(blocoCompleto);
+            }
+        }
 
-    private void adicionarEntradaDiretorio(String fileName, int fileSize, int starterBlock) throws IOException {
+        lockMetadados.writeLock().lock();
+        try {
+            //Os blocos novos entram na cadeia nas posições deles e os blocos de buraco gravados perdem a marca
+            int proximoNovo = ligacoes;
+            for (int indice = primeiroIndice; indice <= ultimoIndice; indice++) {
+                if (cadeia.get(indice) <= 0) {
+                    cadeia.adicionar(indice, novosBlocos[proximoNovo++], false);
+                } else {
+                    cadeia.marcarEscrito(indice);
+                }
+            }
+            for (int i = 0; i < ligacoes; i++) {
+                cadeia.adicionar(naCadeia - 1 + (i + 1) * (maximoPulados + 1), novosBlocos[i], true);
+            }
+            //O último bloco continua sendo o último: passa a valer até onde a escrita chegou nele
+            if (ultimoParcial && ultimoIndice == naCadeia - 1) {
+                cadeia.setEscritosNoUltimo((int) Math.max(escritosNoUltimo, fim - (long) ultimoIndice * tamBloco));
+            }
 
-        //Recebe o nome do arquivo, tamanho e bloco inicial
+            //Liga tudo na FAT: o bloco antes do trecho (ou o bloco inicial da entrada), os de ligação e os do trecho
+            religar(entrada, cadeia, ligacoes > 0 ? naCadeia + maximoPulados : primeiroIndice, ultimoIndice);
 
-        //Le o bloco do  diretorio
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
+            entrada.setFileSize((int) Math.max(tamanhoAtual, fim));
+            atualizarEntradaDiretorio(entrada);
+            publicarMetadados();
+            return grupoCommit.getGeracaoAberta();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
 
-        //Separa onde tem ponto
-        String[] partes = fileName.split("\\.");
+        //1. Reserva blocos só para as posições do trecho que não têm bloco (e os de ligação, se o buraco é grande demais)
+        //2. Fora da seção crítica grava o trecho: blocos escritos recebem só os bytes novos, blocos de buraco e novos são gravados inteiros.
+        // No último bloco, o que não valia e fica antes dos dados (ou todo o resto, se ele deixa de ser o último) é zerado
+        //3. Cada bloco novo entra na cadeia na posição dele, os blocos de buraco gravados perdem a marca e as ligações da FAT são refeitas
+        //4. Atualiza o tamanho; a FAT e a entrada vão juntas para o journal
+    }
 
-        //Array na posição 0 recebe o nome
-        String nomeBase = partes[0];
+    //Se alguma posição do trecho [posicao, posicao + tamanho) é buraco (sem bloco, bloco de buraco ou depois do fim da cadeia),
+    //ou se o trecho passa da parte do último bloco que vale
+    private boolean temBuraco(CadeiaBlocos cadeia, long posicao, int tamanho) {
+        int ultimoIndice = (int) ((posicao + tamanho - 1) / tamBloco);
+        if (ultimoIndice >= cadeia.getQuantidade()) {
+            return true;
+        }
+        if (ultimoIndice == cadeia.getQuantidade() - 1
+                && posicao + tamanho - (long) ultimoIndice * tamBloco > cadeia.getEscritosNoUltimo()) {
+            return true;
+        }
+        for (int indice = (int) (posicao / tamBloco); indice <= ultimoIndice; indice++) {
+            if (cadeia.isBuraco(indice)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        //Array na posição 1 recebe a extensão
-        String extensao = partes.length > 1 ? partes[1] : "";
+    //aposConfirmar: os blocos eram de um arquivo confirmado e só podem ser reaproveitados depois que a liberação for confirmada
+    private void liberarCadeia(int starterBlock, boolean aposConfirmar) {
+        liberarCadeia(starterBlock, Integer.MAX_VALUE, aposConfirmar);
+    }
 
+    //Libera no máximo limite blocos do começo da cadeia. Retorna o bloco onde o resto dela começa (0 se liberou tudo)
+    private int liberarCadeia(int starterBlock, int limite, boolean aposConfirmar) {
+
+        //Pega o primeiro bloco da cadeia e percorre até o fim (-1), marcando cada bloco com 0 (livre)
+        int blocoAtual = starterBlock;
+        for (int liberados = 0; blocoAtual > 0 && liberados < limite; liberados++) {
+            int proximoBloco = formato.proximo(fat[blocoAtual]);
+            setFat(blocoAtual, 0);
+            if (aposConfirmar) {
+                blocosALiberar.set(blocoAtual);
+            } else {
+                blocosLivres.marcarLivre(blocoAtual);
+            }
+            blocoAtual = proximoBloco;
+        }
+        return Math.max(blocoAtual, 0);
+    }
 
-        //Percorre as entradas do diretório
-        for (int i = 0; i < NUMERO_MAXIMO_ENTRADAS; i++) {
-            //Calcula o deslocamento do arquivo dentro do diretório. Em relação a todo o conteudo
-            int offset = i * TAM_ENTRADA_DIRETORIO;
+    //Libera, em partes que cabem numa transação do journal, o resto de uma cadeia que nenhum arquivo aponta mais
+    //(o remove ou o setLength que soltou ela já foi confirmado). Cada parte é confirmada antes da seguinte; se cair no meio,
+    //a montagem recolhe o que sobrou como blocos órfãos
+    private void liberarEmPartes(int starterBlock) throws IOException {
+        int resto = starterBlock;
+        while (resto > 0) {
+            long geracao;
+            lockMetadados.writeLock().lock();
+            try {
+                resto = liberarCadeia(resto, blocosPorTransacao, true);
+                publicarMetadados();
+                geracao = grupoCommit.getGeracaoAberta();
+            } finally {
+                lockMetadados.writeLock().unlock();
+            }
+            grupoCommit.aguardar(geracao);
+        }
+    }
 
+    //Devolve blocos que foram reservados mas não chegaram a ser ligados a um arquivo (falha ao gravar os dados).
+    //Não precisa esperar confirmação: nenhum arquivo no disco aponta para eles
+    private void liberarBlocosReservados(int starterBlock) {
+        lockMetadados.writeLock().lock();
+        try {
+            liberarCadeia(starterBlock, false);
+            publicarMetadados();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
+    }
 
-            //Verifica se a entrada está livre (0)
-            if (blocoDir[offset] == 0) {
-                //Se tiver livre, copia o nome para um array de 8 posições
-                byte[] nomeBytes = Arrays.copyOf(nomeBase.getBytes(), 8);
-                //Copia os bytes do nome para o diretório
-                System.arraycopy(nomeBytes, 0, blocoDir, offset, Math.min(nomeBase.length(), 8));
+    private void gravarDados(byte[] data, int off, int tamanho, int[] blocos) throws IOException {
 
-                //Se tiver extensão faz a mesma coisa do anterior. Copia para um array de 3 posições
-                if (!extensao.isEmpty()) {
-                    byte[] extBytes = Arrays.copyOf(extensao.getBytes(), 3);
+        //Recebe um byte de dados (o arquivo a ser gravado é o trecho data[off, off + tamanho)) e o array de blocos livres que veem da função alocar blocos
 
-                    //Copia os bytes do nome para o diretório. Na posição do arquivo que estou adicionando
-                    System.arraycopy(extBytes, 0, blocoDir, offset + 8, Math.min(extensao.length(), 3));
-                }
+        int gravados = 0;
+        int i = 0;
+        while (i < blocos.length) {
+            //Blocos vizinhos no disco são gravados juntos, direto do array data, sem cópia
+            int blocosNoTrecho = 1;
+            while (i + blocosNoTrecho < blocos.length && blocos[i + blocosNoTrecho] == blocos[i] + blocosNoTrecho) {
+                blocosNoTrecho++;
+            }
 
-                // Copia os 4 bytes que representam o tamanho do arquivo + 11 (8caracteres+3caracteres)
-                System.arraycopy(intToBytes(fileSize), 0, blocoDir, offset + 11, 4);
+            //Só os bytes do arquivo: o resto do último bloco fica como está (a leitura nunca passa do tamanho do arquivo)
+            int bytesDesteTrecho = (int) Math.min((long) blocosNoTrecho * tamBloco, tamanho - gravados);
+            disco.write(blocos[i], 0, ByteBuffer.wrap(data, off + gravados, bytesDesteTrecho));
+            gravados += bytesDesteTrecho;
+            i += blocosNoTrecho;
+        }
 
-                // Copia os 4 bytes que representam o bloco inicial do arquivo
-                //Posição 15 em diante é para o conteudo. Porque anteriormente já preenche até a 14
-                System.arraycopy(intToBytes(starterBlock), 0, blocoDir, offset + 15, 4);
+        //1. recebe um array com dados e um array com a posição desses blocos na memoria
+        //2. Junta os blocos vizinhos no disco em trechos; cada trecho vira uma escrita só, direto do array recebido
+        //3. O último trecho grava só até o fim dos dados: um arquivo de 10 bytes escreve 10 bytes, não um bloco inteiro
+        //4. Nenhum array de bloco é criado
+    }
 
-                // Escreve o bloco atualizado de volta no disco
-                disco.write(DIRETORIO_BLOCO, blocoDir);
-                return;
+    //Transfere tamanho bytes do canal de origem para os blocos, um trecho de blocos contínuos por chamada
+    private void transferirParaBlocos(ReadableByteChannel origem, int tamanho, int[] blocos) throws IOException {
+        int copiados = 0;
+        int i = 0;
+        while (i < blocos.length) {
+            //Os blocos vêm do alocador em faixas contínuas: cada faixa vira uma transferência só
+            int blocosNoTrecho = 1;
+            while (i + blocosNoTrecho < blocos.length && blocos[i + blocosNoTrecho] == blocos[i] + blocosNoTrecho) {
+                blocosNoTrecho++;
             }
+
+            int bytesDesteTrecho = (int) Math.min((long) blocosNoTrecho * tamBloco, tamanho - copiados);
+            if (disco.transferirDe(origem, blocos[i], 0, bytesDesteTrecho) < bytesDesteTrecho) {
+                throw new IOException("O arquivo de origem terminou antes do esperado");
+            }
+            copiados += bytesDesteTrecho;
+            i += blocosNoTrecho;
         }
-        throw new IOException("Diretório cheio");
+    }
+
+    //Altera uma entrada da FAT na memória e marca ela como suja, para o coletarTransacao() saber o que precisa ir para o disco
+    private void setFat(int bloco, int valor) {
+        fat[bloco] = valor;
+        fatSuja.set(bloco);
+    }
 
-        //1. Recebe um arquivo, um tamanho e o bloco inicial dele para gravar
-        //2. Lê o bloco do diretório (blocoDir)
-        //3. Divide o nome do arquivo em nome base e extensão
-        //4. Percorre as entradas do diretório até o número máximo de entradas
-        //5. Encontra a entrada vazia: verifica se o primeiro byte da entrada é zero (livre)
-        //6. Preenche os campos da entrada: Nome (8 bytes); Extensão (3 bytes); Tamanho (4 bytes); Bloco inicial (4 bytes)
-        //7. Grava o bloco de diretório no disco.
+    //Grava na FAT as ligações dos blocos da cadeia nas posições [de, ate] do arquivo e a do bloco antes delas
+    //(ou o bloco inicial da entrada, se não tem bloco antes). Só as entradas que mudaram ficam sujas para o journal
+    private void religar(EntradaDiretorio entrada, CadeiaBlocos cadeia, int de, int ate) {
+        int ordem = cadeia.ordemAntes(de);
+        if (ordem < 0) {
+            entrada.setStarterBlock(cadeia.valorInicio());
+            ordem = 0;
+        }
+        for (; ordem < cadeia.getTotalBlocos() && cadeia.getIndiceNaOrdem(ordem) <= ate; ordem++) {
+            int bloco = cadeia.getBlocoNaOrdem(ordem);
+            int valor = cadeia.valorFat(ordem);
+            if (fat[bloco] != valor) {
+                setFat(bloco, valor);
+            }
+        }
     }
 
-    private void atualizarEntradaDiretorio(EntradaDiretorio entrada) throws IOException {
+    //Confirma no journal tudo o que está pendente e espera ficar durável. Usado na montagem, sem lock nenhum
+    private void confirmarAlteracoes() throws IOException {
+        grupoCommit.aguardar(grupoCommit.getGeracaoAberta());
+    }
 
-        //Le o bloco do  diretorio
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
+    //Chamado pela líder do grupo (GrupoCommit), fora do lockMetadados
+    private TransacaoJournal coletarTransacao() {
+        lockMetadados.writeLock().lock();
+        try {
+            //Junta numa transação todas as entradas da FAT e slots do diretório alterados desde a última confirmação
+            TransacaoJournal transacao = new TransacaoJournal();
+            for (int i = fatSuja.nextSetBit(0); i >= 0; i = fatSuja.nextSetBit(i + 1)) {
+                transacao.alterarFat(i, fat[i]);
+            }
+            slotsNoGrupo = new HashMap<>();
+            for (Diretorio diretorio : diretoriosSujos) {
+                BitSet sujos = diretorio.getSlotsSujos();
+
+                //Diretório removido: o conteúdo dele não importa mais, quem vai zerada é a entrada dele no pai
+                if (!diretorio.isRemovido()) {
+                    for (int slot = sujos.nextSetBit(0); slot >= 0; slot = sujos.nextSetBit(slot + 1)) {
+                        //Slot sem arquivo vai para o disco zerado (arquivo removido)
+                        EntradaDiretorio entrada = diretorio.getOcupante(slot);
+                        if (entrada != null) {
+                            codificarEntrada(entrada, slot - entrada.getSlot());
+                        } else {
+                            Arrays.fill(bufferEntrada, (byte) 0);
+                        }
+                        int posicao = (slot % entradasPorBlocoDiretorio) * TAM_ENTRADA_DIRETORIO;
+                        transacao.alterarEntrada(blocoDaEntrada(diretorio, slot), posicao, bufferEntrada);
+                    }
+                    slotsNoGrupo.put(diretorio, (BitSet) sujos.clone());
+                }
+                sujos.clear();
+            }
+            for (int bloco = blocosARevogar.nextSetBit(0); bloco >= 0; bloco = blocosARevogar.nextSetBit(bloco + 1)) {
+                transacao.revogar(bloco);
+            }
+            fatSuja.clear();
+            diretoriosSujos.clear();
+            blocosARevogar.clear();
+
+            //Os blocos de arquivos removidos neste grupo são liberados quando ele for confirmado
+            liberandoNoGrupo = (BitSet) blocosALiberar.clone();
+            blocosALiberar.clear();
+            return transacao;
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
 
-        //Percorre as entradas do diretório
-        for (int i = 0; i < NUMERO_MAXIMO_ENTRADAS; i++) {
-            //Calcula o deslocamento do arquivo dentro do diretório. Em relação a todo o conteudo
-            int offset = i * TAM_ENTRADA_DIRETORIO;
+        //1. Monta a transação com as entradas sujas da FAT (em ordem crescente) e os slots sujos de cada diretório,
+        // endereçados pelo bloco do disco onde ficam (região da raiz ou bloco da cadeia do subdiretório), e os blocos a revogar
+        //2. Limpa as marcações de sujo: alterações feitas daqui em diante vão para o próximo grupo
+        //3. Separa os blocos que esperam esta confirmação para voltar ao mapa de livres
+        //4. A líder confirma a transação no journal já sem o lockMetadados: leituras e escritas seguem durante o force
+    }
 
-            // Encontra a entrada do arquivo e formata conforme as regras
-            String nome = new String(blocoDir, offset, 8).trim();
-            String extensao = new String(blocoDir, offset + 8, 3).trim();
-            String nomeCompleto = nome + (extensao.isEmpty() ? "" : "." + extensao);
+    private void transacaoConfirmada() {
+        lockMetadados.writeLock().lock();
+        try {
+            //A remoção está durável: os blocos já podem ser reaproveitados
+            for (int bloco = liberandoNoGrupo.nextSetBit(0); bloco >= 0; bloco = liberandoNoGrupo.nextSetBit(bloco + 1)) {
+                blocosLivres.marcarLivre(bloco);
+            }
+            liberandoNoGrupo = null;
+            slotsNoGrupo = null;
+            publicarMetadados();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
+    }
 
-            if (nomeCompleto.equals(entrada.getFileName())) {
-                // Atualiza tamanho e bloco inicial
-                // Copia os 4 bytes que representam o tamanho do arquivo + 11 (8caracteres+3caracteres)
-                System.arraycopy(intToBytes(entrada.getFileSize()), 0, blocoDir, offset + 11, 4);
+    private void devolverTransacao(TransacaoJournal transacao) {
+        lockMetadados.writeLock().lock();
+        try {
+            //A confirmação falhou: as alterações continuam na memória e entram no próximo grupo
+            transacao.marcarPendentes(fatSuja, blocosARevogar);
+            for (Map.Entry<Diretorio, BitSet> slots : slotsNoGrupo.entrySet()) {
+                slots.getKey().getSlotsSujos().or(slots.getValue());
+                diretoriosSujos.add(slots.getKey());
+            }
+            blocosALiberar.or(liberandoNoGrupo);
+            liberandoNoGrupo = null;
+            slotsNoGrupo = null;
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
+    }
 
-                // Copia os 4 bytes que representam o bloco inicial do arquivo
-                //Posição 15 em diante é para o conteudo. Porque anteriormente já preenche até a 14
-                System.arraycopy(intToBytes(entrada.getStarterBlock()), 0, blocoDir, offset + 15, 4);
+    private void recolherBlocosOrfaos() throws IOException {
+
+        //Marca os blocos alcançáveis a partir das entradas de todos os diretórios (os blocos de um subdiretório são os da entrada dele)
+        BitSet alcancaveis = new BitSet(numBlocos);
+        for (Diretorio diretorio : todosDiretorios()) {
+            for (int slot = 0; slot < diretorio.getCapacidade(); slot++) {
+                EntradaDiretorio entrada = diretorio.get(slot);
+                if (entrada == null) continue;
+                int bloco = formato.proximo(entrada.getStarterBlock());
+                while (bloco > 0 && !alcancaveis.get(bloco)) {
+                    alcancaveis.set(bloco);
+                    bloco = formato.proximo(fat[bloco]);
+                }
+            }
+        }
 
-                // Escreve o bloco atualizado de volta no disco
-                disco.write(DIRETORIO_BLOCO, blocoDir);
-                return;
+        //Blocos de dados ocupados na FAT que nenhum arquivo alcança voltam a ser livres, confirmados em partes que cabem no journal
+        int liberados = 0;
+        for (int i = superbloco.getPrimeiroBlocoDados(); i < numBlocos; i++) {
+            if (fat[i] != 0 && !alcancaveis.get(i)) {
+                setFat(i, 0);
+                if (++liberados % blocosPorTransacao == 0) {
+                    confirmarAlteracoes();
+                }
             }
         }
-        throw new IOException("Entrada não encontrada para atualização");
+        confirmarAlteracoes();
 
-        //1. Recebe uma entrada do diretório (EntradaDiretorio) para atualizar
-        //2. Lê o bloco do diretório (blocoDir).
-        //3. Divide o nome do arquivo (da entrada) em nome base e extensão
-        //4. Percorre as entradas do diretório até o número máximo de entradas
-        //5. Verifica se encontrou a entrada correspondente ao nome do arquivo
-        //6. Atualiza a entrada
-        //7. Tamanho: copia o novo tamanho da entrada para o bloco de diretório
-        //8. Bloco inicial: copia o novo bloco inicial.
-        //9. Grava o bloco atualizado no disco
+        //1. Segue a cadeia de cada arquivo e subdiretório na FAT (na memória) e marca os blocos dela
+        //2. Um bloco ocupado que não foi marcado foi reservado por um create (ou crescimento de diretório) que não chegou a ser confirmado,
+        // ou é o resto de uma cadeia que um remove ou create grande estava liberando ou reservando em partes
+        //3. Libera esses blocos na FAT e confirma (se não houver nenhum, a transação é vazia e nada é gravado)
+    }
+
+    //Segue as primeiras quantidade partes do caminho a partir da raiz, uma consulta de hash por parte.
+    //Retorna o diretório, ou null se alguma parte não existe ou não é um diretório. Chamado com o lockMetadados
+    private Diretorio buscarDiretorio(Caminho caminho, int quantidade) {
+        Diretorio diretorio = raiz;
+        for (int i = 0; i < quantidade && diretorio != null; i++) {
+            EntradaDiretorio entrada = diretorio.buscar(caminho.getParte(i));
+            diretorio = entrada == null ? null : entrada.getSubdiretorio();
+        }
+        return diretorio;
     }
 
-    private void removerEntradaDiretorio(EntradaDiretorio entrada) throws IOException {
+    private EntradaDiretorio buscarEntradaDiretorio(Caminho caminho) {
+
+        //Busca direto nos índices dos diretórios do caminho, sem ler o disco. Cada nome já vem codificado: a comparação é de duas palavras
+        if (caminho.isRaiz()) {
+            return null;
+        }
+        Diretorio diretorio = buscarDiretorio(caminho, caminho.getQuantidade() - 1);
+        return diretorio == null ? null : diretorio.buscar(caminho.getNome());
 
-        //Le o bloco do  diretorio
-        byte[] blocoDir = disco.read(DIRETORIO_BLOCO);
+        //1. Recebe o caminho já separado e validado uma vez pelo chamador (Caminho.de)
+        //2. Acha o diretório onde o arquivo fica e retorna a entrada do índice dele, ou null se o arquivo não existe
+    }
 
-        //Percorre as entradas do diretório
-        for (int i = 0; i < NUMERO_MAXIMO_ENTRADAS; i++) {
-            //Calcula o deslocamento do arquivo dentro do diretório. Em relação a todo o conteudo
-            int offset = i * TAM_ENTRADA_DIRETORIO;
+    //Diretório onde o arquivo do caminho vai ser criado, conferindo que ele existe e que o nome ainda está livre nele
+    private Diretorio diretorioParaCriar(Caminho caminho) throws IOException {
+        Diretorio pai = buscarDiretorio(caminho, caminho.getQuantidade() - 1);
+        if (pai == null) {
+            throw new IOException("Diretório não encontrado: " + caminho);
+        }
+        if (pai.buscar(caminho.getNome()) != null) {
+            throw new IOException("Arquivo já existe: " + caminho);
+        }
+        return pai;
+    }
 
-            // Verifica se é a entrada correta e tem o padrão do nome
-            String nome = new String(blocoDir, offset, 8).trim();
-            String extensao = new String(blocoDir, offset + 8, 3).trim();
-            String nomeCompleto = nome + (extensao.isEmpty() ? "" : "." + extensao);
+    //Retorna a entrada nova, ou null se o subdiretório está cheio e não tem bloco zerado para crescer: quem chamou solta o
+    //lockMetadados, chama prepararBlocoDiretorio e tenta de novo
+    private EntradaDiretorio adicionarEntradaDiretorio(Diretorio diretorio, NomeArquivo nome, int fileSize, int starterBlock) throws IOException {
 
-            if (nomeCompleto.equals(entrada.getFileName())) {
-                // Limpa a entrada (preenche com zeros)
-                Arrays.fill(blocoDir, offset, offset + TAM_ENTRADA_DIRETORIO, (byte) 0);
+        //Recebe o diretório, o nome do arquivo, tamanho e bloco inicial
 
-                // Escreve o bloco atualizado de volta no disco
-                disco.write(DIRETORIO_BLOCO, blocoDir);
+        //Procura slots livres seguidos para a entrada. A raiz tem tamanho fixo; um subdiretório cheio ganha mais um bloco
+        int quantidadeSlots = slotsDoNome(nome);
+        int slot = diretorio.slotsLivres(quantidadeSlots, entradasPorBlocoDiretorio);
+        if (slot < 0) {
+            if (diretorio.isRaiz()) {
+                throw new IOException("Diretório cheio");
+            }
+            if (blocosDiretorioZerados.isEmpty()) {
+                return null;
+            }
+            slot = aumentarDiretorio(diretorio);
+        }
+        EntradaDiretorio entrada = new EntradaDiretorio(nome, quantidadeSlots, fileSize, starterBlock, slot);
+
+        //Os slots desta entrada (19 bytes cada) vão para o disco na próxima transação do journal
+        diretorio.colocar(entrada);
+        marcarSlotsSujos(diretorio, entrada);
+        diretoriosAlterados.add(diretorio);
+        return entrada;
+
+        //1. Recebe um diretório, um arquivo, um tamanho e o bloco inicial dele para gravar
+        //2. Procura slots livres seguidos no diretório, um só para um nome 8.3 (se um subdiretório estiver cheio, aumenta ele
+        // com um bloco já zerado, ou retorna null para quem chamou zerar um fora do lock)
+        //3. Registra a entrada nos slots e no índice por nome do diretório
+        //4. Marca os slots como sujos: a entrada e os bytes do nome são codificados e gravados ao confirmar a transação
+    }
+
+    //Liga mais um bloco, zerado, no fim da cadeia de um subdiretório. Retorna o primeiro slot do bloco novo.
+    //O bloco vem de blocosDiretorioZerados: a escrita dos zeros já foi feita fora do lockMetadados (prepararBlocoDiretorio)
+    private int aumentarDiretorio(Diretorio diretorio) {
+        EntradaDiretorio entrada = diretorio.getEntrada();
+        CadeiaBlocos cadeia = obterCadeia(entrada);
+        int ultimoBloco = cadeia.getUltimo();
+        int novo = blocosDiretorioZerados.poll();
+
+        if (ultimoBloco > 0) {
+            setFat(ultimoBloco, novo);
+        } else {
+            entrada.setStarterBlock(novo);
+        }
+        cadeia.adicionar(new int[]{novo});
+
+        //O diretório ganha os slots do bloco novo; o tamanho dele (em bytes) muda na entrada do diretório pai
+        int primeiroSlot = diretorio.getCapacidade();
+        diretorio.aumentar(primeiroSlot + entradasPorBlocoDiretorio);
+        entrada.setFileSize(cadeia.getQuantidade() * tamBloco);
+        marcarSlotSujo(entrada.getDiretorio(), entrada.getSlot());
+        return primeiroSlot;
+
+        //1. Pega um bloco reservado e já zerado no disco
+        //2. Liga o bloco no fim da cadeia (ou como bloco inicial, se o diretório ainda não tinha nenhum)
+        //3. Aumenta os slots do diretório e marca a entrada dele no pai como suja (tamanho e bloco inicial novos)
+    }
+
+    //Reserva um bloco para o subdiretório cheio crescer e zera ele sem segurar o lockMetadados.
+    //O bloco pode ter restos de um arquivo removido, que seriam lidos como entradas. Os zeros são gravados como dados:
+    //o journal força o disco antes do registro que liga o bloco ao diretório. Um bloco que sobrar sem ser ligado
+    //(outra thread já aumentou o diretório) fica esperando o próximo; numa queda ele é recolhido como órfão na montagem
+    private void prepararBlocoDiretorio(Diretorio diretorio) throws IOException {
+        int[] novo;
+        lockMetadados.writeLock().lock();
+        try {
+            if (!blocosDiretorioZerados.isEmpty()) {
                 return;
             }
+            //De preferência logo depois do último bloco do diretório
+            int ultimoBloco = diretorio.isRemovido() ? -1 : obterCadeia(diretorio.getEntrada()).getUltimo();
+            novo = alocarBlocos(1, ultimoBloco > 0 ? ultimoBloco + 1 : -1);
+            publicarMetadados();
+        } finally {
+            lockMetadados.writeLock().unlock();
         }
 
-        //1. Recebe uma entrada do diretório (EntradaDiretorio) para atualizar
-        //2. Lê o bloco do diretório (blocoDir).
-        //3. Percorre as entradas do diretório até o número máximo de entradas
-        //4. Compara o nome completo (nome + extensão) da entrada com o nome fornecido
-        //5. Limpa a entrada: Se encontrar a entrada, preenche o espaço ocupado pela entrada com zeros
-        //6. Grava o bloco de diretório atualizado no disco
+        try {
+            disco.write(novo[0], 0, zeros, 0, tamBloco);
+        } catch (IOException | RuntimeException e) {
+            liberarBlocosReservados(novo[0]);
+            throw e;
+        }
 
+        lockMetadados.writeLock().lock();
+        try {
+            blocosDiretorioZerados.add(novo[0]);
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
     }
 
-    private byte[] intToBytes(int value) {
-        return new byte[] {
-                (byte)(value >>> 24),
-                (byte)(value >>> 16),
-                (byte)(value >>> 8),
-                (byte)value
-        };
+    //Remove o caminho se ele for um diretório vazio. Retorna false se o caminho não é um diretório
+    private boolean removerDiretorio(Caminho caminho) throws IOException {
+        long geracao;
+        lockMetadados.writeLock().lock();
+        try {
+            EntradaDiretorio entrada = buscarEntradaDiretorio(caminho);
+            if (entrada == null || !entrada.isDiretorio()) {
+                return false;
+            }
+            if (entrada.getSubdiretorio().getQuantidade() > 0) {
+                throw new IOException("Diretório não está vazio: " + caminho);
+            }
+
+            //O journal pode ter registros com slots gravados nos blocos do diretório. O registro da remoção revoga os blocos:
+            //depois que eles virarem dados de outro arquivo, a montagem não grava mais esses slots por cima
+            for (int bloco = formato.proximo(entrada.getStarterBlock()); bloco > 0; bloco = formato.proximo(fat[bloco])) {
+                blocosARevogar.set(bloco);
+            }
+
+            //Os blocos do diretório só voltam a ser livres depois da remoção confirmada, como os de um arquivo
+            liberarCadeia(formato.proximo(entrada.getStarterBlock()), true);
+            entrada.getSubdiretorio().setRemovido(true);
+            diretoriosSujos.remove(entrada.getSubdiretorio());
+            removerEntradaDiretorio(entrada);
+            entrada.setCadeia(null);
+            publicarMetadados();
+            geracao = grupoCommit.getGeracaoAberta();
+        } finally {
+            lockMetadados.writeLock().unlock();
+        }
+        grupoCommit.aguardar(geracao);
+        return true;
+
+        //1. Busca o caminho; se não existe ou é um arquivo, quem remove é o remove() normal
+        //2. Só remove diretório vazio
+        //3. Revoga os blocos do diretório no journal, libera eles na FAT e tira a entrada dele do pai
+        //4. Os slots pendentes do diretório removido não vão mais para o disco
+        //5. Espera a remoção ser confirmada no journal
     }
 
-    //S função gera um array de 4 bytes que representa o valor inteiro de 4 bytes de forma binária
-    //A conversão de um int para bytes é necessária porque os sistemas de arquivos, redes e armazenamento
-    // trabalham com dados binários. Um int ocupa 4 bytes, e a conversão permite armazenar ou transmitir esse valor de
-    // forma eficiente
+    private void atualizarEntradaDiretorio(EntradaDiretorio entrada) {
 
-    //Armazenamento: No disco, os valores inteiros precisam ser gravados como bytes
-    //Transmissão: Para enviar dados pela rede, é preciso convertê-los para bytes.
+        //A entrada já sabe o seu diretório e o seu slot. Só ele vai ser regravado, na próxima transação do journal
+        marcarSlotSujo(entrada.getDiretorio(), entrada.getSlot());
 
+        //1. Recebe uma entrada do diretório (EntradaDiretorio) para atualizar
+        //2. Marca o slot dela como sujo; nome, tamanho e bloco inicial atualizados são codificados ao confirmar a transação
+    }
 
+    private void removerEntradaDiretorio(EntradaDiretorio entrada) {
 
+        //Libera os slots. Como eles ficam sem arquivo, a transação grava zeros no lugar da entrada e do nome longo
+        Diretorio diretorio = entrada.getDiretorio();
+        diretorio.retirar(entrada);
+        marcarSlotsSujos(diretorio, entrada);
+        diretoriosAlterados.add(diretorio);
 
-    public int contarBlocosOcupados() throws IOException {
+        //1. Recebe uma entrada do diretório (EntradaDiretorio) para remover
+        //2. Libera os slots e tira o nome do índice do diretório dela
+        //3. Marca os slots como sujos: ao confirmar a transação eles são gravados com zeros
+    }
+
+    private void marcarSlotSujo(Diretorio diretorio, int slot) {
+        diretorio.getSlotsSujos().set(slot);
+        diretoriosSujos.add(diretorio);
+    }
+
+    //Todos os slots da entrada (criação e remoção). Tamanho e bloco inicial ficam no primeiro: append e
+    //aumento de diretório só regravam ele, nunca os slots do nome
+    private void marcarSlotsSujos(Diretorio diretorio, EntradaDiretorio entrada) {
+        diretorio.getSlotsSujos().set(entrada.getSlot(), entrada.getSlot() + entrada.getQuantidadeSlots());
+        diretoriosSujos.add(diretorio);
+    }
+
+    //Todos os diretórios, da raiz para baixo. Chamado com o lockMetadados (ou na montagem)
+    private List<Diretorio> todosDiretorios() {
+        List<Diretorio> diretorios = new ArrayList<>();
+        diretorios.add(raiz);
+        for (int i = 0; i < diretorios.size(); i++) {
+            Diretorio diretorio = diretorios.get(i);
+            for (int slot = 0; slot < diretorio.getCapacidade(); slot++) {
+                EntradaDiretorio entrada = diretorio.get(slot);
+                if (entrada != null && entrada.isDiretorio()) {
+                    diretorios.add(entrada.getSubdiretorio());
+                }
+            }
+        }
+        return diretorios;
+    }
+
+    //parte: qual dos slots da entrada codificar. 0 é a entrada em si; num nome longo, 1 em diante são os bytes do nome
+    private void codificarEntrada(EntradaDiretorio entrada, int parte) {
+
+        Arrays.fill(bufferEntrada, (byte) 0);
+
+        NomeArquivo nome = entrada.getNome();
+        if (parte > 0) {
+            //Slot de continuação: o trecho de 19 bytes do nome em UTF-8 (o último completado com zeros)
+            byte[] utf8 = nome.getUtf8();
+            int inicio = (parte - 1) * TAM_ENTRADA_DIRETORIO;
+            System.arraycopy(utf8, inicio, bufferEntrada, 0, Math.min(TAM_ENTRADA_DIRETORIO, utf8.length - inicio));
+            return;
+        }
 
-        // Lê o bloco 1 do disco, onde está armazenada a FAT
-        byte[] blocoFAT = disco.read(1); // bloco 1 é a FAT
+        if (nome.isCurto()) {
+            //Os 11 bytes do nome (8) e da extensão (3) já estão codificados no NomeCurto, em ASCII e completados com zeros
+            nome.getCurto().gravar(visaoEntrada, 0);
+        } else {
+            //Nome longo: no lugar dos 11 bytes vão a marca, quantos slots seguem, o tamanho do nome e o hash dele
+            visaoEntrada.put(0, MARCA_NOME_LONGO);
+            visaoEntrada.put(1, (byte) (entrada.getQuantidadeSlots() - 1));
+            visaoEntrada.putShort(2, (short) nome.getUtf8().length);
+            visaoEntrada.putInt(4, nome.getHash());
+        }
 
-        //Contador
-        int ocupados = 0;
+        // Grava os 4 bytes (big-endian) que representam o tamanho do arquivo + 11 (8caracteres+3caracteres).
+        // Num subdiretório o bit mais alto do tamanho vai ligado
+        int tamanho = entrada.isDiretorio() ? entrada.getFileSize() | MARCA_DIRETORIO : entrada.getFileSize();
+        visaoEntrada.putInt(NomeCurto.TAMANHO, tamanho);
 
-        //Percorre os blocos do disco a partir do bloco 2. 0 Diretorio e 1 FAT
-        for (int i = 2; i < Disco.NUM_BLOCO; i++) {
-            // Calcula a posição na FAT referente ao bloco i (cada entrada tem 4 bytes)
-            int pos = i * 4;
+        // Grava os 4 bytes que representam o bloco inicial do arquivo
+        visaoEntrada.putInt(NomeCurto.TAMANHO + 4, entrada.getStarterBlock());
 
-            //Verifica se a posição está dentro do tamanho do bloco FAT para evitar erro
-            if (pos + 4 > blocoFAT.length) break;
+        //1. Slot de continuação de um nome longo: só copia o trecho do nome
+        //2. Copia o nome 8.3 codificado, ou o cabeçalho do nome longo (o charset não depende da plataforma)
+        //3. Preenche os campos da entrada no bufferEntrada: Nome (8 bytes); Extensão (3 bytes); Tamanho (4 bytes); Bloco inicial (4 bytes)
+    }
 
-            // Constrói um inteiro a partir dos 4 bytes da FAT, representando o estado do bloco i
-            int valor = ((blocoFAT[pos] & 0xFF) << 24) |
-                    ((blocoFAT[pos + 1] & 0xFF) << 16) |
-                    ((blocoFAT[pos + 2] & 0xFF) << 8) |
-                    (blocoFAT[pos + 3] & 0xFF);
+    //Métrica de fragmentação: média de trechos contínuos (extents) por arquivo. 1.0 = nenhum arquivo fragmentado
+    public double mediaExtentesPorArquivo() {
+        lockMetadados.readLock().lock();
+        try {
+            return calcularMediaExtentes();
+        } finally {
+            lockMetadados.readLock().unlock();
+        }
+    }
 
-            if (valor != 0) {
-                ocupados++;
+    private double calcularMediaExtentes() {
+        int arquivos = 0;
+        int extentes = 0;
+
+        for (Diretorio diretorio : todosDiretorios()) {
+            for (int slot = 0; slot < diretorio.getCapacidade(); slot++) {
+                EntradaDiretorio entrada = diretorio.get(slot);
+                if (entrada == null || entrada.isDiretorio()) continue;
+                arquivos++;
+
+                //Arquivo vazio não tem nenhum trecho
+                int bloco = formato.proximo(entrada.getStarterBlock());
+                if (bloco <= 0) continue;
+
+                //Cada vez que o próximo bloco da cadeia não é o vizinho do atual começa um novo trecho
+                extentes++;
+                int proximo = formato.proximo(fat[bloco]);
+                while (proximo > 0) {
+                    if (proximo != bloco + 1) extentes++;
+                    bloco = proximo;
+                    proximo = formato.proximo(fat[bloco]);
+                }
             }
         }
+        return arquivos == 0 ? 0 : (double) extentes / arquivos;
+
+        //1. Percorre os arquivos do índice de cada diretório (os subdiretórios não contam)
+        //2. Segue a cadeia de cada arquivo na FAT (na memória) contando as quebras de sequência
+        //3. Retorna o total de trechos dividido pela quantidade de arquivos
+    }
+
+    public int contarBlocosOcupados() throws IOException {
+
+        //Blocos de dados (a partir do primeiro bloco de dados: antes dele ficam superbloco, journal, diretório e FAT)
+        //menos os livres publicados pelo mapa de bits
+        return getBlocosDados() - livresPublicados;
+    }
+
+    public int getTamBloco() {
+        return tamBloco;
+    }
 
-        return ocupados;
+    //Quantos blocos do disco são de dados (os outros guardam os metadados)
+    public int getBlocosDados() {
+        return numBlocos - superbloco.getPrimeiroBlocoDados();
     }
 }
\ No newline at end of file
@@ -1,7 +1,14 @@
 package br.ufsm.politecnico.csi.so.fat32;
 
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Map;
+
+//Os nomes de arquivo podem ser caminhos com subdiretórios separados por "/" ("/Clientes/Dados 2024/relatório.pdf").
+//Cada parte tem até 255 bytes em UTF-8; maiúsculas e minúsculas são preservadas, mas não diferenciam dois nomes.
+//Um nome sem "/" é um arquivo da raiz
 public interface FileSystem {
 
 
@@ -9,10 +16,31 @@ public interface FileSystem {
 
     void append(String fileName, byte[] data) throws IOException;
 
+    //Versões em lote: nome do arquivo -> dados. Os metadados de vários arquivos são gravados juntos
+    void createAll(Map<String, byte[]> arquivos) throws IOException;
+
+    void appendAll(Map<String, byte[]> arquivos) throws IOException;
+
+    //Muda o tamanho de um arquivo. O espaço novo de um arquivo que cresce é um buraco: é lido como zeros
+    //e não ocupa blocos (reservar um arquivo grande não grava nada). Escrever no meio do buraco ocupa só os blocos escritos
+    void setLength(String fileName, long length) throws IOException;
+
     byte[] read(String fileName, int offset, int limit) throws IOException;
 
+    //Remove um arquivo, ou um diretório vazio
     void remove(String fileName) throws IOException;
 
-    int freeSpace();
+    //Cria um subdiretório vazio. O diretório pai já precisa existir
+    void createDirectory(String path) throws IOException;
+
+    //Acesso por partes, sem carregar o arquivo inteiro na memória.
+    //openOutputStream cria um arquivo novo; os dados ficam duráveis no close()
+    InputStream openInputStream(String fileName) throws IOException;
+
+    OutputStream openOutputStream(String fileName) throws IOException;
+
+    SeekableByteChannel openChannel(String fileName) throws IOException;
+
+    long freeSpace();
 
 }
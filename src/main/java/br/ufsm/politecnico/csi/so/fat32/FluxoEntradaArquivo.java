@@ -0,0 +1,62 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+//InputStream de um arquivo do FAT32. Cada read lê direto dos blocos do arquivo para o array de quem chamou,
+//sem carregar o arquivo inteiro na memória
+public class FluxoEntradaArquivo extends InputStream {
+
+    private final Fat32 fat32;
+    private final EntradaDiretorio entrada;
+    private long posicao; //próximo byte a ser lido
+    private boolean fechado;
+
+    public FluxoEntradaArquivo(Fat32 fat32, EntradaDiretorio entrada) {
+        this.fat32 = fat32;
+        this.entrada = entrada;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] umByte = new byte[1];
+        int lidos = read(umByte, 0, 1);
+        return lidos == -1 ? -1 : umByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (fechado) throw new IOException("Stream fechado");
+        if (len == 0) return 0;
+
+        int lidos = fat32.lerArquivo(entrada, posicao, b, off, len);
+        if (lidos > 0) {
+            posicao += lidos;
+        }
+        return lidos;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (fechado) throw new IOException("Stream fechado");
+        if (n <= 0) return 0;
+
+        //Pular não lê nada do disco: só avança a posição, sem passar do fim do arquivo
+        long pulados = Math.min(n, Math.max(0, fat32.tamanhoArquivo(entrada) - posicao));
+        posicao += pulados;
+        return pulados;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (fechado) throw new IOException("Stream fechado");
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, fat32.tamanhoArquivo(entrada) - posicao));
+    }
+
+    @Override
+    public void close() {
+        fechado = true;
+    }
+}
@@ -0,0 +1,85 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+//OutputStream que acrescenta dados no fim de um arquivo do FAT32.
+//Junta as escritas pequenas num buffer de um bloco e faz um append por bloco cheio, então a memória usada
+//não depende do tamanho do arquivo. Os appends não esperam o journal; o close() espera todos ficarem duráveis
+public class FluxoSaidaArquivo extends OutputStream {
+
+    private final Fat32 fat32;
+    private final EntradaDiretorio entrada;
+    private final byte[] buffer;
+    private int noBuffer; //bytes esperando no buffer
+    private long geracao; //maior geração do group commit entre os appends feitos
+    private boolean fechado;
+
+    public FluxoSaidaArquivo(Fat32 fat32, EntradaDiretorio entrada) {
+        this.fat32 = fat32;
+        this.entrada = entrada;
+        this.buffer = new byte[fat32.getTamBloco()];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (fechado) throw new IOException("Stream fechado");
+        if (noBuffer == buffer.length) {
+            esvaziarBuffer();
+        }
+        buffer[noBuffer++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (fechado) throw new IOException("Stream fechado");
+
+        //Escrita de um bloco ou mais com o buffer vazio vai direto para o arquivo, sem cópia
+        if (noBuffer == 0 && len >= buffer.length) {
+            anexar(b, off, len);
+            return;
+        }
+
+        while (len > 0) {
+            int copiar = Math.min(len, buffer.length - noBuffer);
+            System.arraycopy(b, off, buffer, noBuffer, copiar);
+            noBuffer += copiar;
+            off += copiar;
+            len -= copiar;
+
+            if (noBuffer == buffer.length) {
+                esvaziarBuffer();
+            }
+        }
+    }
+
+    //Passa o que está no buffer para o arquivo. Não espera o journal: para isso use close()
+    @Override
+    public void flush() throws IOException {
+        if (fechado) throw new IOException("Stream fechado");
+        esvaziarBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fechado) return;
+        esvaziarBuffer();
+        fechado = true;
+
+        //Ponto de durabilidade do stream: todos os appends feitos por ele estão no journal
+        fat32.aguardarConfirmacao(geracao);
+    }
+
+    private void esvaziarBuffer() throws IOException {
+        if (noBuffer > 0) {
+            anexar(buffer, 0, noBuffer);
+            noBuffer = 0;
+        }
+    }
+
+    private void anexar(byte[] data, int off, int tamanho) throws IOException {
+        geracao = Math.max(geracao, fat32.anexarArquivo(entrada, data, off, tamanho));
+    }
+}
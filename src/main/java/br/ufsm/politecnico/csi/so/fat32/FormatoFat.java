@@ -0,0 +1,81 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+//Como uma entrada da FAT (e o bloco inicial de uma entrada de diretório) liga um bloco de um arquivo ao próximo.
+//
+//Valor positivo: [bit 30: este bloco é de buraco] [pulados] [ponteiro para o próximo bloco]
+//O ponteiro usa só os bits que um bloco deste disco precisa (1024 blocos = 10 bits). Os bits entre ele e o bit 30
+//dizem quantos blocos do arquivo vêm antes do próximo sem bloco nenhum no disco: um buraco no meio do arquivo
+//não ocupa espaço. No bloco inicial, pulados são os blocos de buraco antes do primeiro bloco do arquivo.
+//Um buraco maior do que os bits de pulados contam é dividido por blocos de ligação: blocos de buraco que só
+//continuam a contagem (num disco de 2^30 blocos não sobra bit nenhum e todo bloco de buraco é um bloco de ligação).
+//Num disco formatado antes disso os bits de pulados estão sempre zerados, então os valores antigos continuam valendo
+//
+//Valor negativo: fim da cadeia, com quantos bytes do último bloco valem. -1 é o bloco inteiro, FIM_BURACO (-2) é nenhum
+//(bloco de buraco) e -(n + 2) são os n primeiros bytes: o resto do bloco pode ter lixo e é lido como zeros.
+//É assim que um arquivo cresce sem zerar no disco o resto do bloco onde ele terminava
+public final class FormatoFat {
+
+    public static final int MARCA_BURACO = 0x40000000; //o disco tem no máximo 2^30 blocos (Superbloco), então o bit 30 de um ponteiro está livre
+    public static final int FIM = -1;
+    public static final int FIM_BURACO = -2;
+
+    private final int tamBloco;
+    private final int bitsPonteiro;
+    private final int mascaraPonteiro;
+    private final int maximoPulados;
+
+    public FormatoFat(int tamBloco, int numBlocos) {
+        this.tamBloco = tamBloco;
+        this.bitsPonteiro = 32 - Integer.numberOfLeadingZeros(numBlocos - 1);
+        this.mascaraPonteiro = (1 << bitsPonteiro) - 1;
+        this.maximoPulados = (MARCA_BURACO >>> bitsPonteiro) - 1;
+    }
+
+    //Próximo bloco no disco: -1 no fim da cadeia, 0 se o bloco está livre (ou, num bloco inicial, se o arquivo não tem blocos)
+    public int proximo(int valorFat) {
+        if (valorFat < 0) return FIM;
+        return valorFat & mascaraPonteiro;
+    }
+
+    //Quantos blocos do arquivo entre este bloco e o próximo não têm bloco no disco
+    public int pulados(int valorFat) {
+        return valorFat > 0 ? (valorFat & ~MARCA_BURACO) >>> bitsPonteiro : 0;
+    }
+
+    public boolean isBuraco(int valorFat) {
+        return valorFat == FIM_BURACO || (valorFat > 0 && (valorFat & MARCA_BURACO) != 0);
+    }
+
+    //Valor da FAT de um bloco: o próximo bloco (-1 = fim), os blocos sem disco antes dele e se este bloco é de buraco
+    public int ligar(int proximo, int pulados, boolean buraco) {
+        if (proximo <= 0) {
+            return buraco ? FIM_BURACO : FIM;
+        }
+        return (buraco ? MARCA_BURACO : 0) | (pulados << bitsPonteiro) | proximo;
+    }
+
+    //Valor da FAT do último bloco da cadeia quando só os primeiros escritos bytes dele valem
+    public int fim(int escritos) {
+        return escritos >= tamBloco ? FIM : -(escritos + 2);
+    }
+
+    //Quantos bytes do começo do bloco valem: o bloco inteiro no meio da cadeia, nenhum num bloco de buraco
+    public int escritos(int valorFat) {
+        if (isBuraco(valorFat)) return 0;
+        return valorFat < FIM ? -valorFat - 2 : tamBloco;
+    }
+
+    //Bloco inicial de uma entrada de diretório: o primeiro bloco no disco e quantos blocos de buraco vêm antes dele
+    public int inicio(int primeiroBloco, int pulados) {
+        return primeiroBloco > 0 ? (pulados << bitsPonteiro) | primeiroBloco : 0;
+    }
+
+    public int getTamBloco() {
+        return tamBloco;
+    }
+
+    //O maior buraco que uma ligação pula sem precisar de um bloco de ligação
+    public int getMaximoPulados() {
+        return maximoPulados;
+    }
+}
@@ -0,0 +1,167 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+
+//Confirmação em grupo (group commit) das transações do journal.
+//Cada operação altera os metadados na memória, anota a geração aberta e chama aguardar(). A primeira thread que chega
+//vira a líder: junta as alterações de todas as operações até ali numa transação só e confirma com um único par de force().
+//As outras esperam, e quando a líder termina todas as operações da geração dela retornam juntas.
+//Enquanto uma líder força o disco, as operações novas se acumulam na geração seguinte, que vira o próximo grupo.
+//Uma transação que não cabe no journal nem vazio nunca vai ser confirmada: devolver as alterações dela só faria todo grupo
+//seguinte falhar do mesmo jeito. Elas ficam só na memória, e daí em diante toda operação falha com esse erro
+public class GrupoCommit {
+
+    //Quem conhece os metadados (o Fat32) entrega as alterações pendentes e é avisado do resultado
+    public interface Coletor {
+        //Junta e limpa as alterações pendentes
+        TransacaoJournal coletar();
+
+        //A transação está durável no journal
+        void confirmada(TransacaoJournal transacao);
+
+        //A confirmação falhou: as alterações voltam a ficar pendentes para o próximo grupo
+        void devolver(TransacaoJournal transacao);
+    }
+
+    private final Journal journal;
+    private final Coletor coletor;
+    private final long janelaNanos; //quanto a líder espera outras operações entrarem no grupo (0 = não espera)
+    private final int limiteGrupo; //com tantas operações esperando a líder não espera o resto da janela
+
+    private long geracaoAberta = 1; //geração que recebe as alterações feitas agora
+    private long geracaoDuravel = 0; //todas as gerações até esta já estão no journal
+    private boolean confirmando; //existe uma líder confirmando um grupo
+    private int esperando; //operações dentro de aguardar()
+    private IOException falha; //transação que não cabe no journal: nada mais pode ser confirmado
+
+    //Métricas
+    private long operacoes;
+    private long confirmacoes;
+
+    public GrupoCommit(Journal journal, Coletor coletor, long janelaMicros, int limiteGrupo) {
+        if (janelaMicros < 0 || limiteGrupo < 1) {
+            throw new IllegalArgumentException("Configuração do group commit inválida");
+        }
+        this.journal = journal;
+        this.coletor = coletor;
+        this.janelaNanos = janelaMicros * 1000;
+        this.limiteGrupo = limiteGrupo;
+    }
+
+    //Chamado no fim da seção crítica que alterou os metadados (com o lockMetadados de escrita)
+    public synchronized long getGeracaoAberta() {
+        return geracaoAberta;
+    }
+
+    //Objetivo da função: bloquear até as alterações da geração dada estarem duráveis no journal
+    public void aguardar(long geracao) throws IOException {
+        boolean interrompida = false;
+        try {
+            synchronized (this) {
+                operacoes++;
+                esperando++;
+                //Uma líder esperando a janela pode ter atingido o limite de operações
+                notifyAll();
+                try {
+                    while (geracaoDuravel < geracao && confirmando) {
+                        interrompida |= esperar(0);
+                    }
+                    if (geracaoDuravel >= geracao) {
+                        return;
+                    }
+                    if (falha != null) {
+                        throw new IOException("Journal desativado: " + falha.getMessage(), falha);
+                    }
+
+                    //Ninguém está confirmando: esta thread vira a líder do grupo
+                    confirmando = true;
+                    long fim = System.nanoTime() + janelaNanos;
+                    while (esperando < limiteGrupo) {
+                        long resta = fim - System.nanoTime();
+                        if (resta <= 0) break;
+                        interrompida |= esperar(resta);
+                    }
+                } finally {
+                    esperando--;
+                }
+            }
+            confirmarGrupo();
+        } finally {
+            if (interrompida) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        //1. Se a geração já está durável retorna direto
+        //2. Se outra thread está confirmando, espera ela terminar e confere de novo
+        //3. Se uma transação não coube no journal, falha (as alterações desta operação não vão ficar duráveis)
+        //4. Se ninguém está confirmando, vira a líder e espera a janela (ou o limite de operações) para o grupo crescer
+        //5. A líder fecha a geração e confirma tudo o que estava pendente numa transação só
+    }
+
+    public synchronized long getOperacoes() {
+        return operacoes;
+    }
+
+    public synchronized long getConfirmacoes() {
+        return confirmacoes;
+    }
+
+    // ========== MÉTODOS AUXILIARES ========== //
+
+    private void confirmarGrupo() throws IOException {
+
+        //Fecha a geração antes de coletar: toda operação que anotou esta geração já terminou a seção crítica dela
+        //quando o coletor consegue o lockMetadados, então as alterações dela entram nesta transação
+        long fechada;
+        synchronized (this) {
+            fechada = geracaoAberta++;
+        }
+
+        TransacaoJournal transacao = coletor.coletar();
+        try {
+            journal.confirmar(transacao);
+        } catch (IOException | RuntimeException e) {
+            boolean nuncaCabe = !journal.cabe(transacao);
+            if (!nuncaCabe) {
+                coletor.devolver(transacao);
+            }
+            synchronized (this) {
+                if (nuncaCabe) {
+                    falha = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                confirmando = false;
+                notifyAll();
+            }
+            throw e;
+        }
+        coletor.confirmada(transacao);
+
+        synchronized (this) {
+            geracaoDuravel = fechada;
+            confirmando = false;
+            confirmacoes++;
+            notifyAll();
+        }
+
+        //1. Fecha a geração aberta: as operações novas passam a anotar a seguinte
+        //2. Coleta as alterações pendentes e confirma no journal (force dos dados, registro, force)
+        //3. Se falhar, devolve as alterações e libera outra thread para tentar. Se a transação não cabe no journal,
+        // não devolve: desativa as confirmações e acorda as operações que esperavam, que falham também
+        //4. Se der certo, marca a geração como durável e acorda as operações do grupo
+    }
+
+    //Espera no monitor sem ser interrompida no meio de um grupo. Retorna se a thread foi interrompida
+    private boolean esperar(long nanos) {
+        try {
+            if (nanos == 0) {
+                wait();
+            } else {
+                wait(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+//Fotografia de uma entrada de diretório entregue pela listagem: nome, tamanho e bloco inicial no momento em que foi lida.
+//Não guarda a EntradaDiretorio, então quem lista não segura nada do índice do diretório
+public final class InfoArquivo {
+
+    private final String nome;
+    private final int tamanho; //bytes (num subdiretório, os bytes dos blocos de entradas dele)
+    private final int blocoInicial; //0 = sem blocos
+    private final boolean diretorio;
+
+    public InfoArquivo(String nome, int tamanho, int blocoInicial, boolean diretorio) {
+        this.nome = nome;
+        this.tamanho = tamanho;
+        this.blocoInicial = blocoInicial;
+        this.diretorio = diretorio;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    public int getBlocoInicial() {
+        return blocoInicial;
+    }
+
+    public boolean isDiretorio() {
+        return diretorio;
+    }
+
+    @Override
+    public String toString() {
+        return diretorio ? nome + "/" : nome;
+    }
+}
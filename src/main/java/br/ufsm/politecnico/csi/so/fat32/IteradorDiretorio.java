@@ -0,0 +1,44 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//Percorre as entradas de um diretório uma página por vez. Só a página atual fica na memória,
+//e cada página é lida com o lock de leitura dos metadados por pouco tempo (escritores não esperam a listagem inteira)
+public class IteradorDiretorio implements Iterator<InfoArquivo> {
+
+    private final Fat32 fat32;
+    private final Diretorio diretorio;
+    private final int tamanhoPagina;
+    private final List<InfoArquivo> pagina;
+    private int posicaoNaPagina;
+    private int cursor; //slot onde começa a próxima página (PaginaDiretorio.FIM = não tem mais)
+
+    public IteradorDiretorio(Fat32 fat32, Diretorio diretorio, int tamanhoPagina) {
+        this.fat32 = fat32;
+        this.diretorio = diretorio;
+        this.tamanhoPagina = tamanhoPagina;
+        this.pagina = new ArrayList<>(tamanhoPagina);
+    }
+
+    @Override
+    public boolean hasNext() {
+        //Página atual acabou: busca a próxima, até achar uma com entradas ou chegar ao fim do diretório
+        while (posicaoNaPagina == pagina.size() && cursor != PaginaDiretorio.FIM) {
+            pagina.clear();
+            posicaoNaPagina = 0;
+            cursor = fat32.lerPagina(diretorio, cursor, tamanhoPagina, pagina);
+        }
+        return posicaoNaPagina < pagina.size();
+    }
+
+    @Override
+    public InfoArquivo next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pagina.get(posicaoNaPagina++);
+    }
+}
@@ -0,0 +1,291 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//Journal (write-ahead log) dos metadados. Antes de alterar a FAT e o diretório no lugar deles,
+//as alterações de uma operação são gravadas juntas como um registro numa região reservada do disco.
+//Se o sistema cair no meio, a montagem reaplica os registros completos e descarta o que ficou pela metade.
+//
+//Região: [cabeçalho: mágico (4) + sequência do primeiro registro (8)] [registro] [registro] ...
+//Registro: [mágico (4)] [sequência (8)] [tamanho do corpo (4)] [corpo] [CRC32 de sequência+tamanho+corpo (4)]
+//
+//Cada entrada de diretório do registro é endereçada pelo bloco e pela posição no bloco (raiz ou subdiretório).
+//
+//Um bloco de subdiretório removido volta a ser livre e pode virar bloco de dados de um arquivo. Registros antigos que
+//escrevem entradas nele não podem ser reaplicados depois disso: o registro da remoção leva o bloco na lista de revogados,
+//e a recuperação pula as entradas desse bloco em todos os registros até ele (os posteriores são de um diretório novo no bloco).
+//O checkpoint (desmontagem) força o que já foi aplicado e recomeça o journal vazio: a próxima montagem não reaplica nada
+public class Journal {
+
+    private static final int MAGICO_JOURNAL = 0x4A524E4C; // "JRNL"
+    private static final int MAGICO_REGISTRO = 0x52454733; // "REG3": entradas pelo bloco e blocos revogados
+    private static final int TAM_CABECALHO = 12;
+    private static final int TAM_MOLDURA = 20; //tudo do registro menos o corpo
+
+    private final Disco disco;
+    private final int tamBloco;
+    private final long inicioRegiao; //posição da região do journal no disco, em bytes
+    private final int capacidade; //tamanho da região em bytes
+    private final int blocoFat; //primeiro bloco da FAT
+    private final int tamEntrada; //tamanho de uma entrada do diretório
+
+    private long sequencia; //sequência do próximo registro
+    private int posicao; //onde o próximo registro vai ser gravado, relativo ao início da região
+
+    public Journal(Disco disco, int blocoRegiao, int deslocamento, int capacidade, int blocoFat, int tamEntrada) {
+        this.disco = disco;
+        this.tamBloco = disco.getTamBloco();
+        this.inicioRegiao = (long) blocoRegiao * tamBloco + deslocamento;
+        this.capacidade = capacidade;
+        this.blocoFat = blocoFat;
+        this.tamEntrada = tamEntrada;
+    }
+
+    //Objetivo da função: começar um journal vazio (na formatação do disco)
+    public void iniciar() throws IOException {
+        reiniciar(1);
+    }
+
+    //Objetivo da função: reaplicar na montagem os registros completos que estão no journal
+    //Retorna quantos registros foram reaplicados
+    public int recuperar() throws IOException {
+        byte[] regiao = new byte[capacidade];
+        disco.read((int) (inicioRegiao / tamBloco), (int) (inicioRegiao % tamBloco), regiao, 0, capacidade);
+        ByteBuffer buffer = ByteBuffer.wrap(regiao);
+
+        //Disco formatado antes de existir o journal: a região está zerada
+        if (buffer.getInt(0) != MAGICO_JOURNAL) {
+            reiniciar(1);
+            return 0;
+        }
+
+        long primeiraSeq = buffer.getLong(4);
+        long seq = primeiraSeq;
+        int pos = TAM_CABECALHO;
+
+        //Primeira passada: acha os registros válidos, que estão em sequência a partir do cabeçalho (para no primeiro que
+        //não estiver completo), e anota em que registro cada bloco foi revogado por último
+        Map<Integer, Long> revogados = new HashMap<>();
+        while (pos + TAM_MOLDURA <= capacidade) {
+            if (buffer.getInt(pos) != MAGICO_REGISTRO || buffer.getLong(pos + 4) != seq) break;
+
+            int tamCorpo = buffer.getInt(pos + 12);
+            if (tamCorpo < 0 || pos + TAM_MOLDURA + tamCorpo > capacidade) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(regiao, pos + 4, 12 + tamCorpo);
+            if ((int) crc.getValue() != buffer.getInt(pos + 16 + tamCorpo)) break;
+
+            lerRevogados(regiao, pos + 16, tamCorpo, seq, revogados);
+            seq++;
+            pos += TAM_MOLDURA + tamCorpo;
+        }
+        long fimSeq = seq;
+
+        //Segunda passada: reaplica os mesmos registros, na ordem, sem as entradas dos blocos revogados depois deles
+        pos = TAM_CABECALHO;
+        int aplicados = 0;
+        for (seq = primeiraSeq; seq < fimSeq; seq++) {
+            int tamCorpo = buffer.getInt(pos + 12);
+            aplicarCorpo(regiao, pos + 16, tamCorpo, seq, revogados);
+            aplicados++;
+            pos += TAM_MOLDURA + tamCorpo;
+        }
+
+        //Deixa o que foi reaplicado durável e recomeça o journal vazio, continuando a sequência
+        if (aplicados > 0) {
+            disco.sincronizar();
+        }
+        reiniciar(seq);
+        return aplicados;
+
+        //1. Lê a região do journal inteira
+        //2. Se não tem o cabeçalho, o journal nunca foi usado: só inicia um vazio
+        //3. Percorre os registros a partir do cabeçalho, conferindo mágico, sequência, tamanho e CRC, e junta os blocos revogados.
+        // Para no primeiro registro incompleto (queda no meio da gravação dele: a operação não foi confirmada)
+        //4. Reaplica cada registro completo na FAT e nos diretórios, na ordem, pulando as entradas de blocos revogados depois dele
+        //5. Torna o resultado durável e zera o journal
+    }
+
+    //Objetivo da função: confirmar uma transação
+    //Quando retorna, a transação está durável no journal e já foi aplicada na FAT e no diretório
+    public synchronized void confirmar(TransacaoJournal transacao) throws IOException {
+
+        //Sem metadados alterados (ex: só sobrescrita de dados): basta tornar os dados duráveis
+        if (transacao.isVazia()) {
+            disco.sincronizar();
+            return;
+        }
+
+        if (!cabe(transacao)) {
+            throw new IOException("Transação grande demais para o journal");
+        }
+        byte[] corpo = transacao.codificar(tamEntrada);
+        int tamRegistro = TAM_MOLDURA + corpo.length;
+
+        //Os dados dos arquivos (gravados antes) precisam chegar ao disco antes dos metadados que apontam para eles
+        disco.sincronizar();
+
+        //Sem espaço no fim da região: recomeça o journal do início
+        if (posicao + tamRegistro > capacidade) {
+            reiniciar(sequencia);
+        }
+
+        byte[] registro = montarRegistro(corpo, sequencia);
+        escreverNaRegiao(posicao, registro);
+
+        //Ponto de confirmação: depois deste force a transação sobrevive a uma queda
+        disco.sincronizar();
+        posicao += tamRegistro;
+        sequencia++;
+
+        //Aplica as alterações no lugar delas. Não precisa de force: se cair antes de chegar ao disco, a montagem reaplica.
+        //Os blocos revogados por este registro ainda não foram reaproveitados (só voltam a ser livres depois daqui)
+        aplicarCorpo(registro, 16, corpo.length, sequencia - 1, Collections.emptyMap());
+
+        //1. Confere se a transação cabe no journal e codifica
+        //2. Força os dados gravados até aqui (ordem: dados antes dos metadados)
+        //3. Se a região encheu, recomeça o journal do início
+        //4. Grava o registro e força: a partir daqui a transação está confirmada
+        //5. Escreve as entradas da FAT e do diretório nos blocos delas
+    }
+
+    //Se o registro da transação cabe no journal vazio. Uma transação que não cabe nunca vai poder ser confirmada
+    public boolean cabe(TransacaoJournal transacao) {
+        return TAM_CABECALHO + TAM_MOLDURA + (long) transacao.tamanhoCorpo(tamEntrada) <= capacidade;
+    }
+
+    //Objetivo da função: checkpoint. As alterações dos registros já foram aplicadas no lugar delas: depois de forçar,
+    //o journal pode recomeçar vazio e a próxima montagem não reaplica nada (nem registros de blocos já reaproveitados)
+    public synchronized void checkpoint() throws IOException {
+        if (posicao > TAM_CABECALHO) {
+            reiniciar(sequencia);
+        }
+    }
+
+    // ========== MÉTODOS AUXILIARES ========== //
+
+    //Recomeça o journal vazio a partir da sequência dada
+    private void reiniciar(long seq) throws IOException {
+
+        //Tudo que já foi aplicado precisa estar durável antes de perder os registros antigos
+        disco.sincronizar();
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAM_CABECALHO);
+        cabecalho.putInt(MAGICO_JOURNAL);
+        cabecalho.putLong(seq);
+        escreverNaRegiao(0, cabecalho.array());
+
+        //O cabeçalho novo precisa estar no disco antes de qualquer registro com a sequência nova
+        disco.sincronizar();
+
+        sequencia = seq;
+        posicao = TAM_CABECALHO;
+    }
+
+    private byte[] montarRegistro(byte[] corpo, long seq) {
+        ByteBuffer registro = ByteBuffer.allocate(TAM_MOLDURA + corpo.length);
+        registro.putInt(MAGICO_REGISTRO);
+        registro.putLong(seq);
+        registro.putInt(corpo.length);
+        registro.put(corpo);
+
+        CRC32 crc = new CRC32();
+        crc.update(registro.array(), 4, 12 + corpo.length);
+        registro.putInt((int) crc.getValue());
+        return registro.array();
+    }
+
+    //Anota os blocos revogados no fim do corpo de um registro (ver TransacaoJournal.codificar) com a sequência do registro
+    private void lerRevogados(byte[] dados, int off, int tamanho, long seq, Map<Integer, Long> revogados) {
+        ByteBuffer corpo = ByteBuffer.wrap(dados, off, tamanho);
+        int trechos = corpo.getInt();
+        for (int t = 0; t < trechos; t++) {
+            corpo.getInt();
+            int quantidade = corpo.getInt();
+            corpo.position(corpo.position() + quantidade * 4);
+        }
+        int entradas = corpo.getInt();
+        corpo.position(corpo.position() + entradas * (8 + tamEntrada));
+
+        int quantidadeRevogados = corpo.getInt();
+        for (int r = 0; r < quantidadeRevogados; r++) {
+            revogados.put(corpo.getInt(), seq);
+        }
+    }
+
+    //Escreve as alterações de um corpo de registro (ver TransacaoJournal.codificar) nos blocos da FAT e dos diretórios
+    //revogados: bloco -> sequência do último registro que revogou o bloco. Entradas do registro seq num bloco revogado
+    //nele ou depois não são gravadas: o bloco pode ser de outro arquivo agora
+    private void aplicarCorpo(byte[] dados, int off, int tamanho, long seq, Map<Integer, Long> revogados) throws IOException {
+        ByteBuffer corpo = ByteBuffer.wrap(dados, off, tamanho);
+        int entradasPorBloco = tamBloco / 4;
+
+        //Trechos da FAT: os valores já estão codificados como na FAT do disco, então são gravados direto do registro
+        int trechos = corpo.getInt();
+        for (int t = 0; t < trechos; t++) {
+            int inicio = corpo.getInt();
+            int quantidade = corpo.getInt();
+            int posValores = corpo.position();
+
+            //Um trecho pode atravessar dois blocos da FAT: grava um pedaço por bloco
+            int i = 0;
+            while (i < quantidade) {
+                int indice = inicio + i;
+                int nesteBloco = Math.min(quantidade - i, entradasPorBloco - indice % entradasPorBloco);
+                disco.write(blocoFat + indice / entradasPorBloco, (indice % entradasPorBloco) * 4, dados, posValores + i * 4, nesteBloco * 4);
+                i += nesteBloco;
+            }
+            corpo.position(posValores + quantidade * 4);
+        }
+
+        //Entradas de diretório. Entradas seguidas do mesmo bloco (ex: arquivos criados em lote) são juntadas e gravadas com uma escrita só
+        int entradas = corpo.getInt();
+        byte[] trecho = new byte[entradas * tamEntrada];
+        int blocoTrecho = -1;
+        int inicioTrecho = 0;
+        int noTrecho = 0;
+        for (int e = 0; e < entradas; e++) {
+            int bloco = corpo.getInt();
+            int deslocamento = corpo.getInt();
+            Long revogadoEm = revogados.get(bloco);
+            if (revogadoEm != null && revogadoEm >= seq) {
+                corpo.position(corpo.position() + tamEntrada);
+                continue;
+            }
+            if (noTrecho > 0 && (bloco != blocoTrecho || deslocamento != inicioTrecho + noTrecho * tamEntrada)) {
+                disco.write(blocoTrecho, inicioTrecho, trecho, 0, noTrecho * tamEntrada);
+                noTrecho = 0;
+            }
+            if (noTrecho == 0) {
+                blocoTrecho = bloco;
+                inicioTrecho = deslocamento;
+            }
+            corpo.get(trecho, noTrecho * tamEntrada, tamEntrada);
+            noTrecho++;
+        }
+        if (noTrecho > 0) {
+            disco.write(blocoTrecho, inicioTrecho, trecho, 0, noTrecho * tamEntrada);
+        }
+    }
+
+    //Grava data na posição pos da região, dividindo o trecho entre os blocos que ele atravessa
+    private void escreverNaRegiao(int pos, byte[] data) throws IOException {
+        long absoluta = inicioRegiao + pos;
+        int off = 0;
+        while (off < data.length) {
+            int bloco = (int) (absoluta / tamBloco);
+            int noBloco = (int) (absoluta % tamBloco);
+            int tamanho = Math.min(tamBloco - noBloco, data.length - off);
+
+            disco.write(bloco, noBloco, data, off, tamanho);
+            absoluta += tamanho;
+            off += tamanho;
+        }
+    }
+}
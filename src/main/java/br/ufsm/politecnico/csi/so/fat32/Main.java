@@ -3,30 +3,84 @@ package br.ufsm.politecnico.csi.so.fat32;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) {
-        Disco disco = new Disco();
+        Disco disco = criarDisco(args);
         try {
             disco.init();
-            Fat32 fat32 = new Fat32(disco);
+            Fat32 fat32 = criarFat32(disco, args);
+            System.out.println("Disco montado com " + fat32.getLeiturasMontagem() + " leituras de bloco");
 
             //caminho para colocar os arquivos da pasta resources/arquivos no Disco que foi criado
             //new File(System.getProperty("user.dir") é uma propriedade para usar o caminho relativo, sem precisar do "C://User//..."
             String caminhoLocal = new File(System.getProperty("user.dir"), "src/main/resources/arquivos/trabalho.pdf").getPath();
             String caminhoLocal_2 = new File(System.getProperty("user.dir"), "src/main/resources/arquivos/Algoritmos_Prova01.txt").getPath();
 
-            carregarArquivo(fat32, caminhoLocal, "PDFimport");
-            carregarArquivo(fat32, caminhoLocal_2, "TXTimport");
+            //Os dois arquivos entram num lote só: uma alocação, uma atualização do diretório e uma confirmação da FAT
+            Map<String, String> arquivosIniciais = new LinkedHashMap<>();
+            arquivosIniciais.put(caminhoLocal, "PDFimport");
+            arquivosIniciais.put(caminhoLocal_2, "TXTimport");
+            carregarArquivos(fat32, arquivosIniciais);
 
             menu(fat32);
+
+            if (disco instanceof DiscoCache cache) {
+                System.out.println("Cache: " + cache.getAcertos() + " acertos, " + cache.getFaltas() + " faltas, "
+                        + cache.getDespejos() + " despejos, " + cache.getEscritasDiretas() + " escritas direto no disco");
+            }
+            System.out.println("Journal: " + fat32.getOperacoesConfirmadas() + " operações em "
+                    + fat32.getConfirmacoesJournal() + " confirmações");
         } catch (IOException e) {
             System.err.println("Erro ao inicializar: " + e.getMessage());
         }
     }
 
+    //"--mmap" usa o disco mapeado em memória; sem esse argumento usa o RandomAccessFile (FileChannel)
+    //"--cache=N" coloca um cache de N blocos na frente do disco escolhido
+    //"--bloco=BYTES" e "--blocos=N" escolhem a geometria de um disco novo (ex: --bloco=4096 --blocos=1048576 para 4 GB).
+    //Um disco que já existe é sempre aberto com a geometria gravada no superbloco dele
+    private static Disco criarDisco(String[] args) {
+        boolean mapeado = false;
+        int blocosCache = 0;
+        int tamBloco = Disco.TAM_BLOCO;
+        int numBlocos = Disco.NUM_BLOCO;
+
+        for (String arg : args) {
+            if (arg.equals("--mmap")) {
+                mapeado = true;
+            } else if (arg.startsWith("--cache=")) {
+                blocosCache = Integer.parseInt(arg.substring("--cache=".length()));
+            } else if (arg.startsWith("--bloco=")) {
+                tamBloco = Integer.parseInt(arg.substring("--bloco=".length()));
+            } else if (arg.startsWith("--blocos=")) {
+                numBlocos = Integer.parseInt(arg.substring("--blocos=".length()));
+            }
+        }
+        Disco disco = mapeado ? new DiscoMapeado(tamBloco, numBlocos) : new Disco(tamBloco, numBlocos);
+        return blocosCache > 0 ? new DiscoCache(disco, blocosCache) : disco;
+    }
+
+    //"--grupo=M" faz a primeira operação de cada group commit esperar até M microssegundos por outras operações
+    //"--grupo-limite=N" confirma o grupo assim que N operações estiverem esperando, sem esperar o resto da janela
+    private static Fat32 criarFat32(Disco disco, String[] args) throws IOException {
+        long janelaGrupo = 0;
+        int limiteGrupo = Integer.MAX_VALUE; //sem limite: só a janela decide quando confirmar
+
+        for (String arg : args) {
+            if (arg.startsWith("--grupo=")) {
+                janelaGrupo = Long.parseLong(arg.substring("--grupo=".length()));
+            } else if (arg.startsWith("--grupo-limite=")) {
+                limiteGrupo = Integer.parseInt(arg.substring("--grupo-limite=".length()));
+            }
+        }
+        return new Fat32(disco, janelaGrupo, limiteGrupo);
+    }
+
     public static void menu(Fat32 fat32) throws IOException {
         Scanner sc = new Scanner(System.in);
         int opcao;
@@ -40,7 +94,9 @@ public class Main {
             System.out.println("5. Excluir arquivo");
             System.out.println("6. Mostrar uso da memória");
             System.out.println("7. Exportar arquivo");
-            System.out.println("8. Sair");
+            System.out.println("8. Criar diretório");
+            System.out.println("9. Alterar tamanho do arquivo");
+            System.out.println("10. Sair");
             System.out.print("Opção: ");
 
             opcao = sc.nextInt();
@@ -69,26 +125,34 @@ public class Main {
                     exportarArquivo(fat32, sc);
                     break;
                 case 8:
+                    criarDiretorio(fat32, sc);
+                    break;
+                case 9:
+                    alterarTamanho(fat32, sc);
+                    break;
+                case 10:
+                    //Desmontagem: o journal fica vazio e a próxima montagem não precisa reaplicar nada
+                    fat32.checkpoint();
                     System.out.println("Encerrando sistema...");
                     break;
                 default:
                     System.out.println("Opção inválida!");
                     break;
             }
-        } while (opcao != 8);
+        } while (opcao != 10);
 
         sc.close();
     }
 
     private static void criarArquivo(Fat32 fat32, Scanner sc) throws IOException {
         System.out.println("\n--- Criar Arquivo ---");
-        System.out.print("Nome do arquivo (max 8 caracteres): ");
-        String nome = sc.nextLine();
+        System.out.print("Diretório (vazio para a raiz, ex: /CLIENTE1): ");
+        String diretorio = sc.nextLine().trim();
 
-        System.out.print("Extensão (max 3 caracteres): ");
-        String ext = sc.nextLine();
+        System.out.print("Nome do arquivo (ex: Relatório 2024.pdf): ");
+        String nome = sc.nextLine();
 
-        String nomeCompleto = nome.trim() + "." + ext.trim();
+        String nomeCompleto = diretorio + "/" + nome.trim();
         System.out.print("Conteúdo: ");
         String conteudo = sc.nextLine();
 
@@ -97,49 +161,95 @@ public class Main {
         System.out.println("Arquivo criado com sucesso!");
     }
 
+    private static void criarDiretorio(Fat32 fat32, Scanner sc) throws IOException {
+        System.out.println("\n--- Criar Diretório ---");
+        System.out.print("Caminho do diretório (ex: /CLIENTE1 ou /CLIENTE1/NOTAS): ");
+        String caminho = sc.nextLine();
+
+        fat32.createDirectory(caminho);
+        System.out.println("Diretório criado com sucesso!");
+    }
+
     private static void listarArquivos(Fat32 fat32) throws IOException {
         System.out.println("\n--- Arquivos Disponíveis ---");
-        List<String> arquivos = fat32.listarArquivos();
 
-        if (arquivos.isEmpty()) {
+        //Contar não monta lista nenhuma: é o tamanho do índice da raiz
+        if (fat32.contarArquivos("/") == 0) {
             System.out.println("Nenhum arquivo encontrado.");
             return;
         }
+        imprimirCaminhos(fat32, "/", 1);
+    }
 
-        for (int i = 0; i < arquivos.size(); i++) {
-            System.out.println((i + 1) + ". " + arquivos.get(i));
+    //Imprime, numeradas, as entradas do diretório e dos subdiretórios dele (cada subdiretório logo depois da entrada dele).
+    //O iterador traz uma página de entradas por vez, então um diretório grande nunca fica inteiro na memória. Retorna o próximo número
+    private static int imprimirCaminhos(Fat32 fat32, String diretorio, int numero) throws IOException {
+        Iterator<InfoArquivo> arquivos = fat32.iterarArquivos(diretorio);
+        while (arquivos.hasNext()) {
+            InfoArquivo arquivo = arquivos.next();
+            String caminho = diretorio + arquivo;
+            if (arquivo.isDiretorio()) {
+                System.out.println(numero++ + ". " + caminho);
+                numero = imprimirCaminhos(fat32, caminho, numero);
+            } else {
+                System.out.println(numero++ + ". " + caminho + " (" + arquivo.getTamanho() + " bytes)");
+            }
         }
+        return numero;
     }
 
-    private static int selecionarArquivo(Fat32 fat32, Scanner sc, String acao) throws IOException {
-        List<String> arquivos = fat32.listarArquivos();
+    //Caminho da entrada com o número mostrado na listagem, percorrendo na mesma ordem e parando nela (null se o número passou do fim).
+    //restantes[0]: quantas entradas ainda faltam até a procurada
+    private static String buscarCaminho(Fat32 fat32, String diretorio, int[] restantes) throws IOException {
+        Iterator<InfoArquivo> arquivos = fat32.iterarArquivos(diretorio);
+        while (arquivos.hasNext()) {
+            InfoArquivo arquivo = arquivos.next();
+            String caminho = diretorio + arquivo;
+            if (--restantes[0] == 0) {
+                return caminho;
+            }
+            if (arquivo.isDiretorio()) {
+                String achado = buscarCaminho(fat32, caminho, restantes);
+                if (achado != null) {
+                    return achado;
+                }
+            }
+        }
+        return null;
+    }
 
-        if (arquivos.isEmpty()) {
+    //Retorna o caminho escolhido pelo número da listagem, ou null se a escolha não vale.
+    //diretorios = false recusa a escolha de um diretório (ler, adicionar e exportar só valem para arquivos)
+    private static String selecionarArquivo(Fat32 fat32, Scanner sc, String acao, boolean diretorios) throws IOException {
+        if (fat32.contarArquivos("/") == 0) {
             System.out.println("Nenhum arquivo para " + acao + ".");
-            return -1;
+            return null;
         }
 
         System.out.print("\nDigite o número do arquivo para " + acao + ": ");
         int numero = sc.nextInt();
         sc.nextLine();
 
-        if (numero < 1 || numero > arquivos.size()) {
+        String caminho = numero < 1 ? null : buscarCaminho(fat32, "/", new int[]{numero});
+        if (caminho == null) {
             System.out.println("Número inválido!");
-            return -1;
+            return null;
+        }
+        if (!diretorios && caminho.endsWith("/")) {
+            System.out.println("Escolha um arquivo, não um diretório.");
+            return null;
         }
 
-        return numero - 1;
+        return caminho;
     }
 
     private static void lerArquivo(Fat32 fat32, Scanner sc) throws IOException {
         System.out.println("\n--- Ler Arquivo ---");
 
-        //Retorna o indice e coloca numa variável
-        int indice = selecionarArquivo(fat32, sc, "leitura");
-
-        if (indice >= 0) {
-            String nomeArquivo = fat32.listarArquivos().get(indice);
+        //Retorna o caminho escolhido pelo número e coloca numa variável
+        String nomeArquivo = selecionarArquivo(fat32, sc, "leitura", false);
 
+        if (nomeArquivo != null) {
             //cria um array do tipo byte com o conteúdo do arquivo
             byte[] conteudo = fat32.read(nomeArquivo, 0, -1);
             System.out.println("\nConteúdo:\n" + new String(conteudo));
@@ -149,11 +259,10 @@ public class Main {
     private static void adicionarConteudo(Fat32 fat32, Scanner sc) throws IOException {
         System.out.println("\n--- Adicionar Conteúdo ---");
 
-        //Retorna o indice e coloca numa variável
-        int indice = selecionarArquivo(fat32, sc, "adição");
+        //Retorna o caminho escolhido pelo número e coloca numa variável
+        String nomeArquivo = selecionarArquivo(fat32, sc, "adição", false);
 
-        if (indice >= 0) {
-            String nomeArquivo = fat32.listarArquivos().get(indice);
+        if (nomeArquivo != null) {
             System.out.print("Digite o conteúdo a adicionar: ");
             String conteudo = sc.nextLine();
 
@@ -163,15 +272,29 @@ public class Main {
         }
     }
 
+    private static void alterarTamanho(Fat32 fat32, Scanner sc) throws IOException {
+        System.out.println("\n--- Alterar Tamanho ---");
+
+        String nomeArquivo = selecionarArquivo(fat32, sc, "alteração", false);
+
+        if (nomeArquivo != null) {
+            System.out.print("Novo tamanho em bytes: ");
+            long tamanho = sc.nextLong();
+            sc.nextLine();
+
+            //Aumentar não grava dados: só o tamanho (e o fim da cadeia na FAT) vão para o journal; o espaço novo é lido como zeros até ser escrito
+            fat32.setLength(nomeArquivo, tamanho);
+            System.out.println("Tamanho alterado com sucesso!");
+        }
+    }
+
     private static void excluirArquivo(Fat32 fat32, Scanner sc) throws IOException {
         System.out.println("\n--- Excluir Arquivo ---");
 
-        //Retorna o indice e coloca numa variável
-        int indice = selecionarArquivo(fat32, sc, "exclusão");
+        //Retorna o caminho escolhido pelo número e coloca numa variável
+        String nomeArquivo = selecionarArquivo(fat32, sc, "exclusão", true);
 
-        if (indice >= 0) {
-            //Pega o arquivo com base no indíce
-            String nomeArquivo = fat32.listarArquivos().get(indice);
+        if (nomeArquivo != null) {
             System.out.print("Confirmar exclusão de " + nomeArquivo + "? (S/N): ");
             String confirmacao = sc.nextLine();
 
@@ -184,66 +307,78 @@ public class Main {
         }
     }
 
-    private static void carregarArquivo(Fat32 fat32, String caminhoLocal, String nomeFAT32) throws IOException {
-        System.out.println("\n--- Carregar Arquivo para FAT32 ---");
+    //Recebe caminho local -> nome no FAT32. Arquivos pequenos vão juntos num único createAll;
+    //os maiores que um bloco são importados direto do arquivo para os blocos do disco, sem ficar na memória
+    private static void carregarArquivos(Fat32 fat32, Map<String, String> arquivos) {
+        System.out.println("\n--- Carregar Arquivos para FAT32 ---");
 
-        //Cria um objeto File com o caminho relativo que foi passado na main
-        File arquivoLocal = new File(caminhoLocal);
+        Map<String, byte[]> lote = new LinkedHashMap<>();
+        for (Map.Entry<String, String> arquivo : arquivos.entrySet()) {
+            //Cria um objeto File com o caminho relativo que foi passado na main
+            File arquivoLocal = new File(arquivo.getKey());
 
-        if (!arquivoLocal.exists()) {
-            System.out.println("Arquivo não encontrado.");
+            if (!arquivoLocal.exists()) {
+                System.out.println("Arquivo não encontrado: " + arquivo.getKey());
+                continue;
+            }
+
+            try {
+                if (arquivoLocal.length() > fat32.getTamBloco()) {
+                    //O kernel copia o arquivo direto para os blocos (transferFrom)
+                    fat32.importarArquivo(arquivoLocal.toPath(), arquivo.getValue());
+                    System.out.println(arquivo.getValue() + " carregado para o sistema FAT32 com sucesso!");
+                } else {
+                    //Le o arquivo e guarda o conteudo no lote
+                    lote.put(arquivo.getValue(), Files.readAllBytes(arquivoLocal.toPath()));
+                }
+            } catch (IOException e) {
+                System.out.println("Caminho inválido ou nome do arquivo já existente: " + arquivo.getKey());
+            }
+        }
+        if (lote.isEmpty()) {
             return;
         }
 
         try {
-            //Le o arquivo
-            // Cria um array com o  conteudo do arquivo
-            byte[] conteudo = Files.readAllBytes(arquivoLocal.toPath());
-
-            //Passa esse array para a função creat
-            fat32.create(nomeFAT32, conteudo);
-            System.out.println("Arquivo carregado para o sistema FAT32 com sucesso!");
+            //Passa o lote inteiro para a função createAll
+            fat32.createAll(lote);
+            System.out.println(lote.size() + " arquivo(s) carregado(s) para o sistema FAT32 com sucesso!");
         } catch (IOException e) {
-            System.out.println("Caminho inválido ou nome do arquivo já existente");
+            System.out.println("Não foi possível carregar os arquivos: " + e.getMessage());
         }
     }
 
     private static void mostrarUsoMemoria(Fat32 fat32) throws IOException {
-        int totalBlocos = Disco.NUM_BLOCO - 2;
+        int totalBlocos = fat32.getBlocosDados();
         int blocosOcupados = fat32.contarBlocosOcupados();
         int blocosLivres = totalBlocos - blocosOcupados;
 
-        int totalKB = totalBlocos * (Disco.TAM_BLOCO / 1024);
-        int usadoKB = blocosOcupados * (Disco.TAM_BLOCO / 1024);
-        int livreKB = blocosLivres * (Disco.TAM_BLOCO / 1024);
+        //long: num disco de vários GB os totais em KB passam do int
+        long totalKB = (long) totalBlocos * (fat32.getTamBloco() / 1024);
+        long usadoKB = (long) blocosOcupados * (fat32.getTamBloco() / 1024);
+        long livreKB = (long) blocosLivres * (fat32.getTamBloco() / 1024);
 
         System.out.println("\n=== Uso de Memória ===");
         System.out.println("Memória Total:     " + totalKB + " KB");
         System.out.println("Memória Ocupada:   " + usadoKB + " KB");
         System.out.println("Memória Disponível:" + livreKB + " KB");
+        System.out.printf("Fragmentação:      %.2f trechos por arquivo%n", fat32.mediaExtentesPorArquivo());
     }
 
     private static void exportarArquivo(Fat32 fat32, Scanner sc) throws IOException {
         System.out.println("\n--- Exportar Arquivo ---");
 
-        int indice = selecionarArquivo(fat32, sc, "exportação");
-
-        if (indice >= 0) {
-            //Retorna o indice e coloca numa variável
-            String nomeArquivo = fat32.listarArquivos().get(indice);
-
-            //Le o arquivo
-            // Cria um array com o  conteudo do arquivo
-            byte[] conteudo = fat32.read(nomeArquivo, 0, -1);
-
+        //Retorna o caminho escolhido pelo número e coloca numa variável
+        String nomeArquivo = selecionarArquivo(fat32, sc, "exportação", false);
 
+        if (nomeArquivo != null) {
             //Caminho para exportação usando o caminho relativo
             String caminhoDestino = new File(System.getProperty("user.dir"), "src/main/resources/arquivos/pdfExport.pdf").getPath();
             File destino = new File(caminhoDestino);
 
+            //Copia os blocos do arquivo direto para o arquivo de destino no PC (transferTo), sem passar pela memória da JVM
             try {
-                //Escreve o conteúdo lido do FAT32 no arquivo de destino no PC
-                Files.write(destino.toPath(), conteudo);
+                fat32.exportarArquivo(nomeArquivo, destino.toPath());
                 System.out.println("Arquivo exportado com sucesso para: " + caminhoDestino);
             } catch (IOException e) {
                 System.err.println("Erro ao exportar arquivo: " + e.getMessage());
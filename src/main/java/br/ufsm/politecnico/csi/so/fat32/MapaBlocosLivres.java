@@ -0,0 +1,166 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//Mapa de bits dos blocos livres do disco. Cada bit representa um bloco: 1 = livre, 0 = ocupado.
+//Mantém um contador de blocos livres (freeSpace em tempo constante) e um índice das faixas contínuas
+//de blocos livres (extents), usado para alocar cada arquivo no menor trecho contínuo em que ele cabe (best-fit)
+public class MapaBlocosLivres {
+
+    private final long[] bits; //64 blocos por long
+    private final int numBlocos;
+    private int livres; //quantidade de bits ligados
+
+    private final TreeMap<Integer, Integer> extentes; //bloco inicial -> tamanho de cada faixa contínua livre
+    private final TreeSet<Long> extentesPorTamanho; //(tamanho << 32 | bloco inicial), ordenado pelo tamanho da faixa
+
+    public MapaBlocosLivres(int numBlocos) {
+        this.numBlocos = numBlocos;
+        this.bits = new long[(numBlocos + 63) / 64];
+        this.extentes = new TreeMap<>();
+        this.extentesPorTamanho = new TreeSet<>();
+    }
+
+    //Objetivo da função: remontar o mapa a partir da FAT (na montagem ou na formatação)
+    public void reconstruir(int[] fat) {
+        Arrays.fill(bits, 0L);
+        livres = 0;
+        extentes.clear();
+        extentesPorTamanho.clear();
+
+        //O bloco 0 nunca é livre (diretório). Um bloco é livre quando a entrada dele na FAT é 0
+        int inicioFaixa = -1;
+        for (int i = 1; i < numBlocos; i++) {
+            if (fat[i] == 0) {
+                bits[i >>> 6] |= 1L << i;
+                livres++;
+                if (inicioFaixa < 0) inicioFaixa = i;
+            } else if (inicioFaixa >= 0) {
+                adicionarExtente(inicioFaixa, i - inicioFaixa);
+                inicioFaixa = -1;
+            }
+        }
+        if (inicioFaixa >= 0) {
+            adicionarExtente(inicioFaixa, numBlocos - inicioFaixa);
+        }
+
+        //1. Limpa o mapa de bits e o índice de faixas
+        //2. Liga o bit de cada bloco livre da FAT
+        //3. Cada sequência de blocos livres vizinhos vira uma faixa no índice
+    }
+
+    public int getLivres() {
+        return livres;
+    }
+
+    public boolean isLivre(int bloco) {
+        return (bits[bloco >>> 6] & (1L << bloco)) != 0;
+    }
+
+    public void marcarLivre(int bloco) {
+        if (isLivre(bloco)) return;
+
+        bits[bloco >>> 6] |= 1L << bloco;
+        livres++;
+
+        //Junta o bloco com as faixas livres vizinhas (a que termina nele e a que começa logo depois)
+        int inicio = bloco;
+        int tamanho = 1;
+
+        Map.Entry<Integer, Integer> anterior = extentes.floorEntry(bloco - 1);
+        if (anterior != null && anterior.getKey() + anterior.getValue() == bloco) {
+            removerExtente(anterior.getKey(), anterior.getValue());
+            inicio = anterior.getKey();
+            tamanho += anterior.getValue();
+        }
+
+        Integer posterior = extentes.get(bloco + 1);
+        if (posterior != null) {
+            removerExtente(bloco + 1, posterior);
+            tamanho += posterior;
+        }
+
+        adicionarExtente(inicio, tamanho);
+    }
+
+    //Objetivo da função: alocar a quantidade de blocos pedida, preferindo trechos contínuos
+    //preferido: bloco onde seria bom começar (ex: logo depois do último bloco do arquivo no append), ou -1
+    //Quem chama precisa conferir antes se getLivres() é suficiente
+    public int[] alocar(int quantidade, int preferido) {
+        if (quantidade > livres) {
+            throw new IllegalStateException("Blocos livres insuficientes");
+        }
+
+        int[] blocos = new int[quantidade];
+        int alocados = 0;
+
+        //Se o bloco preferido começa uma faixa livre, continua o arquivo sem quebrar a sequência
+        if (preferido >= 0 && preferido < numBlocos) {
+            Integer tamanho = extentes.get(preferido);
+            if (tamanho != null) {
+                alocados = retirarDaFaixa(preferido, tamanho, preferido, Math.min(tamanho, quantidade), blocos, alocados);
+            }
+        }
+
+        while (alocados < quantidade) {
+            int restante = quantidade - alocados;
+
+            //Best-fit: a menor faixa em que o restante cabe inteiro
+            Long chave = extentesPorTamanho.ceiling((long) restante << 32);
+            if (chave == null) {
+                //Nenhuma faixa comporta o restante: usa a maior faixa inteira e continua
+                chave = extentesPorTamanho.last();
+            }
+
+            int inicio = (int) (long) chave;
+            int tamanho = (int) (chave >>> 32);
+            alocados = retirarDaFaixa(inicio, tamanho, inicio, Math.min(tamanho, restante), blocos, alocados);
+        }
+        return blocos;
+
+        //1. Confere se existem blocos livres suficientes
+        //2. Se o bloco preferido está livre, usa a faixa que começa nele
+        //3. Para o que falta, procura a menor faixa livre onde tudo cabe (best-fit)
+        //4. Se nenhuma faixa é grande o suficiente, usa a maior faixa e repete com o que sobrou
+        //5. Os blocos retornados ficam em ordem crescente dentro de cada faixa, para o arquivo ficar contínuo no disco
+    }
+
+    //Tira blocos [de, de + quantidade) da faixa livre (inicio, tamanho), devolvendo ao índice as sobras dos dois lados
+    private void retirarDaFaixa(int inicio, int tamanho, int de, int quantidade) {
+        removerExtente(inicio, tamanho);
+        if (de > inicio) {
+            adicionarExtente(inicio, de - inicio);
+        }
+        int fimFaixa = inicio + tamanho;
+        if (de + quantidade < fimFaixa) {
+            adicionarExtente(de + quantidade, fimFaixa - (de + quantidade));
+        }
+
+        for (int b = de; b < de + quantidade; b++) {
+            bits[b >>> 6] &= ~(1L << b);
+        }
+        livres -= quantidade;
+    }
+
+    //Mesmo que o anterior, guardando os blocos retirados em destino. Retorna a nova quantidade de blocos em destino
+    private int retirarDaFaixa(int inicio, int tamanho, int de, int quantidade, int[] destino, int posicao) {
+        retirarDaFaixa(inicio, tamanho, de, quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            destino[posicao++] = de + i;
+        }
+        return posicao;
+    }
+
+    private void adicionarExtente(int inicio, int tamanho) {
+        extentes.put(inicio, tamanho);
+        extentesPorTamanho.add(((long) tamanho << 32) | inicio);
+    }
+
+    private void removerExtente(int inicio, int tamanho) {
+        extentes.remove(inicio);
+        extentesPorTamanho.remove(((long) tamanho << 32) | inicio);
+    }
+}
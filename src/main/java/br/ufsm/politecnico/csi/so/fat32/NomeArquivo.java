@@ -0,0 +1,112 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+//Nome de um arquivo ou diretório como o usuário escreveu ("Relatório 2024a.pdf"), em UTF-8 e com maiúsculas e minúsculas preservadas.
+//A comparação ignora maiúsculas/minúsculas: "a.txt" e "A.TXT" são o mesmo arquivo, como eram no formato 8.3.
+//
+//Um nome que já é um 8.3 válido em maiúsculas ("A.TXT") continua gravado como a entrada curta de sempre (NomeCurto),
+//que os discos antigos já tinham. Os outros vão para o disco como nome longo, em mais de um slot do diretório.
+//O hash do nome (gravado na entrada do nome longo) é o hashCode usado no índice do diretório
+public final class NomeArquivo {
+
+    public static final int TAMANHO_MAXIMO = 255; //bytes em UTF-8
+
+    private final String texto; //como foi escrito
+    private final String chave; //texto em maiúsculas: é o que as comparações usam
+    private final int hash; //FNV-1a dos bytes UTF-8 da chave. Não depende da JVM, por isso pode ir para o disco
+    private final byte[] utf8; //texto em UTF-8, como fica nos slots do nome longo
+    private final NomeCurto curto; //o nome no formato 8.3, se ele cabe na entrada curta sem perder nada (null = nome longo)
+
+    private NomeArquivo(String texto, byte[] utf8, int hash, NomeCurto curto) {
+        this.texto = texto;
+        this.chave = texto.toUpperCase(Locale.ROOT);
+        this.utf8 = utf8;
+        this.hash = hash;
+        this.curto = curto;
+    }
+
+    //Objetivo da função: validar um nome recebido num caminho e decidir se ele vai para o disco como nome curto ou longo
+    public static NomeArquivo de(String nome) throws IOException {
+        String texto = nome.trim();
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        if (texto.isEmpty() || texto.equals(".") || texto.equals("..") || utf8.length > TAMANHO_MAXIMO) {
+            throw new IOException("Nome de arquivo inválido: " + nome);
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) < 0x20) {
+                throw new IOException("Nome de arquivo inválido: " + nome);
+            }
+        }
+
+        //Só vira entrada curta o nome que o NomeCurto guarda exatamente igual (maiúsculas, A-Z e 0-9, 8.3).
+        //Começando com ponto o primeiro byte da entrada seria 0, que no disco quer dizer slot livre
+        NomeCurto curto = NomeCurto.de(texto);
+        if (!texto.startsWith(".") && curto.toString().equals(texto)) {
+            return new NomeArquivo(texto, utf8, calcularHash(texto), curto);
+        }
+        return new NomeArquivo(texto, utf8, calcularHash(texto.toUpperCase(Locale.ROOT)), null);
+
+        //1. Tira os espaços das pontas e confere o tamanho em UTF-8 e os caracteres
+        //2. Se o NomeCurto representa o nome sem mudar nada, ele fica na entrada curta
+        //3. Senão é um nome longo, com o texto original preservado
+    }
+
+    //Nome lido de uma entrada curta do diretório
+    public static NomeArquivo curto(NomeCurto curto) {
+        String texto = curto.toString();
+        return new NomeArquivo(texto, texto.getBytes(StandardCharsets.US_ASCII), calcularHash(texto), curto);
+    }
+
+    //Nome lido dos slots de um nome longo. O hash vem da entrada: não precisa ser calculado de novo na montagem
+    public static NomeArquivo longo(byte[] utf8, int hash) {
+        return new NomeArquivo(new String(utf8, StandardCharsets.UTF_8), utf8, hash, null);
+    }
+
+    //FNV-1a de 32 bits sobre os bytes UTF-8 da chave
+    private static int calcularHash(String chave) {
+        int hash = 0x811C9DC5;
+        for (byte b : chave.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    public boolean isCurto() {
+        return curto != null;
+    }
+
+    public NomeCurto getCurto() {
+        return curto;
+    }
+
+    public byte[] getUtf8() {
+        return utf8;
+    }
+
+    public int getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NomeArquivo)) return false;
+        NomeArquivo outro = (NomeArquivo) o;
+        //O hash descarta quase todos os nomes diferentes sem comparar os textos
+        return hash == outro.hash && chave.equals(outro.chave);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return texto;
+    }
+}
@@ -0,0 +1,112 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//Nome 8.3 já codificado como fica na entrada do diretório: 11 bytes ASCII (8 do nome + 3 da extensão), completados com zeros.
+//Guarda os 11 bytes em duas palavras: um long com os 8 do nome e um int com os 3 da extensão nos bytes mais altos.
+//Comparar dois nomes (no índice do diretório ou com uma entrada lida do disco) vira comparar duas palavras,
+//sem decodificar Strings, sem trim() e sem concatenar nome e extensão
+public final class NomeCurto {
+
+    public static final int TAMANHO = 11;
+
+    private static final int MASCARA_EXTENSAO = 0xFFFFFF00; //o byte mais baixo do int lido no offset 8 já é do campo seguinte
+
+    private final long nome; //bytes 0 a 7, big-endian
+    private final int extensao; //bytes 8 a 10 nos três bytes mais altos; o mais baixo é sempre 0
+
+    private NomeCurto(long nome, int extensao) {
+        this.nome = nome;
+        this.extensao = extensao;
+    }
+
+    //Objetivo da função: formatar um nome qualquer no padrão 8.3 e codificar direto nas duas palavras
+    public static NomeCurto de(String nomeArquivo) {
+        String nomeMaiusculo = nomeArquivo.trim().toUpperCase();
+
+        //O nome vai até o primeiro ponto e a extensão até o ponto seguinte (o resto é ignorado)
+        int ponto = nomeMaiusculo.indexOf('.');
+        int fimNome = ponto < 0 ? nomeMaiusculo.length() : ponto;
+        int outroPonto = ponto < 0 ? -1 : nomeMaiusculo.indexOf('.', ponto + 1);
+        int fimExtensao = outroPonto < 0 ? nomeMaiusculo.length() : outroPonto;
+
+        long nome = 0;
+        int usados = 0;
+        for (int i = 0; i < fimNome && usados < 8; i++) {
+            char c = nomeMaiusculo.charAt(i);
+            if (isPermitido(c)) {
+                nome |= (long) c << (56 - 8 * usados);
+                usados++;
+            }
+        }
+
+        int extensao = 0;
+        usados = 0;
+        for (int i = fimNome + 1; i < fimExtensao && usados < 3; i++) {
+            char c = nomeMaiusculo.charAt(i);
+            if (isPermitido(c)) {
+                extensao |= c << (24 - 8 * usados);
+                usados++;
+            }
+        }
+        return new NomeCurto(nome, extensao);
+
+        //1. Padroniza o nome (sem espaços nas pontas e em maiúsculas)
+        //2. Separa nome e extensão pelo ponto
+        //3. Copia só os caracteres A-Z e 0-9, até 8 no nome e 3 na extensão, como bytes ASCII nas posições da entrada
+        //4. O que não foi preenchido fica 0, igual ao preenchimento da entrada no disco
+    }
+
+    //Objetivo da função: ler o nome codificado de uma entrada do diretório, sem decodificar para String
+    public static NomeCurto ler(ByteBuffer bloco, int offset) {
+        //Leituras absolutas de palavra inteira: uma leitura de long e uma de int, sem copiar os 11 bytes para um array
+        return new NomeCurto(bloco.getLong(offset), bloco.getInt(offset + 8) & MASCARA_EXTENSAO);
+    }
+
+    //Objetivo da função: gravar os 11 bytes do nome na entrada que começa no offset
+    public void gravar(ByteBuffer destino, int offset) {
+        destino.putLong(offset, nome);
+        destino.put(offset + 8, (byte) (extensao >>> 24));
+        destino.put(offset + 9, (byte) (extensao >>> 16));
+        destino.put(offset + 10, (byte) (extensao >>> 8));
+    }
+
+    //Só A-Z e 0-9 vão para o disco, então o nome é sempre ASCII puro
+    private static boolean isPermitido(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NomeCurto)) return false;
+        NomeCurto outro = (NomeCurto) o;
+        return nome == outro.nome && extensao == outro.extensao;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(nome) * 31 + extensao;
+    }
+
+    //"NOME.EXT" (ou só "NOME" sem extensão). Só usado para mostrar o nome: as comparações usam as palavras
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[TAMANHO + 1];
+        int tamanho = 0;
+        for (int i = 0; i < 8; i++) {
+            byte b = (byte) (nome >>> (56 - 8 * i));
+            if (b != 0) bytes[tamanho++] = b;
+        }
+        if (extensao != 0) {
+            bytes[tamanho++] = '.';
+            for (int i = 0; i < 3; i++) {
+                byte b = (byte) (extensao >>> (24 - 8 * i));
+                if (b != 0) bytes[tamanho++] = b;
+            }
+        }
+        //Charset fixo: o nome sai igual em qualquer máquina, independente da codificação padrão da plataforma
+        return new String(bytes, 0, tamanho, StandardCharsets.US_ASCII);
+    }
+}
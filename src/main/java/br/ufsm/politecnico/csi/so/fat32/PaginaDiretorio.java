@@ -0,0 +1,32 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.util.List;
+
+//Uma página da listagem de um diretório e o cursor para pedir a próxima.
+//O cursor é a posição (slot) no diretório, não um índice na lista: arquivos criados ou removidos entre uma página
+//e outra não fazem a próxima página repetir nem pular os arquivos que continuam no diretório
+public final class PaginaDiretorio {
+
+    public static final int FIM = -1; //cursor depois da última página
+
+    private final List<InfoArquivo> arquivos;
+    private final int proximoCursor;
+
+    public PaginaDiretorio(List<InfoArquivo> arquivos, int proximoCursor) {
+        this.arquivos = arquivos;
+        this.proximoCursor = proximoCursor;
+    }
+
+    public List<InfoArquivo> getArquivos() {
+        return arquivos;
+    }
+
+    //Cursor para pedir a próxima página, ou FIM
+    public int getProximoCursor() {
+        return proximoCursor;
+    }
+
+    public boolean isUltima() {
+        return proximoCursor == FIM;
+    }
+}
@@ -0,0 +1,50 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+//Pool de buffers do tamanho de um bloco, reaproveitados entre as operações.
+//Em vez de criar um array de 64 KB a cada leitura ou escrita de bloco, a operação pega um buffer emprestado e devolve no fim.
+//Os buffers podem ser diretos (fora do heap): o FileChannel lê e escreve neles sem copiar para um buffer temporário.
+//Pode ser usado por várias threads ao mesmo tempo
+public class PoolBuffers {
+
+    private final int tamanho; //tamanho de cada buffer
+    private final int maximo; //quantos buffers livres ficam guardados. Os devolvidos além disso ficam para o GC
+    private final boolean diretos;
+    private final ArrayDeque<ByteBuffer> livres;
+
+    public PoolBuffers(int tamanho, int maximo, boolean diretos) {
+        if (tamanho <= 0 || maximo < 0) {
+            throw new IllegalArgumentException("Configuração do pool de buffers inválida");
+        }
+        this.tamanho = tamanho;
+        this.maximo = maximo;
+        this.diretos = diretos;
+        this.livres = new ArrayDeque<>();
+    }
+
+    //Objetivo da função: pegar um buffer com posição 0 e limite no tamanho inteiro
+    //O conteúdo é o que sobrou do último uso: quem precisa de zeros preenche
+    public ByteBuffer emprestar() {
+        synchronized (this) {
+            //O último devolvido sai primeiro: é o que tem mais chance de ainda estar no cache do processador
+            ByteBuffer buffer = livres.pollFirst();
+            if (buffer != null) {
+                return buffer.clear();
+            }
+        }
+        //Pool vazio (mais operações ao mesmo tempo do que buffers guardados): cria um novo fora do lock
+        return diretos ? ByteBuffer.allocateDirect(tamanho) : ByteBuffer.allocate(tamanho);
+    }
+
+    //Objetivo da função: devolver um buffer emprestado. Depois de devolver, quem chamou não pode mais usar o buffer
+    public synchronized void devolver(ByteBuffer buffer) {
+        if (buffer.capacity() != tamanho) {
+            throw new IllegalArgumentException("Buffer não pertence ao pool");
+        }
+        if (livres.size() < maximo) {
+            livres.addFirst(buffer);
+        }
+    }
+}
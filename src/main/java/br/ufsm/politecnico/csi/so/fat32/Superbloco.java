@@ -0,0 +1,213 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+//Superbloco: fica no começo do bloco 0 e diz a geometria do disco (tamanho e quantidade de blocos)
+//e onde está cada região (journal, diretório, FAT e o primeiro bloco de dados). É escolhido na formatação.
+//
+//Layout de um disco formatado com superbloco:
+//[bloco 0: superbloco] [journal] [diretório] [FAT] [dados...]
+//
+//Discos formatados antes do superbloco continuam sendo montados com o layout antigo (legado):
+//64 KB por bloco, 1024 blocos, diretório no bloco 0, FAT no começo do bloco 1 e journal na segunda metade do bloco 1
+public class Superbloco {
+
+    private static final long MAGICO = 0x2546415433325342L; // "%FAT32SB". O '%' nunca aparece num nome de arquivo do diretório antigo
+    private static final int VERSAO = 1;
+    public static final int TAMANHO = 56; //bytes gravados no começo do bloco 0
+
+    private static final int TAM_BLOCO_MINIMO = 512;
+    private static final int TAM_BLOCO_MAXIMO = 1024 * 1024;
+    private static final int JOURNAL_MINIMO = 32 * 1024; //o journal ocupa os blocos necessários para ter pelo menos isso
+    private static final int JOURNAL_POR_BLOCO = 6; //bytes a mais no journal por bloco do disco (ver tamanhoJournal)
+    private static final int JOURNAL_MAXIMO = 64 * 1024 * 1024; //a montagem lê o journal inteiro para a memória
+    private static final int DIRETORIO_MINIMO = 64 * 1024; //o diretório ocupa os blocos necessários para ter pelo menos isso
+
+    //Geometria do disco antigo (sem superbloco)
+    private static final int TAM_BLOCO_LEGADO = 64 * 1024;
+    private static final int NUM_BLOCOS_LEGADO = 1024;
+
+    private final int tamBloco;
+    private final int numBlocos;
+    private final int blocoJournal;
+    private final int deslocamentoJournal; //posição do journal dentro do primeiro bloco dele
+    private final int capacidadeJournal; //bytes
+    private final int blocoDiretorio;
+    private final int blocosDiretorio;
+    private final int blocoFat;
+    private final int blocosFat;
+    private final int primeiroBlocoDados;
+
+    private Superbloco(int tamBloco, int numBlocos, int blocoJournal, int deslocamentoJournal, int capacidadeJournal,
+                       int blocoDiretorio, int blocosDiretorio, int blocoFat, int blocosFat, int primeiroBlocoDados) {
+        this.tamBloco = tamBloco;
+        this.numBlocos = numBlocos;
+        this.blocoJournal = blocoJournal;
+        this.deslocamentoJournal = deslocamentoJournal;
+        this.capacidadeJournal = capacidadeJournal;
+        this.blocoDiretorio = blocoDiretorio;
+        this.blocosDiretorio = blocosDiretorio;
+        this.blocoFat = blocoFat;
+        this.blocosFat = blocosFat;
+        this.primeiroBlocoDados = primeiroBlocoDados;
+    }
+
+    //Objetivo da função: calcular o layout de um disco novo com a geometria dada
+    public static Superbloco calcular(int tamBloco, int numBlocos) {
+        validarGeometria(tamBloco, numBlocos);
+
+        int blocosJournal = (int) ((tamanhoJournal(numBlocos) + tamBloco - 1) / tamBloco);
+        int blocosDiretorio = (DIRETORIO_MINIMO + tamBloco - 1) / tamBloco;
+        //FAT: 4 bytes por bloco do disco. Conta em long: com muitos blocos numBlocos * 4 passa do int
+        int blocosFat = (int) (((long) numBlocos * 4 + tamBloco - 1) / tamBloco);
+
+        int blocoJournal = 1;
+        int blocoDiretorio = blocoJournal + blocosJournal;
+        int blocoFat = blocoDiretorio + blocosDiretorio;
+        int primeiroBlocoDados = blocoFat + blocosFat;
+        if (primeiroBlocoDados >= numBlocos) {
+            throw new IllegalArgumentException("Disco pequeno demais: não sobra nenhum bloco de dados");
+        }
+        return new Superbloco(tamBloco, numBlocos, blocoJournal, 0, blocosJournal * tamBloco,
+                blocoDiretorio, blocosDiretorio, blocoFat, blocosFat, primeiroBlocoDados);
+
+        //1. Confere a geometria
+        //2. Calcula quantos blocos o journal (pela quantidade de blocos do disco), o diretório e a FAT precisam
+        //3. Coloca as regiões em sequência depois do superbloco; o resto do disco é de dados
+    }
+
+    //Bytes do journal de um disco com numBlocos blocos: uma transação que altera a FAT inteira de uma vez tem que caber.
+    //Cada entrada da FAT vai para o registro com 4 bytes, e cada trecho de entradas seguidas com mais 8. No pior caso
+    //(uma entrada sim, outra não) são 12 bytes a cada 2 blocos. O mínimo fica para as entradas do diretório
+    private static long tamanhoJournal(int numBlocos) {
+        return Math.min(JOURNAL_MINIMO + (long) JOURNAL_POR_BLOCO * numBlocos, JOURNAL_MAXIMO);
+    }
+
+    //Layout dos discos formatados antes do superbloco
+    public static Superbloco legado() {
+        return new Superbloco(TAM_BLOCO_LEGADO, NUM_BLOCOS_LEGADO, 1, TAM_BLOCO_LEGADO / 2, TAM_BLOCO_LEGADO / 2,
+                0, 1, 1, 1, 2);
+    }
+
+    //Um disco sem superbloco é do layout antigo se tem a geometria antiga e já foi formatado:
+    //a entrada 0 da FAT (começo do bloco 1) marca o bloco do diretório como ocupado (-1)
+    public static boolean isLegado(long tamanhoDisco, int primeiraEntradaFat) {
+        return tamanhoDisco == (long) TAM_BLOCO_LEGADO * NUM_BLOCOS_LEGADO && primeiraEntradaFat == -1;
+    }
+
+    public static boolean isGeometriaLegada(int tamBloco, int numBlocos) {
+        return tamBloco == TAM_BLOCO_LEGADO && numBlocos == NUM_BLOCOS_LEGADO;
+    }
+
+    public static void validarGeometria(int tamBloco, int numBlocos) {
+        //Potência de 2: as entradas da FAT (4 bytes) e os setores do disco físico cabem inteiros em cada bloco
+        if (tamBloco < TAM_BLOCO_MINIMO || tamBloco > TAM_BLOCO_MAXIMO || Integer.bitCount(tamBloco) != 1) {
+            throw new IllegalArgumentException("Tamanho de bloco inválido: " + tamBloco);
+        }
+        //O bit 30 das entradas da FAT marca os blocos de buraco (FormatoFat): um ponteiro precisa caber nos 30 bits de baixo
+        if (numBlocos < 2 || numBlocos > FormatoFat.MARCA_BURACO) {
+            throw new IllegalArgumentException("Quantidade de blocos inválida: " + numBlocos);
+        }
+    }
+
+    //Objetivo da função: ler o superbloco dos primeiros TAMANHO bytes do disco
+    //Retorna null se o disco não tem superbloco (novo ou do layout antigo)
+    public static Superbloco ler(ByteBuffer cabecalho) throws IOException {
+        if (cabecalho.remaining() < TAMANHO || cabecalho.getLong(0) != MAGICO) {
+            return null;
+        }
+
+        //Com o mágico certo, um CRC errado é um superbloco estragado: melhor falhar do que formatar por cima
+        CRC32 crc = new CRC32();
+        crc.update(cabecalho.duplicate().position(0).limit(TAMANHO - 4));
+        if ((int) crc.getValue() != cabecalho.getInt(TAMANHO - 4)) {
+            throw new IOException("Superbloco corrompido");
+        }
+        if (cabecalho.getInt(8) != VERSAO) {
+            throw new IOException("Versão do superbloco não suportada: " + cabecalho.getInt(8));
+        }
+
+        Superbloco superbloco = new Superbloco(cabecalho.getInt(12), cabecalho.getInt(16), cabecalho.getInt(20),
+                cabecalho.getInt(24), cabecalho.getInt(28), cabecalho.getInt(32), cabecalho.getInt(36),
+                cabecalho.getInt(40), cabecalho.getInt(44), cabecalho.getInt(48));
+        try {
+            validarGeometria(superbloco.tamBloco, superbloco.numBlocos);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Superbloco corrompido: " + e.getMessage());
+        }
+        return superbloco;
+
+        //1. Sem o mágico no começo do bloco 0 não existe superbloco
+        //2. Confere o CRC e a versão
+        //3. Lê a geometria e as regiões, na ordem em que codificar() grava
+    }
+
+    //Objetivo da função: codificar o superbloco nos TAMANHO bytes que vão para o começo do bloco 0
+    public ByteBuffer codificar() {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO);
+        buffer.putLong(MAGICO);
+        buffer.putInt(VERSAO);
+        buffer.putInt(tamBloco);
+        buffer.putInt(numBlocos);
+        buffer.putInt(blocoJournal);
+        buffer.putInt(deslocamentoJournal);
+        buffer.putInt(capacidadeJournal);
+        buffer.putInt(blocoDiretorio);
+        buffer.putInt(blocosDiretorio);
+        buffer.putInt(blocoFat);
+        buffer.putInt(blocosFat);
+        buffer.putInt(primeiroBlocoDados);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, TAMANHO - 4);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    public int getTamBloco() {
+        return tamBloco;
+    }
+
+    public int getNumBlocos() {
+        return numBlocos;
+    }
+
+    public int getBlocoJournal() {
+        return blocoJournal;
+    }
+
+    public int getDeslocamentoJournal() {
+        return deslocamentoJournal;
+    }
+
+    public int getCapacidadeJournal() {
+        return capacidadeJournal;
+    }
+
+    public int getBlocoDiretorio() {
+        return blocoDiretorio;
+    }
+
+    public int getBlocosDiretorio() {
+        return blocosDiretorio;
+    }
+
+    public int getBlocoFat() {
+        return blocoFat;
+    }
+
+    public int getBlocosFat() {
+        return blocosFat;
+    }
+
+    public int getPrimeiroBlocoDados() {
+        return primeiroBlocoDados;
+    }
+
+    //Tamanho total do disco em bytes
+    public long getTamanhoDisco() {
+        return (long) tamBloco * numBlocos;
+    }
+}
@@ -0,0 +1,119 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+//Conjunto de alterações de metadados (entradas da FAT e entradas do diretório) que vão para o journal
+//como um único registro: ou todas chegam ao disco, ou nenhuma
+public class TransacaoJournal {
+
+    private int[] indicesFat = new int[16]; //entradas da FAT alteradas, em ordem crescente
+    private int[] valoresFat = new int[16];
+    private int quantidadeFat;
+
+    //Entradas de diretório alteradas, pela posição no disco: a raiz e os subdiretórios (blocos encadeados na FAT) são tratados igual
+    private final List<Integer> blocos = new ArrayList<>(); //bloco onde a entrada está
+    private final List<Integer> deslocamentos = new ArrayList<>(); //posição da entrada dentro do bloco
+    private final List<byte[]> entradas = new ArrayList<>(); //conteúdo novo de cada entrada (19 bytes)
+
+    //Blocos de subdiretórios removidos: as entradas gravadas neles por registros anteriores não podem mais ser reaplicadas
+    private final List<Integer> revogados = new ArrayList<>();
+
+    //As entradas da FAT precisam ser adicionadas em ordem crescente de índice (como o BitSet entrega)
+    public void alterarFat(int indice, int valor) {
+        if (quantidadeFat == indicesFat.length) {
+            indicesFat = Arrays.copyOf(indicesFat, quantidadeFat * 2);
+            valoresFat = Arrays.copyOf(valoresFat, quantidadeFat * 2);
+        }
+        indicesFat[quantidadeFat] = indice;
+        valoresFat[quantidadeFat] = valor;
+        quantidadeFat++;
+    }
+
+    public void alterarEntrada(int bloco, int deslocamento, byte[] entrada) {
+        blocos.add(bloco);
+        deslocamentos.add(deslocamento);
+        entradas.add(entrada.clone());
+    }
+
+    public void revogar(int bloco) {
+        revogados.add(bloco);
+    }
+
+    //Marca de novo como pendentes as entradas da FAT e os blocos revogados desta transação (usado quando a confirmação falha).
+    //Os slots de diretório pendentes quem guarda é o Fat32, que sabe de qual diretório cada um é
+    public void marcarPendentes(BitSet fatSuja, BitSet blocosARevogar) {
+        for (int i = 0; i < quantidadeFat; i++) {
+            fatSuja.set(indicesFat[i]);
+        }
+        for (int bloco : revogados) {
+            blocosARevogar.set(bloco);
+        }
+    }
+
+    public boolean isVazia() {
+        return quantidadeFat == 0 && entradas.isEmpty() && revogados.isEmpty();
+    }
+
+    //Tamanho em bytes do corpo que codificar() gera, sem codificar nada
+    public int tamanhoCorpo(int tamEntrada) {
+        int trechos = 0;
+        for (int i = 0; i < quantidadeFat; i++) {
+            if (i == 0 || indicesFat[i] != indicesFat[i - 1] + 1) {
+                trechos++;
+            }
+        }
+        return 4 + trechos * 8 + quantidadeFat * 4 + 4 + entradas.size() * (8 + tamEntrada) + 4 + revogados.size() * 4;
+    }
+
+    //Objetivo da função: codificar as alterações no corpo do registro do journal
+    //Corpo: [nº de trechos da FAT] { [índice inicial] [quantidade] [valores...] } [nº de entradas] { [bloco] [deslocamento] [19 bytes] }
+    //       [nº de blocos revogados] { [bloco] }
+    public byte[] codificar(int tamEntrada) {
+
+        //Entradas da FAT com índices seguidos viram um trecho só, como ficam no disco
+        List<int[]> trechos = new ArrayList<>(); //{posição inicial em indicesFat, quantidade}
+        int i = 0;
+        while (i < quantidadeFat) {
+            int inicio = i;
+            while (i + 1 < quantidadeFat && indicesFat[i + 1] == indicesFat[i] + 1) {
+                i++;
+            }
+            i++;
+            trechos.add(new int[]{inicio, i - inicio});
+        }
+
+        ByteBuffer corpo = ByteBuffer.allocate(tamanhoCorpo(tamEntrada));
+
+        corpo.putInt(trechos.size());
+        for (int[] trecho : trechos) {
+            corpo.putInt(indicesFat[trecho[0]]);
+            corpo.putInt(trecho[1]);
+            for (int j = trecho[0]; j < trecho[0] + trecho[1]; j++) {
+                corpo.putInt(valoresFat[j]);
+            }
+        }
+
+        corpo.putInt(entradas.size());
+        for (int j = 0; j < entradas.size(); j++) {
+            corpo.putInt(blocos.get(j));
+            corpo.putInt(deslocamentos.get(j));
+            corpo.put(entradas.get(j), 0, tamEntrada);
+        }
+
+        corpo.putInt(revogados.size());
+        for (int bloco : revogados) {
+            corpo.putInt(bloco);
+        }
+        return corpo.array();
+
+        //1. Agrupa as entradas da FAT de índices consecutivos em trechos
+        //2. Calcula o tamanho do corpo e cria o buffer
+        //3. Escreve os trechos da FAT: índice inicial, quantidade e os valores (4 bytes big-endian, igual à FAT no disco)
+        //4. Escreve as entradas do diretório: bloco, posição no bloco e os 19 bytes da entrada
+        //5. Escreve os blocos revogados
+    }
+}
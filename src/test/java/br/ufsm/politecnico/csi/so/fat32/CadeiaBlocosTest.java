@@ -0,0 +1,87 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Cadeia de blocos na memória: o bloco de cada posição do arquivo sem andar na FAT
+public class CadeiaBlocosTest {
+
+    private static final int NUM_BLOCOS = 2048;
+
+    private final FormatoFat formato = new FormatoFat(512, NUM_BLOCOS);
+
+    //Liga os blocos na FAT na ordem dada, sem buracos, e retorna o valor do bloco inicial
+    private int ligar(int[] fat, List<Integer> blocos) {
+        for (int i = 0; i < blocos.size() - 1; i++) {
+            fat[blocos.get(i)] = formato.ligar(blocos.get(i + 1), 0, false);
+        }
+        fat[blocos.get(blocos.size() - 1)] = FormatoFat.FIM;
+        return formato.inicio(blocos.get(0), 0);
+    }
+
+    //Cada posição devolve o bloco dela, em qualquer ordem que a cadeia esteja no disco
+    @Test
+    public void blocoDeCadaPosicao() {
+        List<Integer> blocos = new ArrayList<>();
+        for (int i = 1; i < 1500; i++) {
+            blocos.add(i);
+        }
+        Collections.shuffle(blocos, new Random(7));
+        int[] fat = new int[NUM_BLOCOS];
+
+        CadeiaBlocos cadeia = new CadeiaBlocos(formato, fat, ligar(fat, blocos));
+        assertEquals(blocos.size(), cadeia.getQuantidade());
+        for (int i = 0; i < blocos.size(); i++) {
+            assertEquals((int) blocos.get(i), cadeia.get(i));
+        }
+        assertEquals((int) blocos.get(blocos.size() - 1), cadeia.getUltimo());
+        assertEquals(-1, cadeia.get(blocos.size()));
+    }
+
+    //O append acrescenta no fim e o corte descarta do fim, devolvendo o primeiro bloco que saiu
+    @Test
+    public void acrescentarECortar() {
+        int[] fat = new int[NUM_BLOCOS];
+        CadeiaBlocos cadeia = new CadeiaBlocos(formato, fat, ligar(fat, List.of(7, 3, 12, 5)));
+
+        cadeia.adicionar(new int[]{20, 21});
+        assertEquals(6, cadeia.getQuantidade());
+        assertEquals(5, cadeia.get(3));
+        assertEquals(21, cadeia.get(5));
+        assertEquals(21, cadeia.getUltimo());
+
+        assertEquals(12, cadeia.cortar(2));
+        assertEquals(2, cadeia.getQuantidade());
+        assertEquals(3, cadeia.getUltimo());
+        assertEquals(-1, cadeia.get(2));
+    }
+
+    //Os blocos pulados na FAT são posições sem bloco: a busca acha os blocos que vêm depois deles
+    @Test
+    public void posicoesPuladasSaoBuracos() {
+        int[] fat = new int[NUM_BLOCOS];
+        fat[7] = formato.ligar(9, 2, false);
+        fat[9] = FormatoFat.FIM;
+        CadeiaBlocos cadeia = new CadeiaBlocos(formato, fat, formato.inicio(7, 1));
+
+        assertEquals(5, cadeia.getQuantidade());
+        assertEquals(0, cadeia.get(0));
+        assertTrue(cadeia.isBuraco(0));
+        assertEquals(7, cadeia.get(1));
+        assertFalse(cadeia.isBuraco(1));
+        assertEquals(0, cadeia.get(3));
+        assertEquals(9, cadeia.get(4));
+
+        cadeia.adicionar(2, 30, false);
+        assertEquals(30, cadeia.get(2));
+        assertEquals(9, cadeia.get(4));
+    }
+}
@@ -0,0 +1,91 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+//Canais abertos ao mesmo tempo no mesmo arquivo: cada escrita vai para a posição pedida
+public class CanalArquivoTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 1024;
+    private static final int PEDACO = 100;
+    private static final int PEDACOS = 400;
+
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        fat32 = montar();
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    //Duas threads escrevem pedaços alternados em ordem, cada uma no seu canal: uma escreve no fim, ou logo depois dele,
+    //enquanto a outra aumenta o arquivo. Nenhum pedaço pode acabar na posição do outro
+    @Test
+    public void escritasDeDoisCanaisNaoSeMisturam() throws Exception {
+        fat32.create("a.bin", new byte[0]);
+
+        AtomicReference<Throwable> erro = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            int primeiro = t;
+            Thread thread = new Thread(() -> {
+                try (SeekableByteChannel canal = fat32.openChannel("a.bin")) {
+                    for (int k = primeiro; k < PEDACOS; k += 2) {
+                        byte[] pedaco = new byte[PEDACO];
+                        Arrays.fill(pedaco, (byte) (k + 1));
+                        canal.position((long) k * PEDACO);
+                        canal.write(ByteBuffer.wrap(pedaco));
+                    }
+                } catch (Throwable e) {
+                    erro.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(erro.get());
+
+        byte[] esperado = new byte[PEDACOS * PEDACO];
+        for (int k = 0; k < PEDACOS; k++) {
+            Arrays.fill(esperado, k * PEDACO, (k + 1) * PEDACO, (byte) (k + 1));
+        }
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+        assertArrayEquals(esperado, montar().read("a.bin", 0, -1));
+    }
+
+    //O truncate só diminui: se outro canal já deixou o arquivo menor, ele não volta a crescer
+    @Test
+    public void truncateNaoAumentaOArquivo() throws IOException {
+        fat32.create("a.bin", new byte[3 * TAM_BLOCO]);
+        try (SeekableByteChannel primeiro = fat32.openChannel("a.bin");
+             SeekableByteChannel segundo = fat32.openChannel("a.bin")) {
+            primeiro.truncate(10);
+            segundo.truncate(2L * TAM_BLOCO);
+            assertEquals(10, segundo.size());
+        }
+    }
+}
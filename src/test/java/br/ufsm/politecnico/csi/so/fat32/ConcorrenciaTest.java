@@ -0,0 +1,167 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Várias threads usando o mesmo Fat32: nenhuma operação se perde nem mistura os dados de outra, e uma escrita demorada
+//só segura o arquivo dela
+public class ConcorrenciaTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 2048;
+    private static final int THREADS = 8;
+
+    @BeforeEach
+    public void apagarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    //Cada thread cria, aumenta, lê e remove os próprios arquivos enquanto todas leem um arquivo compartilhado.
+    //No fim os arquivos que ficaram têm exatamente o que cada thread escreveu, também depois de montar de novo
+    @Test
+    public void threadsNaoSeAtrapalham() throws Exception {
+        Fat32 fat32 = montar();
+        long livre = fat32.freeSpace();
+        byte[] compartilhado = new byte[5 * TAM_BLOCO + 3];
+        Arrays.fill(compartilhado, (byte) 0x11);
+        fat32.create("compartilhado", compartilhado);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<byte[]>> resultados = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            resultados.add(executor.submit(() -> {
+                String nome = "t" + thread;
+                byte[] esperado = new byte[0];
+                fat32.create(nome, esperado);
+                for (int i = 0; i < 30; i++) {
+                    byte[] pedaco = new byte[1 + (i * 97 + thread * 13) % (2 * TAM_BLOCO)];
+                    Arrays.fill(pedaco, (byte) (thread * 30 + i));
+                    fat32.append(nome, pedaco);
+                    esperado = concatenar(esperado, pedaco);
+
+                    fat32.create(nome + "_tmp" + i, pedaco);
+                    assertArrayEquals(pedaco, fat32.read(nome + "_tmp" + i, 0, -1));
+                    fat32.remove(nome + "_tmp" + i);
+
+                    assertArrayEquals(compartilhado, fat32.read("compartilhado", 0, -1));
+                }
+                assertArrayEquals(esperado, fat32.read(nome, 0, -1));
+                return esperado;
+            }));
+        }
+        executor.shutdown();
+
+        long ocupado = blocos(compartilhado.length);
+        for (Future<byte[]> resultado : resultados) {
+            ocupado += blocos(resultado.get().length);
+        }
+        assertEquals(THREADS + 1, fat32.listarArquivos().size());
+        assertEquals(livre - ocupado * TAM_BLOCO, fat32.freeSpace());
+
+        Fat32 montado = montar();
+        for (int t = 0; t < THREADS; t++) {
+            assertArrayEquals(resultados.get(t).get(), montado.read("t" + t, 0, -1));
+        }
+        assertEquals(livre - ocupado * TAM_BLOCO, montado.freeSpace());
+    }
+
+    //Disco que para a primeira escrita de dados começando com MARCA até ser liberado
+    private static class DiscoTravado extends Disco {
+        private static final byte MARCA = 0x77;
+
+        private final AtomicBoolean armado = new AtomicBoolean();
+        private final CountDownLatch parado = new CountDownLatch(1);
+        private final CountDownLatch liberado = new CountDownLatch(1);
+
+        DiscoTravado() {
+            super(ConcorrenciaTest.TAM_BLOCO, ConcorrenciaTest.NUM_BLOCOS); //sem o nome da classe seriam as constantes herdadas do Disco
+        }
+
+        @Override
+        public void write(int primeiroBloco, int deslocamento, ByteBuffer origem) throws IOException {
+            if (origem.hasRemaining() && origem.get(origem.position()) == MARCA && armado.compareAndSet(true, false)) {
+                parado.countDown();
+                try {
+                    liberado.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            super.write(primeiroBloco, deslocamento, origem);
+        }
+    }
+
+    //Enquanto a gravação dos dados de um arquivo está parada no disco, os outros arquivos continuam sendo lidos, criados
+    //e aumentados, e a listagem do diretório não espera: o lock é do arquivo, não do sistema inteiro
+    @Test
+    public void escritaParadaNaoTravaOsOutrosArquivos() throws Exception {
+        DiscoTravado disco = new DiscoTravado();
+        disco.init();
+        Fat32 fat32 = new Fat32(disco);
+        fat32.create("a", new byte[]{1, 2, 3});
+        fat32.create("b", new byte[0]);
+
+        byte[] dados = new byte[3 * TAM_BLOCO];
+        Arrays.fill(dados, DiscoTravado.MARCA);
+        disco.armado.set(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> lento = executor.submit(() -> {
+            fat32.append("b", dados);
+            return null;
+        });
+        try {
+            assertTrue(disco.parado.await(10, TimeUnit.SECONDS));
+
+            Future<?> outros = executor.submit(() -> {
+                assertArrayEquals(new byte[]{1, 2, 3}, fat32.read("a", 0, -1));
+                fat32.append("a", new byte[]{4});
+                fat32.create("c", new byte[TAM_BLOCO]);
+                assertEquals(3, fat32.listarArquivos().size());
+                return null;
+            });
+            outros.get(10, TimeUnit.SECONDS);
+        } finally {
+            disco.liberado.countDown();
+            executor.shutdown();
+        }
+
+        lento.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(dados, fat32.read("b", 0, -1));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, fat32.read("a", 0, -1));
+    }
+
+    private static long blocos(int tamanho) {
+        return (tamanho + TAM_BLOCO - 1) / TAM_BLOCO;
+    }
+
+    private static byte[] concatenar(byte[] a, byte[] b) {
+        byte[] junto = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, junto, a.length, b.length);
+        return junto;
+    }
+}
@@ -0,0 +1,124 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Índice de nomes e subdiretórios no disco: o que é achado pelo nome e o que volta depois de montar de novo
+public class DiretorioTest {
+
+    private static final int TAM_BLOCO = 4096;
+    private static final int NUM_BLOCOS = 512;
+
+    @BeforeEach
+    public void apagarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    @Test
+    public void arvoreSobreviveAMontagem() throws IOException {
+        Fat32 fat32 = montar();
+        fat32.createDirectory("/Clientes");
+        fat32.createDirectory("/Clientes/2024");
+        byte[] dados = new byte[2 * TAM_BLOCO + 1];
+        Arrays.fill(dados, (byte) 7);
+        fat32.create("/Clientes/2024/Relatório.pdf", dados);
+        fat32.create("/Clientes/notas.txt", new byte[]{1, 2});
+
+        Fat32 montado = montar();
+        assertArrayEquals(dados, montado.read("/clientes/2024/relatório.pdf", 0, -1));
+        assertEquals(Set.of("notas.txt", "2024/"), new HashSet<>(montado.listarArquivos("/Clientes")));
+    }
+
+    //O bloco de um diretório removido vira dado de arquivo (y fica com o bloco que era de /d). Os slots que o journal
+    //ainda tinha para esse bloco não podem ser gravados por cima dos dados na montagem seguinte
+    @Test
+    public void blocoDeDiretorioRemovidoNaoEhSobrescritoNaMontagem() throws IOException {
+        Fat32 fat32 = montar();
+        fat32.createDirectory("/d");
+        fat32.create("/d/x", new byte[]{1});
+        fat32.remove("/d/x");
+        fat32.remove("/d");
+
+        byte[] dados = new byte[2 * TAM_BLOCO];
+        Arrays.fill(dados, (byte) 0x55);
+        fat32.create("y", dados);
+
+        assertArrayEquals(dados, montar().read("y", 0, -1));
+    }
+
+    //Um subdiretório que enche ganha blocos novos (zerados fora do lock) pelo create, pelo createAll e pelo createDirectory.
+    //Removido tudo, os blocos voltam a ser livres
+    @Test
+    public void subdiretorioCresceAlemDeUmBloco() throws IOException {
+        Fat32 fat32 = montar();
+        long livre = fat32.freeSpace();
+        int porBloco = TAM_BLOCO / 19;
+        fat32.createDirectory("/d");
+        for (int i = 0; i < porBloco + 10; i++) {
+            fat32.create("/d/a" + i, new byte[]{(byte) i});
+        }
+        Map<String, byte[]> lote = new LinkedHashMap<>();
+        for (int i = 0; i < porBloco; i++) {
+            lote.put("/d/b" + i, new byte[]{(byte) i});
+        }
+        fat32.createAll(lote);
+        for (int i = 0; i < porBloco; i++) {
+            fat32.createDirectory("/d/c" + i);
+        }
+
+        Fat32 montado = montar();
+        assertEquals(3 * porBloco + 10, montado.listarArquivos("/d").size());
+        assertArrayEquals(new byte[]{5}, montado.read("/d/a5", 0, -1));
+        assertArrayEquals(new byte[]{7}, montado.read("/d/b7", 0, -1));
+
+        for (String nome : montado.listarArquivos("/d")) {
+            montado.remove("/d/" + nome.replace("/", ""));
+        }
+        montado.remove("/d");
+        assertEquals(livre, montar().freeSpace());
+    }
+
+    //Cada arquivo da raiz é achado pelo índice sem diferenciar maiúsculas, um nome removido some do índice e o slot dele
+    //pode receber outro arquivo com o mesmo nome. A montagem seguinte remonta o índice a partir dos slots
+    @Test
+    public void indiceDaRaizAchaCadaArquivoPeloNome() throws IOException {
+        Fat32 fat32 = montar();
+        for (int i = 0; i < 100; i++) {
+            fat32.create("arq" + i + ".txt", new byte[]{(byte) i});
+        }
+        assertArrayEquals(new byte[]{42}, fat32.read("ARQ42.TXT", 0, -1));
+        assertThrows(IOException.class, () -> fat32.create("Arq42.Txt", new byte[]{1}));
+
+        fat32.remove("arq7.txt");
+        assertThrows(IOException.class, () -> fat32.read("arq7.txt", 0, -1));
+        fat32.create("ARQ7.TXT", new byte[]{77});
+
+        Fat32 montado = montar();
+        assertEquals(100, montado.contarArquivos("/"));
+        assertArrayEquals(new byte[]{77}, montado.read("arq7.txt", 0, -1));
+        for (int i = 0; i < 100; i++) {
+            if (i != 7) {
+                assertArrayEquals(new byte[]{(byte) i}, montado.read("arq" + i + ".TXT", 0, -1));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Cache de blocos: quem sai pelo relógio e quando os blocos alterados chegam no disco de baixo
+public class DiscoCacheTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 64;
+
+    private Disco disco;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+    }
+
+    private static byte[] bloco(int valor) {
+        byte[] dados = new byte[TAM_BLOCO];
+        Arrays.fill(dados, (byte) valor);
+        return dados;
+    }
+
+    //Write-back: o bloco escrito fica só no cache até o sincronizar, e depois disso o disco de baixo tem o conteúdo novo
+    @Test
+    public void escritaChegaNoDiscoNoSincronizar() throws IOException {
+        DiscoCache cache = new DiscoCache(disco, 4);
+        cache.init();
+        cache.write(10, bloco(3));
+        cache.write(10, 5, new byte[]{9}, 0, 1);
+
+        assertArrayEquals(new byte[TAM_BLOCO], disco.read(10));
+        byte[] esperado = bloco(3);
+        esperado[5] = 9;
+        assertArrayEquals(esperado, cache.read(10));
+
+        cache.sincronizar();
+        assertArrayEquals(esperado, disco.read(10));
+    }
+
+    //Um bloco sujo que sai do cache é gravado antes, e volta do disco de baixo na próxima leitura
+    @Test
+    public void despejoGravaOBlocoSujo() throws IOException {
+        DiscoCache cache = new DiscoCache(disco, 2);
+        cache.init();
+        cache.write(1, bloco(1));
+        cache.write(2, bloco(2));
+        cache.read(3);
+
+        assertEquals(1, cache.getDespejos());
+        assertArrayEquals(bloco(1), disco.read(1));
+        assertArrayEquals(new byte[TAM_BLOCO], disco.read(2));
+        assertArrayEquals(bloco(1), cache.read(1));
+        assertArrayEquals(bloco(2), cache.read(2));
+    }
+
+    //Relógio: um bloco usado depois da última passada do ponteiro ganha uma segunda chance e o vizinho sem uso sai no lugar dele
+    @Test
+    public void blocoReferenciadoFicaNoCache() throws IOException {
+        DiscoCache cache = new DiscoCache(disco, 3);
+        cache.init();
+        cache.read(1);
+        cache.read(2);
+        cache.read(3);
+        cache.read(4); //a passada desliga todos os bits de uso e tira o bloco 1
+        cache.read(2); //acerto: o bloco 2 volta a ser referenciado
+        cache.read(5); //o ponteiro poupa o 2 e tira o 3
+        assertEquals(5, cache.getFaltas());
+        assertEquals(1, cache.getAcertos());
+
+        cache.read(2);
+        assertEquals(2, cache.getAcertos());
+        cache.read(3);
+        assertEquals(6, cache.getFaltas());
+        assertEquals(3, cache.getDespejos());
+    }
+
+    //Escrita parcial de um bloco fora do cache vai direto para o disco de baixo, sem trazer o bloco para o cache
+    @Test
+    public void escritaParcialForaDoCacheVaiDireto() throws IOException {
+        DiscoCache cache = new DiscoCache(disco, 2);
+        cache.init();
+        cache.write(7, 100, new byte[]{1, 2, 3}, 0, 3);
+
+        assertEquals(1, cache.getEscritasDiretas());
+        assertEquals(0, cache.getFaltas());
+        byte[] trecho = new byte[3];
+        disco.read(7, 100, trecho, 0, 3);
+        assertArrayEquals(new byte[]{1, 2, 3}, trecho);
+    }
+}
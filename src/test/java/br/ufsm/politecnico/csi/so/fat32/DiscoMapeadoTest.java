@@ -0,0 +1,70 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Disco mapeado na memória: o que é escrito no mapeamento é o mesmo arquivo que o Disco lê
+public class DiscoMapeadoTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 256;
+
+    @BeforeEach
+    public void apagarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    //Escritas parciais e de vários blocos vão para a posição certa do arquivo, e a leitura de um trecho atravessa blocos
+    @Test
+    public void escritasChegamAoArquivoDoDisco() throws IOException {
+        DiscoMapeado mapeado = new DiscoMapeado(TAM_BLOCO, NUM_BLOCOS);
+        mapeado.init();
+        byte[] dados = new byte[3 * TAM_BLOCO];
+        for (int i = 0; i < dados.length; i++) {
+            dados[i] = (byte) i;
+        }
+        mapeado.write(10, 0, ByteBuffer.wrap(dados));
+        mapeado.write(20, 100, new byte[]{7, 8, 9}, 0, 3);
+        mapeado.sincronizar();
+
+        byte[] trecho = new byte[TAM_BLOCO];
+        mapeado.read(10, TAM_BLOCO / 2, trecho, 0, TAM_BLOCO);
+        assertArrayEquals(Arrays.copyOfRange(dados, TAM_BLOCO / 2, TAM_BLOCO / 2 + TAM_BLOCO), trecho);
+
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        assertArrayEquals(Arrays.copyOfRange(dados, TAM_BLOCO, 2 * TAM_BLOCO), disco.read(11));
+        byte[] parcial = new byte[3];
+        disco.read(20, 100, parcial, 0, 3);
+        assertArrayEquals(new byte[]{7, 8, 9}, parcial);
+    }
+
+    //O Fat32 funciona igual sobre o disco mapeado, e o disco formatado por ele é montado pelo Disco comum
+    @Test
+    public void fat32SobreDiscoMapeado() throws IOException {
+        DiscoMapeado mapeado = new DiscoMapeado(TAM_BLOCO, NUM_BLOCOS);
+        mapeado.init();
+        Fat32 fat32 = new Fat32(mapeado);
+        byte[] dados = new byte[2 * TAM_BLOCO + 5];
+        Arrays.fill(dados, (byte) 0x42);
+        fat32.create("a.bin", dados);
+        fat32.append("a.bin", new byte[]{1});
+
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        Fat32 montado = new Fat32(disco);
+        byte[] lido = montado.read("a.bin", 0, -1);
+        assertEquals(dados.length + 1, lido.length);
+        assertArrayEquals(dados, Arrays.copyOf(lido, dados.length));
+        assertEquals(1, lido[dados.length]);
+    }
+}
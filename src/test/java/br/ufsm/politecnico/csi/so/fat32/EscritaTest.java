@@ -0,0 +1,110 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Escritas parciais: só os bytes novos vão para os blocos de dados, e o resto do bloco continua como estava
+public class EscritaTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    //Disco que conta os bytes escritos na região de dados (o journal, o diretório e a FAT ficam antes dela)
+    private static class DiscoContador extends Disco {
+        private final int primeiroBlocoDados;
+        private long bytesEscritos;
+
+        DiscoContador() {
+            super(EscritaTest.TAM_BLOCO, EscritaTest.NUM_BLOCOS); //sem o nome da classe seriam as constantes herdadas do Disco
+            this.primeiroBlocoDados = Superbloco.calcular(EscritaTest.TAM_BLOCO, EscritaTest.NUM_BLOCOS).getPrimeiroBlocoDados();
+        }
+
+        private void contar(int bloco, int tamanho) {
+            if (bloco >= primeiroBlocoDados) {
+                bytesEscritos += tamanho;
+            }
+        }
+
+        @Override
+        public void write(int numBloco, byte[] data) throws IOException {
+            contar(numBloco, data.length);
+            super.write(numBloco, data);
+        }
+
+        @Override
+        public void write(int numBloco, int deslocamento, byte[] data, int off, int tamanho) throws IOException {
+            contar(numBloco, tamanho);
+            super.write(numBloco, deslocamento, data, off, tamanho);
+        }
+
+        @Override
+        public void write(int primeiroBloco, int deslocamento, ByteBuffer origem) throws IOException {
+            contar(primeiroBloco, origem.remaining());
+            super.write(primeiroBloco, deslocamento, origem);
+        }
+    }
+
+    private DiscoContador disco;
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        disco = new DiscoContador();
+        disco.init();
+        fat32 = new Fat32(disco);
+    }
+
+    private static byte[] dados(int tamanho, int semente) {
+        byte[] dados = new byte[tamanho];
+        for (int i = 0; i < dados.length; i++) {
+            dados[i] = (byte) (i * 17 + semente);
+        }
+        return dados;
+    }
+
+    //Um append pequeno grava só os bytes dele no último bloco, sem ler nem regravar o que já estava lá
+    @Test
+    public void appendGravaSoOsBytesNovos() throws IOException {
+        byte[] inicio = dados(3 * TAM_BLOCO + 100, 1);
+        fat32.create("a.bin", inicio);
+        assertEquals(inicio.length, disco.bytesEscritos);
+
+        disco.bytesEscritos = 0;
+        byte[] novos = dados(10, 2);
+        fat32.append("a.bin", novos);
+        assertEquals(10, disco.bytesEscritos);
+
+        byte[] esperado = Arrays.copyOf(inicio, inicio.length + novos.length);
+        System.arraycopy(novos, 0, esperado, inicio.length, novos.length);
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+    }
+
+    //Uma escrita no meio de um bloco já escrito grava só o trecho dela, mesmo atravessando a divisa de dois blocos
+    @Test
+    public void escritaNoMeioGravaSoOTrecho() throws IOException {
+        byte[] esperado = dados(4 * TAM_BLOCO, 3);
+        fat32.create("a.bin", esperado);
+
+        disco.bytesEscritos = 0;
+        byte[] trecho = dados(20, 4);
+        try (SeekableByteChannel canal = fat32.openChannel("a.bin")) {
+            canal.position(2L * TAM_BLOCO - 7);
+            canal.write(ByteBuffer.wrap(trecho));
+        }
+        assertEquals(20, disco.bytesEscritos);
+
+        System.arraycopy(trecho, 0, esperado, 2 * TAM_BLOCO - 7, trecho.length);
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+    }
+}
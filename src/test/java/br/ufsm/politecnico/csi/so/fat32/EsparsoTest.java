@@ -0,0 +1,159 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Arquivos esparsos: quanto espaço cada operação gasta e se os buracos voltam como zeros na montagem seguinte
+public class EsparsoTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        fat32 = montar();
+
+        //Deixa lixo nos blocos de dados: um bloco de buraco reaproveitado não pode mostrar o conteúdo antigo
+        byte[] lixo = new byte[40 * TAM_BLOCO];
+        Arrays.fill(lixo, (byte) 0x5A);
+        fat32.create("lixo.bin", lixo);
+        fat32.remove("lixo.bin");
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    private static void escrever(Fat32 fat32, String arquivo, long posicao, byte[] dados) throws IOException {
+        try (SeekableByteChannel canal = fat32.openChannel(arquivo)) {
+            canal.position(posicao);
+            canal.write(ByteBuffer.wrap(dados));
+        }
+    }
+
+    //Aumentar o tamanho não aloca nada: o buraco no fim do arquivo não ocupa blocos
+    @Test
+    public void aumentarNaoOcupaEspaco() throws IOException {
+        long livre = fat32.freeSpace();
+        fat32.create("a.bin", new byte[0]);
+        fat32.setLength("a.bin", 100L * TAM_BLOCO);
+
+        assertEquals(livre, fat32.freeSpace());
+        assertArrayEquals(new byte[100 * TAM_BLOCO], fat32.read("a.bin", 0, -1));
+    }
+
+    //Só os blocos escritos ocupam espaço: o buraco antes deles (no começo ou no meio do arquivo) não reserva bloco nenhum.
+    //Escrever no meio de um buraco gasta só o bloco escrito, e a montagem seguinte acha cada bloco na posição dele
+    @Test
+    public void escritaDepoisDoBuracoSoOcupaOBlocoEscrito() throws IOException {
+        long livre = fat32.freeSpace();
+        fat32.create("a.bin", new byte[0]);
+        fat32.setLength("a.bin", 10L * TAM_BLOCO);
+
+        escrever(fat32, "a.bin", 5L * TAM_BLOCO + 3, new byte[]{7});
+        assertEquals(livre - TAM_BLOCO, fat32.freeSpace());
+
+        escrever(fat32, "a.bin", 2L * TAM_BLOCO, new byte[]{9});
+        escrever(fat32, "a.bin", 8L * TAM_BLOCO + 1, new byte[]{4});
+        escrever(fat32, "a.bin", 3L * TAM_BLOCO + 5, new byte[]{6});
+        assertEquals(livre - 4L * TAM_BLOCO, fat32.freeSpace());
+
+        byte[] esperado = new byte[10 * TAM_BLOCO];
+        esperado[5 * TAM_BLOCO + 3] = 7;
+        esperado[2 * TAM_BLOCO] = 9;
+        esperado[8 * TAM_BLOCO + 1] = 4;
+        esperado[3 * TAM_BLOCO + 5] = 6;
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+
+        Fat32 montado = montar();
+        assertArrayEquals(esperado, montado.read("a.bin", 0, -1));
+        assertEquals(livre - 4L * TAM_BLOCO, montado.freeSpace());
+    }
+
+    //As marcas de buraco da FAT (no meio e no fim da cadeia) voltam na montagem seguinte
+    @Test
+    public void buracosSobrevivemAMontagem() throws IOException {
+        fat32.create("a.bin", new byte[0]);
+        escrever(fat32, "a.bin", 4L * TAM_BLOCO, new byte[]{1});
+        escrever(fat32, "a.bin", 8L * TAM_BLOCO, new byte[]{2});
+        //Corta no buraco entre os blocos 4 e 8: o bloco 4 vira o fim da cadeia e o resto é buraco sem bloco
+        fat32.setLength("a.bin", 6L * TAM_BLOCO + 10);
+        fat32.setLength("a.bin", 12L * TAM_BLOCO);
+        long livre = fat32.freeSpace();
+
+        Fat32 montado = montar();
+        byte[] esperado = new byte[12 * TAM_BLOCO];
+        esperado[4 * TAM_BLOCO] = 1;
+        assertArrayEquals(esperado, montado.read("a.bin", 0, -1));
+        assertEquals(livre, montado.freeSpace());
+
+        escrever(montado, "a.bin", 7L * TAM_BLOCO, new byte[]{3});
+        esperado[7 * TAM_BLOCO] = 3;
+        assertArrayEquals(esperado, montar().read("a.bin", 0, -1));
+    }
+
+    //Os bytes antigos que sobram no bloco onde o arquivo termina depois de diminuir voltam como zeros quando ele cresce
+    //de novo, pelo setLength ou por uma escrita depois do fim, sem gravar nada no aumento
+    @Test
+    public void bytesAntigosDoUltimoBlocoVoltamComoZeros() throws IOException {
+        byte[] dados = new byte[3 * TAM_BLOCO];
+        Arrays.fill(dados, (byte) 1);
+        fat32.create("a.bin", dados);
+        fat32.create("b.bin", dados);
+        fat32.setLength("a.bin", TAM_BLOCO + 10);
+        fat32.setLength("b.bin", TAM_BLOCO + 10);
+        long livre = fat32.freeSpace();
+
+        fat32.setLength("a.bin", 3L * TAM_BLOCO);
+        escrever(fat32, "b.bin", 2L * TAM_BLOCO + 7, new byte[]{2});
+        assertEquals(livre - TAM_BLOCO, fat32.freeSpace());
+
+        byte[] esperado = new byte[3 * TAM_BLOCO];
+        Arrays.fill(esperado, 0, TAM_BLOCO + 10, (byte) 1);
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+        assertArrayEquals(esperado, montar().read("a.bin", 0, -1));
+
+        esperado[2 * TAM_BLOCO + 7] = 2;
+        assertArrayEquals(Arrays.copyOf(esperado, 2 * TAM_BLOCO + 8), fat32.read("b.bin", 0, -1));
+
+        //Uma escrita no meio do resto que não valia zera o que fica entre o fim antigo e ela
+        escrever(fat32, "a.bin", TAM_BLOCO + 20, new byte[]{3});
+        esperado[2 * TAM_BLOCO + 7] = 0;
+        esperado[TAM_BLOCO + 20] = 3;
+        fat32.append("a.bin", new byte[]{4});
+        esperado = Arrays.copyOf(esperado, esperado.length + 1);
+        esperado[3 * TAM_BLOCO] = 4;
+        assertArrayEquals(esperado, fat32.read("a.bin", 0, -1));
+        assertArrayEquals(esperado, montar().read("a.bin", 0, -1));
+    }
+
+    //Diminuir devolve os blocos que ficam depois do novo fim
+    @Test
+    public void diminuirLiberaOsBlocos() throws IOException {
+        long livre = fat32.freeSpace();
+        fat32.create("a.bin", new byte[0]);
+        escrever(fat32, "a.bin", 0, new byte[]{2});
+        escrever(fat32, "a.bin", 9L * TAM_BLOCO, new byte[]{1});
+        assertEquals(livre - 2L * TAM_BLOCO, fat32.freeSpace());
+
+        fat32.setLength("a.bin", TAM_BLOCO);
+        assertEquals(livre - TAM_BLOCO, fat32.freeSpace());
+        fat32.remove("a.bin");
+        assertEquals(livre, fat32.freeSpace());
+    }
+}
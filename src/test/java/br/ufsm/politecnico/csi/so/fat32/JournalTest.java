@@ -0,0 +1,404 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Journal direto sobre um disco pequeno: reaplicação na montagem, blocos revogados, checkpoint e confirmação em grupo
+public class JournalTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 256;
+    private static final int TAM_ENTRADA = 19;
+
+    private Disco disco;
+    private Superbloco superbloco;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        superbloco = Superbloco.calcular(TAM_BLOCO, NUM_BLOCOS);
+    }
+
+    private Journal abrirJournal() {
+        return new Journal(disco, superbloco.getBlocoJournal(), superbloco.getDeslocamentoJournal(), superbloco.getCapacidadeJournal(),
+                superbloco.getBlocoFat(), TAM_ENTRADA);
+    }
+
+    private static byte[] entrada(int valor) {
+        byte[] entrada = new byte[TAM_ENTRADA];
+        Arrays.fill(entrada, (byte) valor);
+        return entrada;
+    }
+
+    private byte[] lerBloco(int bloco) throws IOException {
+        byte[] conteudo = new byte[TAM_BLOCO];
+        disco.read(bloco, 0, conteudo, 0, TAM_BLOCO);
+        return conteudo;
+    }
+
+    //Simula um registro confirmado que não chegou ao lugar dele: a montagem precisa gravar a entrada no bloco
+    @Test
+    public void reaplicaRegistroConfirmadoNaMontagem() throws IOException {
+        int bloco = superbloco.getPrimeiroBlocoDados() + 5;
+        Journal journal = abrirJournal();
+        journal.iniciar();
+
+        TransacaoJournal transacao = new TransacaoJournal();
+        transacao.alterarFat(bloco, -1);
+        transacao.alterarEntrada(bloco, 2 * TAM_ENTRADA, entrada(0x11));
+        journal.confirmar(transacao);
+
+        //Apaga o que o confirmar gravou no lugar: só o journal sabe da transação
+        disco.write(bloco, 0, new byte[TAM_BLOCO], 0, TAM_BLOCO);
+
+        assertEquals(1, abrirJournal().recuperar());
+        assertArrayEquals(entrada(0x11), Arrays.copyOfRange(lerBloco(bloco), 2 * TAM_ENTRADA, 3 * TAM_ENTRADA));
+    }
+
+    //Um bloco revogado virou dados de arquivo: as entradas antigas dele não podem ser gravadas por cima,
+    //mas uma entrada de um registro posterior à revogação (o bloco voltou a ser de um diretório) é gravada
+    @Test
+    public void naoReaplicaEntradasDeBlocoRevogado() throws IOException {
+        int revogado = superbloco.getPrimeiroBlocoDados() + 5;
+        int reutilizado = superbloco.getPrimeiroBlocoDados() + 6;
+        Journal journal = abrirJournal();
+        journal.iniciar();
+
+        TransacaoJournal criacao = new TransacaoJournal();
+        criacao.alterarEntrada(revogado, 0, entrada(0x11));
+        criacao.alterarEntrada(reutilizado, 0, entrada(0x11));
+        journal.confirmar(criacao);
+
+        TransacaoJournal remocao = new TransacaoJournal();
+        remocao.revogar(revogado);
+        remocao.revogar(reutilizado);
+        journal.confirmar(remocao);
+
+        TransacaoJournal novoDiretorio = new TransacaoJournal();
+        novoDiretorio.alterarEntrada(reutilizado, TAM_ENTRADA, entrada(0x22));
+        journal.confirmar(novoDiretorio);
+
+        byte[] dados = new byte[TAM_BLOCO];
+        Arrays.fill(dados, (byte) 0x55);
+        disco.write(revogado, 0, dados, 0, TAM_BLOCO);
+        disco.write(reutilizado, 0, new byte[TAM_BLOCO], 0, TAM_BLOCO);
+
+        assertEquals(3, abrirJournal().recuperar());
+        assertArrayEquals(dados, lerBloco(revogado));
+        byte[] depois = lerBloco(reutilizado);
+        assertArrayEquals(new byte[TAM_ENTRADA], Arrays.copyOfRange(depois, 0, TAM_ENTRADA));
+        assertArrayEquals(entrada(0x22), Arrays.copyOfRange(depois, TAM_ENTRADA, 2 * TAM_ENTRADA));
+    }
+
+    @Test
+    public void checkpointDeixaJournalVazio() throws IOException {
+        Journal journal = abrirJournal();
+        journal.iniciar();
+        TransacaoJournal transacao = new TransacaoJournal();
+        transacao.alterarEntrada(superbloco.getPrimeiroBlocoDados(), 0, entrada(0x11));
+        journal.confirmar(transacao);
+
+        journal.checkpoint();
+        assertEquals(0, abrirJournal().recuperar());
+    }
+
+    //Só as entradas alteradas da FAT vão para o disco: entradas seguidas viram um trecho só do registro,
+    //e as vizinhas (mesmo no mesmo bloco da FAT) ficam como estavam
+    @Test
+    public void gravaSoAsEntradasAlteradasDaFat() throws IOException {
+        byte[] marcado = new byte[TAM_BLOCO];
+        Arrays.fill(marcado, (byte) 0x7F);
+        for (int i = 0; i < superbloco.getBlocosFat(); i++) {
+            disco.write(superbloco.getBlocoFat() + i, 0, marcado, 0, TAM_BLOCO);
+        }
+        Journal journal = abrirJournal();
+        journal.iniciar();
+
+        TransacaoJournal transacao = new TransacaoJournal();
+        transacao.alterarFat(5, 6);
+        transacao.alterarFat(6, 7);
+        transacao.alterarFat(7, -1);
+        transacao.alterarFat(200, 0);
+        //Dois trechos: [nº de trechos] 2 x [início, quantidade], os 4 valores, [nº de entradas] e [nº de revogados]
+        assertEquals(4 + 2 * 8 + 4 * 4 + 4 + 4, transacao.tamanhoCorpo(TAM_ENTRADA));
+        journal.confirmar(transacao);
+
+        int entradasPorBloco = TAM_BLOCO / 4;
+        int[] fat = new int[superbloco.getBlocosFat() * entradasPorBloco];
+        for (int i = 0; i < superbloco.getBlocosFat(); i++) {
+            ByteBuffer.wrap(lerBloco(superbloco.getBlocoFat() + i)).asIntBuffer().get(fat, i * entradasPorBloco, entradasPorBloco);
+        }
+        int marca = 0x7F7F7F7F;
+        for (int i = 0; i < fat.length; i++) {
+            int esperado = switch (i) {
+                case 5 -> 6;
+                case 6 -> 7;
+                case 7 -> -1;
+                case 200 -> 0;
+                default -> marca;
+            };
+            assertEquals(esperado, fat[i]);
+        }
+    }
+
+    //Fat32 inteiro: o que foi confirmado volta na montagem seguinte, com e sem checkpoint antes
+    @Test
+    public void arquivoSobreviveAMontagem() throws IOException {
+        Fat32 fat32 = new Fat32(disco);
+        byte[] dados = new byte[3 * TAM_BLOCO + 7];
+        Arrays.fill(dados, (byte) 0x3C);
+        fat32.create("a.bin", dados);
+        fat32.append("a.bin", new byte[]{1, 2, 3});
+
+        Disco outro = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        outro.init();
+        Fat32 montado = new Fat32(outro);
+        byte[] lido = montado.read("a.bin", 0, -1);
+        assertEquals(dados.length + 3, lido.length);
+        assertArrayEquals(dados, Arrays.copyOf(lido, dados.length));
+
+        //Com a montagem seguinte o append foi reaplicado; depois do checkpoint não sobra registro nenhum
+        montado.append("a.bin", new byte[]{4});
+        montado.checkpoint();
+        assertEquals(0, abrirJournal().recuperar());
+
+        Disco terceiro = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        terceiro.init();
+        byte[] depois = new Fat32(terceiro).read("a.bin", 0, -1);
+        assertEquals(lido.length + 1, depois.length);
+        assertEquals(4, depois[lido.length]);
+    }
+
+    //O journal é calculado pela quantidade de blocos: cabe até o pior caso de uma transação que altera a FAT inteira
+    //(uma entrada sim, outra não, cada uma num trecho próprio)
+    @Test
+    public void journalCabeAFatInteira() throws IOException {
+        for (int numBlocos : new int[]{NUM_BLOCOS, 64 * 1024}) {
+            Superbloco calculado = Superbloco.calcular(TAM_BLOCO, numBlocos);
+            Journal journal = new Journal(disco, calculado.getBlocoJournal(), calculado.getDeslocamentoJournal(),
+                    calculado.getCapacidadeJournal(), calculado.getBlocoFat(), TAM_ENTRADA);
+            TransacaoJournal transacao = new TransacaoJournal();
+            for (int bloco = 0; bloco < numBlocos; bloco += 2) {
+                transacao.alterarFat(bloco, -1);
+            }
+            assertTrue(journal.cabe(transacao));
+        }
+    }
+
+    //Uma transação que não cabe no journal não volta para o próximo grupo (ele falharia igual): as operações seguintes
+    //falham direto, sem coletar nem tentar confirmar de novo
+    @Test
+    public void transacaoQueNaoCabeNaoVoltaParaOProximoGrupo() throws IOException {
+        Journal journal = abrirJournal();
+        journal.iniciar();
+        TransacaoJournal grande = new TransacaoJournal();
+        for (int i = 0; i < superbloco.getCapacidadeJournal() / TAM_ENTRADA; i++) {
+            grande.alterarEntrada(superbloco.getPrimeiroBlocoDados(), 0, entrada(0x11));
+        }
+        assertFalse(journal.cabe(grande));
+
+        List<TransacaoJournal> devolvidas = new ArrayList<>();
+        int[] coletas = new int[1];
+        GrupoCommit grupoCommit = new GrupoCommit(journal, new GrupoCommit.Coletor() {
+            @Override
+            public TransacaoJournal coletar() {
+                coletas[0]++;
+                return coletas[0] == 1 ? grande : new TransacaoJournal();
+            }
+
+            @Override
+            public void confirmada(TransacaoJournal transacao) {
+            }
+
+            @Override
+            public void devolver(TransacaoJournal transacao) {
+                devolvidas.add(transacao);
+            }
+        }, 0, 1);
+
+        assertThrows(IOException.class, () -> grupoCommit.aguardar(grupoCommit.getGeracaoAberta()));
+        assertThrows(IOException.class, () -> grupoCommit.aguardar(grupoCommit.getGeracaoAberta()));
+        assertEquals(1, coletas[0]);
+        assertTrue(devolvidas.isEmpty());
+    }
+
+    //Arquivo com mais blocos do que cabem numa transação do journal: o create, o setLength e o remove vão em partes,
+    //cada uma confirmada num grupo, e o sistema continua funcionando (e montando) depois
+    @Test
+    public void arquivoMaiorQueOJournal() throws IOException {
+        int numBlocos = 4096;
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        Disco grande = new Disco(TAM_BLOCO, numBlocos);
+        grande.init();
+        Fat32 fat32 = new Fat32(grande);
+        long livre = fat32.freeSpace();
+
+        byte[] dados = new byte[3000 * TAM_BLOCO];
+        new Random(7).nextBytes(dados);
+        assertTrue(dados.length > Superbloco.calcular(TAM_BLOCO, numBlocos).getCapacidadeJournal());
+        long confirmacoes = fat32.getConfirmacoesJournal();
+        fat32.create("grande.bin", dados);
+        assertTrue(fat32.getConfirmacoesJournal() - confirmacoes > 1);
+
+        fat32.append("grande.bin", Arrays.copyOf(dados, 500 * TAM_BLOCO));
+        fat32.create("b.txt", new byte[]{1, 2, 3});
+        byte[] esperado = Arrays.copyOf(dados, 3500 * TAM_BLOCO);
+        System.arraycopy(dados, 0, esperado, 3000 * TAM_BLOCO, 500 * TAM_BLOCO);
+        assertArrayEquals(esperado, fat32.read("grande.bin", 0, -1));
+
+        Disco outro = new Disco(TAM_BLOCO, numBlocos);
+        outro.init();
+        Fat32 montado = new Fat32(outro);
+        assertArrayEquals(esperado, montado.read("grande.bin", 0, -1));
+
+        montado.setLength("grande.bin", 10);
+        assertArrayEquals(Arrays.copyOf(dados, 10), montado.read("grande.bin", 0, -1));
+        montado.remove("grande.bin");
+        montado.create("grande.bin", dados);
+        montado.remove("grande.bin");
+        assertEquals(livre - TAM_BLOCO, montado.freeSpace());
+
+        Disco terceiro = new Disco(TAM_BLOCO, numBlocos);
+        terceiro.init();
+        Fat32 depois = new Fat32(terceiro);
+        assertEquals(livre - TAM_BLOCO, depois.freeSpace());
+        assertArrayEquals(new byte[]{1, 2, 3}, depois.read("b.txt", 0, -1));
+        assertEquals(List.of("b.txt"), depois.listarArquivos());
+    }
+
+    //Se a confirmação do create falha, o arquivo não fica no diretório: o próximo grupo leva a criação desfeita junto
+    @Test
+    public void createQueFalhaNaoFicaNoDiretorio() throws IOException {
+        boolean[] falhar = new boolean[1];
+        Disco comFalha = new Disco(TAM_BLOCO, NUM_BLOCOS) {
+            @Override
+            public void sincronizar() throws IOException {
+                if (falhar[0]) {
+                    falhar[0] = false;
+                    throw new IOException("falha simulada");
+                }
+                super.sincronizar();
+            }
+        };
+        comFalha.init();
+        Fat32 fat32 = new Fat32(comFalha);
+        long livre = fat32.freeSpace();
+
+        falhar[0] = true;
+        assertThrows(IOException.class, () -> fat32.create("a.bin", new byte[2 * TAM_BLOCO]));
+        assertTrue(fat32.listarArquivos().isEmpty());
+        assertThrows(IOException.class, () -> fat32.read("a.bin", 0, -1));
+
+        fat32.create("b.bin", new byte[]{1});
+        assertEquals(livre - TAM_BLOCO, fat32.freeSpace());
+        Disco outro = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        outro.init();
+        Fat32 montado = new Fat32(outro);
+        assertEquals(List.of("b.bin"), montado.listarArquivos());
+        assertEquals(livre - TAM_BLOCO, montado.freeSpace());
+    }
+
+    //Com janela de grupo, as operações de várias threads que chegam juntas são confirmadas com menos gravações no journal
+    //do que operações, e nenhuma se perde
+    @Test
+    public void grupoJuntaOperacoesDeVariasThreads() throws Exception {
+        int threads = 8;
+        Fat32 fat32 = new Fat32(disco, 20_000, threads);
+        long operacoes = fat32.getOperacoesConfirmadas();
+        long confirmacoes = fat32.getConfirmacoesJournal();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tarefas = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tarefas.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    fat32.create("t" + thread + "_" + i, new byte[0]);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> tarefa : tarefas) {
+            tarefa.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * 10, fat32.getOperacoesConfirmadas() - operacoes);
+        assertTrue(fat32.getConfirmacoesJournal() - confirmacoes < threads * 10);
+
+        Disco outro = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        outro.init();
+        assertEquals(threads * 10, new Fat32(outro).listarArquivos().size());
+    }
+
+    //Uma confirmação que falha (e caberia no journal) devolve as alterações: o próximo grupo leva elas junto e dá certo
+    @Test
+    public void falhaPassageiraVoltaParaOProximoGrupo() throws IOException {
+        boolean[] falhar = new boolean[1];
+        Disco comFalha = new Disco(TAM_BLOCO, NUM_BLOCOS) {
+            @Override
+            public void sincronizar() throws IOException {
+                if (falhar[0]) {
+                    falhar[0] = false;
+                    throw new IOException("falha simulada");
+                }
+                super.sincronizar();
+            }
+        };
+        comFalha.init();
+        disco = comFalha;
+        Journal journal = abrirJournal();
+        journal.iniciar();
+
+        List<TransacaoJournal> pendentes = new ArrayList<>();
+        List<TransacaoJournal> confirmadas = new ArrayList<>();
+        GrupoCommit grupoCommit = new GrupoCommit(journal, new GrupoCommit.Coletor() {
+            @Override
+            public TransacaoJournal coletar() {
+                TransacaoJournal transacao = pendentes.isEmpty() ? new TransacaoJournal() : pendentes.remove(0);
+                transacao.alterarFat(superbloco.getPrimeiroBlocoDados(), -1);
+                return transacao;
+            }
+
+            @Override
+            public void confirmada(TransacaoJournal transacao) {
+                confirmadas.add(transacao);
+            }
+
+            @Override
+            public void devolver(TransacaoJournal transacao) {
+                pendentes.add(transacao);
+            }
+        }, 0, 1);
+
+        falhar[0] = true;
+        assertThrows(IOException.class, () -> grupoCommit.aguardar(grupoCommit.getGeracaoAberta()));
+        assertEquals(1, pendentes.size());
+        TransacaoJournal primeira = pendentes.get(0);
+
+        grupoCommit.aguardar(grupoCommit.getGeracaoAberta());
+        assertEquals(List.of(primeira), confirmadas);
+        assertTrue(pendentes.isEmpty());
+        assertEquals(1, grupoCommit.getConfirmacoes());
+    }
+}
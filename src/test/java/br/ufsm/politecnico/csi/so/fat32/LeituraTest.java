@@ -0,0 +1,113 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Leitura de arquivos: quantas leituras do disco cada read faz e quantos bytes elas trazem
+public class LeituraTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    //Disco que conta as leituras (todas passam pela leitura para ByteBuffer) e os bytes lidos
+    private static class DiscoContador extends Disco {
+        private int leituras;
+        private long bytesLidos;
+
+        DiscoContador() {
+            super(LeituraTest.TAM_BLOCO, LeituraTest.NUM_BLOCOS); //sem o nome da classe seriam as constantes herdadas do Disco
+        }
+
+        @Override
+        public void read(int primeiroBloco, int deslocamento, ByteBuffer destino) throws IOException {
+            leituras++;
+            bytesLidos += destino.remaining();
+            super.read(primeiroBloco, deslocamento, destino);
+        }
+
+        void zerar() {
+            leituras = 0;
+            bytesLidos = 0;
+        }
+    }
+
+    private DiscoContador disco;
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        disco = new DiscoContador();
+        disco.init();
+        fat32 = new Fat32(disco);
+    }
+
+    private static byte[] dados(int tamanho, int semente) {
+        byte[] dados = new byte[tamanho];
+        for (int i = 0; i < dados.length; i++) {
+            dados[i] = (byte) (i * 31 + semente);
+        }
+        return dados;
+    }
+
+    //Arquivo espalhado em buracos de um bloco: o resto do disco está cheio e cada bloco dele vira um trecho separado
+    private byte[] criarFragmentado(String nome, int blocos) throws IOException {
+        for (int i = 0; i < 2 * blocos; i++) {
+            fat32.create("p" + i, new byte[TAM_BLOCO]);
+        }
+        fat32.create("enchimento", new byte[(int) fat32.freeSpace()]);
+        for (int i = 0; i < 2 * blocos; i += 2) {
+            fat32.remove("p" + i);
+        }
+
+        byte[] esperado = dados(blocos * TAM_BLOCO, 1);
+        fat32.create(nome, esperado);
+        return esperado;
+    }
+
+    //Um arquivo contínuo é lido com uma leitura só; um fragmentado, com uma por trecho
+    @Test
+    public void umaLeituraPorTrechoContinuo() throws IOException {
+        byte[] continuo = dados(10 * TAM_BLOCO, 7);
+        fat32.create("continuo", continuo);
+        byte[] fragmentado = criarFragmentado("fragmentado", 5);
+
+        disco.zerar();
+        assertArrayEquals(continuo, fat32.read("continuo", 0, -1));
+        assertEquals(1, disco.leituras);
+
+        disco.zerar();
+        assertArrayEquals(fragmentado, fat32.read("fragmentado", 0, -1));
+        assertEquals(5, disco.leituras);
+        assertEquals(fragmentado.length, disco.bytesLidos);
+    }
+
+    //Ler a partir de um offset só traz do disco os bytes pedidos: os blocos antes dele não são lidos
+    @Test
+    public void offsetNaoLeOsBlocosAnteriores() throws IOException {
+        byte[] dados = dados(100 * TAM_BLOCO, 3);
+        fat32.create("a.bin", dados);
+
+        disco.zerar();
+        int offset = 50 * TAM_BLOCO + 10;
+        assertArrayEquals(Arrays.copyOfRange(dados, offset, offset + 20), fat32.read("a.bin", offset, 20));
+        assertEquals(1, disco.leituras);
+        assertEquals(20, disco.bytesLidos);
+
+        //Um trecho que atravessa a divisa de dois blocos vizinhos continua sendo uma leitura só
+        disco.zerar();
+        offset = 70 * TAM_BLOCO - 5;
+        assertArrayEquals(Arrays.copyOfRange(dados, offset, dados.length), fat32.read("a.bin", offset, -1));
+        assertEquals(1, disco.leituras);
+        assertEquals(dados.length - offset, disco.bytesLidos);
+    }
+}
@@ -0,0 +1,91 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//createAll e appendAll: o lote inteiro numa confirmação do journal, ou nada quando um nome é recusado
+public class LoteTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 1024;
+
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        fat32 = montar();
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    private static byte[] dados(int tamanho, int valor) {
+        byte[] dados = new byte[tamanho];
+        Arrays.fill(dados, (byte) valor);
+        return dados;
+    }
+
+    //Um lote pequeno de creates e depois de appends custa uma confirmação cada, e tudo volta na montagem seguinte
+    @Test
+    public void loteConfirmadoDeUmaVez() throws IOException {
+        Map<String, byte[]> criar = new LinkedHashMap<>();
+        Map<String, byte[]> aumentar = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            criar.put("arq" + i, dados(i * 50, i));
+            aumentar.put("arq" + i, dados(TAM_BLOCO, 100 + i));
+        }
+
+        long confirmacoes = fat32.getConfirmacoesJournal();
+        fat32.createAll(criar);
+        assertEquals(confirmacoes + 1, fat32.getConfirmacoesJournal());
+        fat32.appendAll(aumentar);
+        assertEquals(confirmacoes + 2, fat32.getConfirmacoesJournal());
+
+        Fat32 montado = montar();
+        for (int i = 0; i < 20; i++) {
+            byte[] esperado = Arrays.copyOf(criar.get("arq" + i), i * 50 + TAM_BLOCO);
+            System.arraycopy(aumentar.get("arq" + i), 0, esperado, i * 50, TAM_BLOCO);
+            assertArrayEquals(esperado, montado.read("arq" + i, 0, -1));
+        }
+    }
+
+    //Dois nomes iguais no lote (sem diferenciar maiúsculas) ou um nome que já existe: nenhum arquivo do lote é criado
+    //e nenhum bloco fica ocupado
+    @Test
+    public void nomeRecusadoNaoCriaNada() throws IOException {
+        fat32.create("existe", new byte[]{1});
+        long livre = fat32.freeSpace();
+
+        Map<String, byte[]> repetido = new LinkedHashMap<>();
+        repetido.put("a", dados(TAM_BLOCO, 1));
+        repetido.put("A", dados(TAM_BLOCO, 2));
+        assertThrows(IOException.class, () -> fat32.createAll(repetido));
+
+        Map<String, byte[]> jaExiste = new LinkedHashMap<>();
+        jaExiste.put("b", dados(3 * TAM_BLOCO, 3));
+        jaExiste.put("EXISTE", dados(TAM_BLOCO, 4));
+        assertThrows(IOException.class, () -> fat32.createAll(jaExiste));
+
+        assertEquals(List.of("existe"), fat32.listarArquivos());
+        assertEquals(livre, fat32.freeSpace());
+        assertArrayEquals(new byte[]{1}, fat32.read("existe", 0, -1));
+        assertEquals(List.of("existe"), montar().listarArquivos());
+        assertEquals(livre, montar().freeSpace());
+    }
+}
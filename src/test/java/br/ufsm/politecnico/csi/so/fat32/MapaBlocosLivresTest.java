@@ -0,0 +1,135 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Mapa de bits dos blocos livres: o contador acompanha cada alocação e liberação, e cada pedido vai para a menor faixa
+//contínua em que cabe
+public class MapaBlocosLivresTest {
+
+    private static final int NUM_BLOCOS = 200; //mais de um long de bits, o último só em parte
+
+    //FAT com todos os blocos ocupados, menos as faixas [inicio, fim) passadas em pares
+    private static int[] fatComLivres(int... faixas) {
+        int[] fat = new int[NUM_BLOCOS];
+        Arrays.fill(fat, -1);
+        for (int i = 0; i < faixas.length; i += 2) {
+            Arrays.fill(fat, faixas[i], faixas[i + 1], 0);
+        }
+        return fat;
+    }
+
+    //O contador sai da FAT na montagem e acompanha alocar e marcarLivre, inclusive nos blocos da divisa entre dois longs
+    @Test
+    public void contadorAcompanhaAlocacoesELiberacoes() {
+        int[] fat = new int[NUM_BLOCOS];
+        fat[3] = -1;
+        fat[64] = -1;
+        fat[199] = -1;
+        MapaBlocosLivres mapa = new MapaBlocosLivres(NUM_BLOCOS);
+        mapa.reconstruir(fat);
+
+        //O bloco 0 nunca é livre
+        assertEquals(NUM_BLOCOS - 4, mapa.getLivres());
+        assertFalse(mapa.isLivre(0));
+        assertFalse(mapa.isLivre(64));
+        assertTrue(mapa.isLivre(63));
+        assertTrue(mapa.isLivre(65));
+
+        int[] blocos = mapa.alocar(100, -1);
+        assertEquals(NUM_BLOCOS - 104, mapa.getLivres());
+        for (int bloco : blocos) {
+            assertFalse(mapa.isLivre(bloco));
+        }
+
+        //Liberar duas vezes o mesmo bloco conta uma vez só
+        mapa.marcarLivre(blocos[0]);
+        mapa.marcarLivre(blocos[0]);
+        mapa.marcarLivre(64);
+        assertEquals(NUM_BLOCOS - 102, mapa.getLivres());
+        assertTrue(mapa.isLivre(64));
+
+        assertThrows(IllegalStateException.class, () -> mapa.alocar(NUM_BLOCOS - 101, -1));
+        assertEquals(NUM_BLOCOS - 102, mapa.getLivres());
+    }
+
+    //Reconstruir descarta o que foi alocado antes e volta a refletir só a FAT
+    @Test
+    public void reconstruirRefleteSoAFat() {
+        MapaBlocosLivres mapa = new MapaBlocosLivres(NUM_BLOCOS);
+        mapa.reconstruir(new int[NUM_BLOCOS]);
+        mapa.alocar(150, -1);
+
+        mapa.reconstruir(fatComLivres(10, 20, 190, 200));
+        assertEquals(20, mapa.getLivres());
+        assertFalse(mapa.isLivre(9));
+        assertTrue(mapa.isLivre(10));
+        assertTrue(mapa.isLivre(199));
+        assertEquals(20, mapa.alocar(20, -1).length);
+        assertEquals(0, mapa.getLivres());
+    }
+
+    //Best-fit: o pedido vai para a menor faixa em que cabe inteiro, não para a primeira nem para a maior
+    @Test
+    public void alocaNaMenorFaixaEmQueCabe() {
+        MapaBlocosLivres mapa = new MapaBlocosLivres(NUM_BLOCOS);
+        mapa.reconstruir(fatComLivres(10, 15, 30, 33, 50, 200));
+
+        assertArrayEquals(new int[]{30, 31, 32}, mapa.alocar(3, -1));
+        assertArrayEquals(new int[]{10, 11, 12, 13}, mapa.alocar(4, -1));
+
+        //O bloco preferido começa uma faixa: o arquivo continua nele e o resto vai para a menor faixa que sobrou
+        assertArrayEquals(new int[]{14, 50}, mapa.alocar(2, 14));
+    }
+
+    //Nenhuma faixa comporta o pedido: usa a maior inteira e o resto vai para a menor faixa onde ele cabe
+    @Test
+    public void semFaixaQueCaibaUsaAMaiorPrimeiro() {
+        MapaBlocosLivres mapa = new MapaBlocosLivres(NUM_BLOCOS);
+        mapa.reconstruir(fatComLivres(10, 13, 20, 25, 40, 44));
+
+        assertArrayEquals(new int[]{20, 21, 22, 23, 24, 10, 11}, mapa.alocar(7, -1));
+        assertEquals(5, mapa.getLivres());
+    }
+
+    //Liberar blocos vizinhos junta as faixas: depois de devolvidos, eles voltam a atender um pedido contínuo
+    @Test
+    public void liberarJuntaFaixasVizinhas() {
+        MapaBlocosLivres mapa = new MapaBlocosLivres(NUM_BLOCOS);
+        mapa.reconstruir(fatComLivres(100, 103, 150, 160));
+
+        mapa.marcarLivre(104);
+        mapa.marcarLivre(103);
+        mapa.marcarLivre(105);
+        assertArrayEquals(new int[]{100, 101, 102, 103, 104, 105}, mapa.alocar(6, -1));
+    }
+
+    //No disco, um arquivo novo não é quebrado nos buracos pequenos deixados por arquivos removidos
+    @Test
+    public void arquivoNovoNaoOcupaOsBuracos() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        Disco disco = new Disco(512, 512);
+        disco.init();
+        Fat32 fat32 = new Fat32(disco);
+        for (int i = 0; i < 20; i++) {
+            fat32.create("p" + i, new byte[2 * 512]);
+        }
+        for (int i = 0; i < 20; i += 2) {
+            fat32.remove("p" + i);
+        }
+
+        fat32.create("grande", new byte[5 * 512]);
+        fat32.create("pequeno", new byte[2 * 512]);
+        assertEquals(1.0, fat32.mediaExtentesPorArquivo());
+    }
+}
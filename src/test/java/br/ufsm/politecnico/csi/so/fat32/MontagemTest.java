@@ -0,0 +1,84 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Montagem: a FAT e o diretório são lidos uma vez, bloco por bloco, qualquer que seja a quantidade de arquivos
+public class MontagemTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 300; //a FAT ocupa 3 blocos, o último só em parte
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    //Uma leitura para o journal e uma por bloco da FAT e do diretório raiz, com ou sem arquivos
+    @Test
+    public void leCadaBlocoDaFatUmaVez() throws IOException {
+        Superbloco superbloco = Superbloco.calcular(TAM_BLOCO, NUM_BLOCOS);
+        int leituras = 1 + superbloco.getBlocosFat() + superbloco.getBlocosDiretorio();
+
+        Fat32 fat32 = montar();
+        for (int i = 0; i < 40; i++) {
+            fat32.create("arq" + i + ".bin", new byte[i * 7]);
+        }
+        assertEquals(leituras, montar().getLeiturasMontagem());
+    }
+
+    //Cadeias intercaladas e blocos do fim do disco (entradas no último bloco da FAT, incompleto) voltam iguais
+    @Test
+    public void fatCarregadaIgualAGravada() throws IOException {
+        Fat32 fat32 = montar();
+        byte[] a = new byte[0];
+        byte[] b = new byte[0];
+        for (int i = 0; i < 20; i++) {
+            byte[] pedacoA = new byte[TAM_BLOCO];
+            byte[] pedacoB = new byte[TAM_BLOCO];
+            Arrays.fill(pedacoA, (byte) i);
+            Arrays.fill(pedacoB, (byte) (100 + i));
+            if (i == 0) {
+                fat32.create("a.bin", pedacoA);
+                fat32.create("b.bin", pedacoB);
+            } else {
+                fat32.append("a.bin", pedacoA);
+                fat32.append("b.bin", pedacoB);
+            }
+            a = concatenar(a, pedacoA);
+            b = concatenar(b, pedacoB);
+        }
+        //Ocupa o resto do disco: os últimos blocos estão no fim da FAT
+        long livres = fat32.freeSpace() / TAM_BLOCO;
+        byte[] c = new byte[(int) (livres - 1) * TAM_BLOCO];
+        Arrays.fill(c, (byte) 0x33);
+        fat32.create("c.bin", c);
+        long livre = fat32.freeSpace();
+
+        Fat32 montado = montar();
+        assertArrayEquals(a, montado.read("a.bin", 0, -1));
+        assertArrayEquals(b, montado.read("b.bin", 0, -1));
+        assertArrayEquals(c, montado.read("c.bin", 0, -1));
+        assertEquals(livre, montado.freeSpace());
+    }
+
+    private static byte[] concatenar(byte[] a, byte[] b) {
+        byte[] junto = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, junto, a.length, b.length);
+        return junto;
+    }
+}
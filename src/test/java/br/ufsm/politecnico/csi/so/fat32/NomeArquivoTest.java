@@ -0,0 +1,96 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Nomes longos: o texto preservado, a comparação sem maiúsculas e o que volta do disco na montagem
+public class NomeArquivoTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    @BeforeEach
+    public void apagarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    private static Fat32 montar() throws IOException {
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        return new Fat32(disco);
+    }
+
+    //Só o 8.3 em maiúsculas fica na entrada curta; as outras formas do mesmo nome são longas, iguais a ele e com o mesmo hash
+    @Test
+    public void curtoOuLongoSemDiferenciarMaiusculas() throws IOException {
+        NomeArquivo curto = NomeArquivo.de("A.TXT");
+        NomeArquivo longo = NomeArquivo.de("a.txt");
+        assertTrue(curto.isCurto());
+        assertFalse(longo.isCurto());
+        assertFalse(NomeArquivo.de("Relatório 2024.pdf").isCurto());
+        assertFalse(NomeArquivo.de(".oculto").isCurto());
+
+        assertEquals(curto, longo);
+        assertEquals(curto.getHash(), longo.getHash());
+        assertEquals(curto.hashCode(), longo.hashCode());
+        assertEquals("a.txt", longo.toString());
+
+        //O nome longo lido do disco traz o hash gravado e é igual ao nome criado
+        NomeArquivo lido = NomeArquivo.longo("Relatório 2024.pdf".getBytes(StandardCharsets.UTF_8), NomeArquivo.de("RELATÓRIO 2024.PDF").getHash());
+        assertEquals(NomeArquivo.de("relatório 2024.PDF"), lido);
+    }
+
+    //Vazio, "..", caractere de controle e mais de 255 bytes em UTF-8 (128 caracteres de 2 bytes) são recusados
+    @Test
+    public void nomesInvalidos() {
+        assertThrows(IOException.class, () -> NomeArquivo.de("  "));
+        assertThrows(IOException.class, () -> NomeArquivo.de(".."));
+        assertThrows(IOException.class, () -> NomeArquivo.de("a\tb"));
+        assertThrows(IOException.class, () -> NomeArquivo.de("é".repeat(128)));
+    }
+
+    //Nomes longos (até 255 bytes em UTF-8) voltam como foram escritos depois de montar de novo, são achados com outras
+    //maiúsculas, e os slots de um nome removido servem para o próximo
+    @Test
+    public void nomesLongosSobrevivemAMontagem() throws IOException {
+        Fat32 fat32 = montar();
+        String maximo = "ç".repeat(127) + "x"; //255 bytes
+        Set<String> nomes = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            String nome = "Relatório mensal número " + i + ".pdf";
+            fat32.create(nome, new byte[]{(byte) i});
+            nomes.add(nome);
+        }
+        fat32.create(maximo, new byte[]{9});
+        nomes.add(maximo);
+        fat32.create("CURTO.TXT", new byte[]{8});
+        nomes.add("CURTO.TXT");
+        assertThrows(IOException.class, () -> fat32.create("RELATÓRIO MENSAL NÚMERO 3.PDF", new byte[0]));
+
+        Fat32 montado = montar();
+        assertEquals(nomes, new HashSet<>(montado.listarArquivos()));
+        assertArrayEquals(new byte[]{7}, montado.read("relatório MENSAL número 7.PDF", 0, -1));
+        assertArrayEquals(new byte[]{9}, montado.read(maximo.toUpperCase(), 0, -1));
+        assertArrayEquals(new byte[]{8}, montado.read("curto.txt", 0, -1));
+
+        //Remove e cria de novo muitas vezes: se os slots não voltassem o diretório enchia
+        for (int rodada = 0; rodada < 200; rodada++) {
+            montado.remove(maximo);
+            montado.create(maximo, new byte[]{(byte) rodada});
+        }
+        assertEquals(nomes.size(), montar().listarArquivos().size());
+    }
+}
@@ -0,0 +1,61 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+//Nome 8.3 codificado: os bytes da entrada do diretório e a comparação direto nas palavras
+public class NomeCurtoTest {
+
+    //O nome formatado vira os 11 bytes da entrada: maiúsculas, só A-Z e 0-9, até 8 + 3, completado com zeros
+    @Test
+    public void formataNosOnzeBytesDaEntrada() {
+        assertArrayEquals(bytes("RELATORI", "PDF"), gravar(NomeCurto.de(" relatorio_final.pdf ")));
+        assertArrayEquals(bytes("A", ""), gravar(NomeCurto.de("a")));
+        assertArrayEquals(bytes("DADOS", "TX"), gravar(NomeCurto.de("dados.tx.bak")));
+        assertEquals("RELATORI.PDF", NomeCurto.de("relatorio.pdf").toString());
+        assertEquals("A", NomeCurto.de("a").toString());
+    }
+
+    //Ler de uma entrada devolve o mesmo nome, sem olhar o byte seguinte (o começo do tamanho do arquivo)
+    @Test
+    public void lerDevolveOMesmoNome() {
+        ByteBuffer bloco = ByteBuffer.allocate(64);
+        NomeCurto nome = NomeCurto.de("foto.jpg");
+        nome.gravar(bloco, 19);
+        bloco.put(19 + NomeCurto.TAMANHO, (byte) 0x7F);
+
+        NomeCurto lido = NomeCurto.ler(bloco, 19);
+        assertEquals(nome, lido);
+        assertEquals(nome.hashCode(), lido.hashCode());
+        assertEquals("FOTO.JPG", lido.toString());
+    }
+
+    //Maiúsculas não contam; nome e extensão não se confundem quando juntos têm as mesmas letras
+    @Test
+    public void comparaNomeEExtensao() {
+        assertEquals(NomeCurto.de("Foto.Jpg"), NomeCurto.de("FOTO.JPG"));
+        assertNotEquals(NomeCurto.de("ab.c"), NomeCurto.de("a.bc"));
+        assertNotEquals(NomeCurto.de("abc"), NomeCurto.de("ab.c"));
+    }
+
+    private static byte[] gravar(NomeCurto nome) {
+        ByteBuffer entrada = ByteBuffer.allocate(NomeCurto.TAMANHO);
+        nome.gravar(entrada, 0);
+        return entrada.array();
+    }
+
+    private static byte[] bytes(String nome, String extensao) {
+        byte[] esperado = new byte[NomeCurto.TAMANHO];
+        byte[] n = nome.getBytes(StandardCharsets.US_ASCII);
+        byte[] e = extensao.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(n, 0, esperado, 0, n.length);
+        System.arraycopy(e, 0, esperado, 8, e.length);
+        return esperado;
+    }
+}
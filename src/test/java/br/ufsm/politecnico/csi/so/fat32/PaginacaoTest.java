@@ -0,0 +1,116 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Listagem em páginas e iterador: cada arquivo aparece uma vez, mesmo com o diretório mudando entre uma página e outra
+public class PaginacaoTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    private Fat32 fat32;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        fat32 = new Fat32(disco);
+    }
+
+    //Entre as páginas, arquivos já listados e ainda não listados são removidos e outros são criados. Nenhum nome se repete,
+    //todo arquivo que existiu do começo ao fim aparece, e nenhum removido antes de ser alcançado aparece
+    @Test
+    public void cursorSobreviveAMudancasNoDiretorio() throws IOException {
+        Set<String> sempre = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            fat32.create("arq" + i, new byte[0]);
+            sempre.add("arq" + i);
+        }
+
+        Set<String> listados = new HashSet<>();
+        Set<String> removidosAntes = new HashSet<>();
+        int cursor = 0;
+        int paginas = 0;
+        PaginaDiretorio pagina;
+        do {
+            pagina = fat32.listarPagina("/", cursor, 30);
+            for (InfoArquivo info : pagina.getArquivos()) {
+                assertTrue(listados.add(info.getNome()), "listado duas vezes: " + info.getNome());
+            }
+            cursor = pagina.getProximoCursor();
+
+            //Remove um já listado e um do fim (ainda não alcançado), e cria dois (podem cair nos slots liberados)
+            if (paginas < 3) {
+                String listado = pagina.getArquivos().get(0).getNome();
+                fat32.remove(listado);
+                sempre.remove(listado);
+                String adiante = "arq" + (99 - paginas);
+                fat32.remove(adiante);
+                sempre.remove(adiante);
+                removidosAntes.add(adiante);
+                fat32.create("novo" + paginas + "a", new byte[0]);
+                fat32.create("novo" + paginas + "b", new byte[0]);
+            }
+            paginas++;
+        } while (!pagina.isUltima());
+
+        assertTrue(listados.containsAll(sempre));
+        for (String removido : removidosAntes) {
+            assertFalse(listados.contains(removido));
+        }
+        assertEquals(PaginaDiretorio.FIM, cursor);
+    }
+
+    //O iterador atravessa várias páginas internas de um subdiretório grande, com o tamanho de cada arquivo
+    @Test
+    public void iteradorPercorreODiretorioInteiro() throws IOException {
+        fat32.createDirectory("/grande");
+        Map<String, Integer> esperado = new HashMap<>();
+        for (int i = 0; i < 600; i++) {
+            String nome = "arquivo" + i + ".dat";
+            fat32.create("/grande/" + nome, new byte[0]);
+            fat32.setLength("/grande/" + nome, i * 1000L);
+            esperado.put(nome, i * 1000);
+        }
+        fat32.createDirectory("/grande/sub");
+
+        Map<String, Integer> lidos = new HashMap<>();
+        Iterator<InfoArquivo> iterador = fat32.iterarArquivos("/grande");
+        while (iterador.hasNext()) {
+            InfoArquivo info = iterador.next();
+            if (info.isDiretorio()) {
+                assertEquals("sub", info.getNome());
+                continue;
+            }
+            assertNull(lidos.put(info.getNome(), info.getTamanho()));
+        }
+        assertEquals(esperado, lidos);
+        assertThrows(NoSuchElementException.class, iterador::next);
+        assertEquals(601, fat32.contarArquivos("/grande"));
+    }
+
+    //Cursor negativo ou limite zero são recusados
+    @Test
+    public void cursorOuLimiteInvalido() {
+        assertThrows(IllegalArgumentException.class, () -> fat32.listarPagina("/", -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> fat32.listarPagina("/", 0, 0));
+    }
+}
@@ -0,0 +1,52 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Pool de buffers: o buffer devolvido volta no próximo empréstimo, pronto para usar
+public class PoolBuffersTest {
+
+    private static final int TAM_BLOCO = 512;
+
+    //O último devolvido é o próximo emprestado, com a posição e o limite do uso anterior desfeitos
+    @Test
+    public void reaproveitaOUltimoDevolvido() {
+        PoolBuffers pool = new PoolBuffers(TAM_BLOCO, 4, false);
+        ByteBuffer primeiro = pool.emprestar();
+        ByteBuffer segundo = pool.emprestar();
+        assertNotSame(primeiro, segundo);
+
+        primeiro.position(10).limit(20);
+        pool.devolver(primeiro);
+        pool.devolver(segundo);
+
+        assertSame(segundo, pool.emprestar());
+        ByteBuffer reaproveitado = pool.emprestar();
+        assertSame(primeiro, reaproveitado);
+        assertEquals(0, reaproveitado.position());
+        assertEquals(TAM_BLOCO, reaproveitado.limit());
+    }
+
+    //Só guarda até o máximo: os devolvidos além disso não voltam, e um buffer de outro tamanho é recusado
+    @Test
+    public void guardaAteOMaximo() {
+        PoolBuffers pool = new PoolBuffers(TAM_BLOCO, 1, true);
+        ByteBuffer a = pool.emprestar();
+        ByteBuffer b = pool.emprestar();
+        assertTrue(a.isDirect());
+
+        pool.devolver(a);
+        pool.devolver(b);
+        assertSame(a, pool.emprestar());
+        assertNotSame(b, pool.emprestar());
+
+        assertThrows(IllegalArgumentException.class, () -> pool.devolver(ByteBuffer.allocate(TAM_BLOCO + 1)));
+    }
+}
@@ -0,0 +1,128 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Superbloco: a geometria gravada volta igual, um superbloco estragado não é formatado por cima
+//e um disco do layout antigo (sem superbloco) continua montando
+public class SuperblocoTest {
+
+    private static final int TAM_BLOCO_LEGADO = 64 * 1024;
+    private static final int NUM_BLOCOS_LEGADO = 1024;
+
+    @BeforeEach
+    public void apagarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+    }
+
+    //codificar e ler devolvem as mesmas regiões, também num disco cuja FAT passa de 2 GB
+    @Test
+    public void codificarELerDevolvemAMesmaGeometria() throws IOException {
+        for (int[] geometria : new int[][]{{512, 300}, {4096, 1 << 20}, {64 * 1024, 1 << 30}}) {
+            Superbloco calculado = Superbloco.calcular(geometria[0], geometria[1]);
+            Superbloco lido = Superbloco.ler(calculado.codificar());
+
+            assertEquals(calculado.getTamBloco(), lido.getTamBloco());
+            assertEquals(calculado.getNumBlocos(), lido.getNumBlocos());
+            assertEquals(calculado.getBlocoJournal(), lido.getBlocoJournal());
+            assertEquals(calculado.getCapacidadeJournal(), lido.getCapacidadeJournal());
+            assertEquals(calculado.getBlocoDiretorio(), lido.getBlocoDiretorio());
+            assertEquals(calculado.getBlocosDiretorio(), lido.getBlocosDiretorio());
+            assertEquals(calculado.getBlocoFat(), lido.getBlocoFat());
+            assertEquals(calculado.getBlocosFat(), lido.getBlocosFat());
+            assertEquals(calculado.getPrimeiroBlocoDados(), lido.getPrimeiroBlocoDados());
+            assertTrue((long) lido.getBlocosFat() * lido.getTamBloco() >= 4L * lido.getNumBlocos());
+        }
+    }
+
+    //Sem o mágico não há superbloco; com o mágico e o CRC errado é erro, não um disco novo
+    @Test
+    public void superblocoEstragadoEhErro() throws IOException {
+        assertNull(Superbloco.ler(ByteBuffer.allocate(Superbloco.TAMANHO)));
+
+        ByteBuffer estragado = Superbloco.calcular(512, 300).codificar();
+        estragado.put(20, (byte) (estragado.get(20) ^ 1));
+        assertThrows(IOException.class, () -> Superbloco.ler(estragado));
+    }
+
+    //Tamanho de bloco que não é potência de 2 (ou pequeno demais) e discos sem espaço para dados são recusados
+    @Test
+    public void geometriaInvalidaEhRecusada() {
+        assertThrows(IllegalArgumentException.class, () -> Superbloco.calcular(1000, 300));
+        assertThrows(IllegalArgumentException.class, () -> Superbloco.calcular(256, 300));
+        assertThrows(IllegalArgumentException.class, () -> Superbloco.calcular(512, 1));
+        assertThrows(IllegalArgumentException.class, () -> Superbloco.calcular(512, 100));
+    }
+
+    //Disco montado com uma geometria e aberto depois pedindo outra: vale a do superbloco
+    @Test
+    public void discoExistenteUsaAGeometriaGravada() throws IOException {
+        Disco disco = new Disco(1024, 400);
+        disco.init();
+        new Fat32(disco).create("a", new byte[]{1, 2});
+
+        Disco outro = new Disco(512, 2000);
+        outro.init();
+        assertEquals(1024, outro.getTamBloco());
+        assertEquals(400, outro.getNumBlocos());
+        assertArrayEquals(new byte[]{1, 2}, new Fat32(outro).read("a", 0, -1));
+    }
+
+    //Disco do layout antigo montado à mão: diretório no bloco 0, FAT no começo do bloco 1 e os dados a partir do bloco 2.
+    //Ele é montado sem ganhar superbloco e continua aceitando arquivos novos
+    @Test
+    public void discoLegadoContinuaMontando() throws IOException {
+        byte[] conteudo = "arquivo antigo".getBytes(StandardCharsets.US_ASCII);
+        try (RandomAccessFile arquivo = new RandomAccessFile(Disco.NOME_ARQUIVO, "rw")) {
+            arquivo.setLength((long) TAM_BLOCO_LEGADO * NUM_BLOCOS_LEGADO);
+
+            //Entrada do diretório: nome 8.3 (11 bytes), tamanho e bloco inicial
+            ByteBuffer entrada = ByteBuffer.allocate(19);
+            NomeCurto.de("VELHO.TXT").gravar(entrada, 0);
+            entrada.putInt(11, conteudo.length);
+            entrada.putInt(15, 2);
+            arquivo.seek(0);
+            arquivo.write(entrada.array());
+
+            //FAT: o diretório (0) e a FAT (1) ocupados e o bloco 2 como fim da cadeia do arquivo
+            arquivo.seek(TAM_BLOCO_LEGADO);
+            arquivo.writeInt(-1);
+            arquivo.writeInt(-1);
+            arquivo.writeInt(-1);
+
+            arquivo.seek(2L * TAM_BLOCO_LEGADO);
+            arquivo.write(conteudo);
+        }
+
+        Disco disco = new Disco();
+        disco.init();
+        assertEquals(TAM_BLOCO_LEGADO, disco.getTamBloco());
+        Fat32 fat32 = new Fat32(disco);
+        assertEquals(List.of("VELHO.TXT"), fat32.listarArquivos());
+        assertArrayEquals(conteudo, fat32.read("velho.txt", 0, -1));
+        fat32.create("novo.txt", new byte[]{5});
+
+        Disco outro = new Disco();
+        outro.init();
+        Fat32 montado = new Fat32(outro);
+        assertArrayEquals(conteudo, montado.read("VELHO.TXT", 0, -1));
+        assertArrayEquals(new byte[]{5}, montado.read("novo.txt", 0, -1));
+        byte[] inicio = new byte[Superbloco.TAMANHO];
+        outro.read(0, 0, inicio, 0, inicio.length);
+        assertNull(Superbloco.ler(ByteBuffer.wrap(inicio)));
+    }
+}
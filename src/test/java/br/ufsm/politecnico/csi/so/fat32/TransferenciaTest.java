@@ -0,0 +1,89 @@
+package br.ufsm.politecnico.csi.so.fat32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Importar e exportar arquivos do sistema hospedeiro: o que sai é byte a byte o que entrou
+public class TransferenciaTest {
+
+    private static final int TAM_BLOCO = 512;
+    private static final int NUM_BLOCOS = 512;
+
+    private Fat32 fat32;
+    private Path origem;
+    private Path destino;
+
+    @BeforeEach
+    public void criarDisco() throws IOException {
+        Files.deleteIfExists(Path.of(Disco.NOME_ARQUIVO));
+        Disco disco = new Disco(TAM_BLOCO, NUM_BLOCOS);
+        disco.init();
+        fat32 = new Fat32(disco);
+        origem = Files.createTempFile("origem", ".bin");
+        destino = Files.createTempFile("destino", ".bin");
+    }
+
+    @AfterEach
+    public void apagarArquivos() throws IOException {
+        Files.deleteIfExists(origem);
+        Files.deleteIfExists(destino);
+    }
+
+    private static byte[] aleatorio(int tamanho, long semente) {
+        byte[] dados = new byte[tamanho];
+        new Random(semente).nextBytes(dados);
+        return dados;
+    }
+
+    //Um arquivo que não termina na divisa de um bloco entra e sai igual, e o exportado substitui o conteúdo antigo do destino
+    @Test
+    public void importarEExportarDevolvemOsMesmosBytes() throws IOException {
+        byte[] dados = aleatorio(11 * TAM_BLOCO / 2, 1);
+        Files.write(origem, dados);
+        Files.write(destino, new byte[20 * TAM_BLOCO]);
+
+        fat32.importarArquivo(origem, "importado.bin");
+        assertArrayEquals(dados, fat32.read("importado.bin", 0, -1));
+
+        fat32.exportarArquivo("importado.bin", destino);
+        assertArrayEquals(dados, Files.readAllBytes(destino));
+    }
+
+    //Um arquivo espalhado em vários trechos do disco e com um buraco sai com os trechos na ordem e o buraco como zeros
+    @Test
+    public void exportarArquivoFragmentadoComBuraco() throws IOException {
+        byte[] a = aleatorio(TAM_BLOCO, 2);
+        byte[] b = aleatorio(TAM_BLOCO, 3);
+        fat32.create("a", a);
+        fat32.create("b", new byte[1]);
+        fat32.append("a", b);
+        try (SeekableByteChannel canal = fat32.openChannel("a")) {
+            canal.position(6L * TAM_BLOCO);
+            canal.write(ByteBuffer.wrap(new byte[]{7}));
+        }
+
+        byte[] esperado = Arrays.copyOf(a, 6 * TAM_BLOCO + 1);
+        System.arraycopy(b, 0, esperado, TAM_BLOCO, TAM_BLOCO);
+        esperado[6 * TAM_BLOCO] = 7;
+        fat32.exportarArquivo("a", destino);
+        assertArrayEquals(esperado, Files.readAllBytes(destino));
+    }
+
+    //Exportar um nome que não está no disco virtual é um erro, como ler ele
+    @Test
+    public void exportarArquivoQueNaoExiste() {
+        assertThrows(IOException.class, () -> fat32.exportarArquivo("nada", destino));
+    }
+}